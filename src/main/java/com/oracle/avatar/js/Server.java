@@ -48,6 +48,7 @@ import javax.script.ScriptEngineManager;
 import javax.script.ScriptException;
 
 import com.oracle.avatar.js.eventloop.Callback;
+import com.oracle.avatar.js.eventloop.Cluster;
 import com.oracle.avatar.js.eventloop.EventLoop;
 import com.oracle.avatar.js.eventloop.ThreadPool;
 import com.oracle.avatar.js.log.Logger;
@@ -90,6 +91,7 @@ public final class Server implements AutoCloseable {
     private static final ScriptEngineManager MANAGER = new ScriptEngineManager();
 
     private static final String LOG_OUTPUT_DIR = "avatar-js.log.output.dir";
+    private static final String LOOPS_PROPERTY = "avatar-js.loops";
     private static final String VERSION_BUILD_PROPERTY = "avatar-js.source.compatible.version";
     private static final String LIBUV_VERSION_BUILD_PROPERTY = "avatar-js.libuv.compatible.version";
     private static final String SECURE_HOLDER = "__avatar";
@@ -120,18 +122,86 @@ public final class Server implements AutoCloseable {
     }
 
     public static void main(final String... args) throws Throwable {
-        new Server().run(args);
+        final String loops = System.getProperty(LOOPS_PROPERTY);
+        if (loops != null) {
+            runCluster(Integer.parseInt(loops), args);
+        } else {
+            new Server().run(args);
+        }
     }
 
     public Server() throws Exception {
         this(newEngine(),
                 new Loader.Core(),
-                System.getProperty(LOG_OUTPUT_DIR) == null ?
-                        new Logging(assertions) :
-                        new Logging(new File(System.getProperty(LOG_OUTPUT_DIR)), assertions),
+                newLogging(),
                 System.getProperty("user.dir"));
     }
 
+    /**
+     * Runs the same script on several event loops, one thread each, sharing
+     * one thread pool. The loops share their listening TCP sockets, accepted
+     * connections are distributed round-robin across the loops. Where
+     * {@link Cluster#isSupported()} is {@code false} the script runs on a
+     * single loop instead.
+     *
+     * @param loops The number of loops, 0 or less for one per core.
+     * @param args  The command line arguments.
+     * @throws Throwable the first failure of a loop, with the others suppressed.
+     */
+    public static void runCluster(final int loops, final String... args) throws Throwable {
+        checkPermission();
+        if (!Cluster.isSupported()) {
+            System.err.println("avatar-js: listening sockets cannot be shared on this platform, running one loop");
+            new Server().run(args);
+            return;
+        }
+        final int count = loops > 0 ? loops : Runtime.getRuntime().availableProcessors();
+        final ThreadPool executor = ThreadPool.newInstance(true);
+        final Cluster cluster = new Cluster(count);
+        final Thread[] threads = new Thread[count];
+        final Throwable[] failures = new Throwable[count];
+
+        for (int i = 0; i < count; i++) {
+            final int instance = i;
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        final ScriptEngine engine = newEngine();
+                        final Server server = new Server(engine, new Loader.Core(), newLogging(),
+                                System.getProperty("user.dir"), engine.getContext(),
+                                instance, executor, null, null, false);
+                        server.eventLoop.setCluster(cluster);
+                        server.run(args);
+                    } catch (final Throwable ex) {
+                        failures[instance] = ex;
+                    }
+                }
+            }, "avatar-js.loop." + i);
+            threads[i].start();
+        }
+
+        Throwable failure = null;
+        try {
+            for (int i = 0; i < count; i++) {
+                threads[i].join();
+                if (failures[i] != null) {
+                    if (failure == null) {
+                        failure = failures[i];
+                    } else {
+                        failure.addSuppressed(failures[i]);
+                    }
+                }
+            }
+        } finally {
+            cluster.close();
+            executor.shutdown();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
     public Server(final ScriptEngine engine,
                   final Loader loader,
                   final Logging logging,
@@ -449,6 +519,12 @@ public final class Server implements AutoCloseable {
             engine.eval(new URLReader(url), context);
     }
 
+    private static Logging newLogging() {
+        return System.getProperty(LOG_OUTPUT_DIR) == null ?
+                new Logging(assertions) :
+                new Logging(new File(System.getProperty(LOG_OUTPUT_DIR)), assertions);
+    }
+
     public static ScriptEngine newEngine() {
         checkPermission();
         return MANAGER.getEngineByName(ENGINE_NAME);
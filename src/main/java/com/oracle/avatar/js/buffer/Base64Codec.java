@@ -0,0 +1,312 @@
+/*
+ * Copyright (c) 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package com.oracle.avatar.js.buffer;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * Base64 encoder and decoder working directly on ByteBuffer ranges.
+ *
+ * The bulk of the input is processed a word at a time: the encoder reads 8
+ * bytes of direct memory with one getLong and emits 8 characters for the
+ * first 6 of them (heap ranges go to java.util.Base64 without a copy),
+ * the decoder checks 8 characters at once and writes 6 bytes. Tails,
+ * padding and characters outside the alphabet (line breaks in PEM data)
+ * are handled one character at a time, after which the decoder returns to
+ * whole words at the next group boundary.
+ */
+public final class Base64Codec {
+
+    private static final byte[] CA = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".getBytes();
+    private static final int[] IA = new int[128];
+    // the two characters for every 12-bit value
+    private static final short[] PAIRS = new short[4096];
+
+    static {
+        for (int i = 0; i < PAIRS.length; i++) {
+            PAIRS[i] = (short) (CA[i >> 6] << 8 | CA[i & 63]);
+        }
+        Arrays.fill(IA, -1);
+        for (int i = 0; i < CA.length; i++) {
+            IA[CA[i]] = i;
+        }
+        IA['='] = -2;
+        // RFC-4648 table 2: URL and filename safe
+        IA['-'] = IA['+'];
+        IA['_'] = IA['/'];
+    }
+
+    private Base64Codec() {
+    }
+
+    public static int encodedLength(final int length) {
+        return (length + 2) / 3 * 4;
+    }
+
+    public static String encode(final byte[] bytes) {
+        return encode(ByteBuffer.wrap(bytes), 0, bytes.length);
+    }
+
+    /**
+     * Encodes a range of a buffer, with padding.
+     *
+     * @param src The buffer, its position and limit are ignored.
+     * @param off The start of the range.
+     * @param length The length of the range.
+     * @return The encoded string.
+     */
+    public static String encode(final ByteBuffer src, final int off, final int length) {
+        if (src.hasArray()) {
+            // the JDK encoder is intrinsified on newer JVMs
+            final ByteBuffer range = ByteBuffer.wrap(src.array(), src.arrayOffset() + off, length);
+            final ByteBuffer encoded = Base64.getEncoder().encode(range);
+            return ascii(encoded.array(), encoded.remaining());
+        }
+        final byte[] out = new byte[encodedLength(length)];
+        encode(src, off, length, out, 0);
+        return ascii(out, out.length);
+    }
+
+    static String ascii(final byte[] bytes, final int length) {
+        return ascii(bytes, 0, length);
+    }
+
+    // the deprecated constructor copies bytes to chars without a charset
+    // decoder, and builds a compact Latin-1 string on newer JVMs
+    @SuppressWarnings("deprecation")
+    static String ascii(final byte[] bytes, final int offset, final int length) {
+        return new String(bytes, 0, offset, length);
+    }
+
+    // writes encodedLength(length) bytes into out
+    private static int encode(final ByteBuffer src, final int off, final int length, final byte[] out, final int outOff) {
+        final boolean swap = src.order() != ByteOrder.BIG_ENDIAN;
+        final int end = off + length;
+        int i = off;
+        int o = outOff;
+        for (; end - i >= 8; i += 6) {
+            long word = src.getLong(i);
+            if (swap) {
+                word = Long.reverseBytes(word);
+            }
+            final short p0 = PAIRS[(int) (word >>> 52) & 0xfff];
+            final short p1 = PAIRS[(int) (word >>> 40) & 0xfff];
+            final short p2 = PAIRS[(int) (word >>> 28) & 0xfff];
+            final short p3 = PAIRS[(int) (word >>> 16) & 0xfff];
+            out[o] = (byte) (p0 >> 8);
+            out[o + 1] = (byte) p0;
+            out[o + 2] = (byte) (p1 >> 8);
+            out[o + 3] = (byte) p1;
+            out[o + 4] = (byte) (p2 >> 8);
+            out[o + 5] = (byte) p2;
+            out[o + 6] = (byte) (p3 >> 8);
+            out[o + 7] = (byte) p3;
+            o += 8;
+        }
+        for (; end - i >= 3; i += 3) {
+            final int group = (src.get(i) & 0xff) << 16 | (src.get(i + 1) & 0xff) << 8 | (src.get(i + 2) & 0xff);
+            out[o++] = CA[group >>> 18];
+            out[o++] = CA[(group >>> 12) & 63];
+            out[o++] = CA[(group >>> 6) & 63];
+            out[o++] = CA[group & 63];
+        }
+        final int rest = end - i;
+        if (rest > 0) {
+            final int group = (src.get(i) & 0xff) << 16 | (rest == 2 ? (src.get(i + 1) & 0xff) << 8 : 0);
+            out[o++] = CA[group >>> 18];
+            out[o++] = CA[(group >>> 12) & 63];
+            out[o++] = rest == 2 ? CA[(group >>> 6) & 63] : (byte) '=';
+            out[o++] = '=';
+        }
+        return o;
+    }
+
+    public static byte[] decode(final String str) {
+        // estimate size, multiple of 4 with max 2 paddings
+        final byte[] buf = new byte[((str.length() + 2) >> 2) * 3];
+        final int length = decode(str, buf, 0, buf.length);
+        return length == buf.length ? buf : Arrays.copyOf(buf, length);
+    }
+
+    /**
+     * Decodes straight into a buffer. Stops once the buffer is full, having
+     * written the same bytes as the start of {@link #decode(String)}.
+     * Characters outside the alphabet are skipped, padding ends the input.
+     *
+     * @param str The base64 string.
+     * @param out The buffer, written from its position up to its limit.
+     * @return The number of bytes written.
+     */
+    public static int decode(final String str, final ByteBuffer out) {
+        final int length;
+        if (out.hasArray()) {
+            length = decode(str, out.array(), out.arrayOffset() + out.position(), out.remaining());
+            out.position(out.position() + length);
+        } else {
+            final byte[] buf = new byte[Math.min(out.remaining(), ((str.length() + 2) >> 2) * 3)];
+            length = decode(str, buf, 0, buf.length);
+            out.put(buf, 0, length);
+        }
+        return length;
+    }
+
+    private static int decode(final String str, final byte[] out, final int off, final int max) {
+        final int length = str.length();
+        final int limit = off + max;
+        int o = off;
+        int decode_buf = 0;
+        int rem = 4;
+
+        int i = 0;
+        while (i < length) {
+            // on a group boundary, try 8 characters at once
+            if (rem == 4 && length - i >= 8 && limit - o >= 6) {
+                final char c0 = str.charAt(i);
+                final char c1 = str.charAt(i + 1);
+                final char c2 = str.charAt(i + 2);
+                final char c3 = str.charAt(i + 3);
+                final char c4 = str.charAt(i + 4);
+                final char c5 = str.charAt(i + 5);
+                final char c6 = str.charAt(i + 6);
+                final char c7 = str.charAt(i + 7);
+                if ((c0 | c1 | c2 | c3 | c4 | c5 | c6 | c7) < 128) {
+                    final int high = IA[c0] << 18 | IA[c1] << 12 | IA[c2] << 6 | IA[c3];
+                    final int low = IA[c4] << 18 | IA[c5] << 12 | IA[c6] << 6 | IA[c7];
+                    // a negative entry (padding, or a character to skip)
+                    // makes the whole group negative
+                    if ((high | low) >= 0) {
+                        out[o] = (byte) (high >> 16);
+                        out[o + 1] = (byte) (high >> 8);
+                        out[o + 2] = (byte) high;
+                        out[o + 3] = (byte) (low >> 16);
+                        out[o + 4] = (byte) (low >> 8);
+                        out[o + 5] = (byte) low;
+                        o += 6;
+                        i += 8;
+                        continue;
+                    }
+                }
+            }
+            final char ch = str.charAt(i++);
+            final int c = ch < 128 ? IA[ch] : -1;
+            if (c >= 0) {
+                decode_buf = (decode_buf << 6) | c;
+                rem--;
+            } else if (c == -2) {
+                // padding encountered, end of encoded data
+                break;
+            } else {
+                // skip invalid characters, including CR/RF
+            }
+            // put down 3 octets with 4 characters
+            if (rem == 0) {
+                if (limit - o < 3) {
+                    if (o < limit) {
+                        out[o++] = (byte) (decode_buf >> 16);
+                    }
+                    if (o < limit) {
+                        out[o++] = (byte) (decode_buf >> 8);
+                    }
+                    return o - off;
+                }
+                out[o++] = (byte) (decode_buf >> 16);
+                out[o++] = (byte) (decode_buf >> 8);
+                out[o++] = (byte) (decode_buf);
+                rem = 4;
+                decode_buf = 0;
+            }
+        }
+
+        // No more data, take care of padding
+        if (rem == 1) {
+            // two octets with rem == 1, 18 bits
+            decode_buf >>= 2;
+            if (o < limit) {
+                out[o++] = (byte) (decode_buf >> 8);
+            }
+            if (o < limit) {
+                out[o++] = (byte) (decode_buf);
+            }
+        } else if (rem == 2) {
+            // one octet with rem == 2, 12 bits
+            decode_buf >>= 4;
+            if (o < limit) {
+                out[o++] = (byte) (decode_buf);
+            }
+        }
+        // rem == 3 is invalid data, the last octet needs 2 chars; discarded
+        return o - off;
+    }
+
+    /**
+     * Encodes a stream of buffers incrementally. Each write returns the
+     * characters for the complete 3-byte groups seen so far, carrying up to
+     * two bytes to the next write; end pads the carried bytes.
+     */
+    public static final class StreamEncoder {
+
+        private final ByteBuffer carry = ByteBuffer.allocate(3);
+
+        public String write(final ByteBuffer src) {
+            final int pos = src.position();
+            final int length = src.remaining();
+            final int carried = carry.position();
+            final int total = carried + length;
+            if (total < 3) {
+                for (int i = 0; i < length; i++) {
+                    carry.put(src.get(pos + i));
+                }
+                return "";
+            }
+
+            final int borrowed = carried == 0 ? 0 : 3 - carried;
+            final int direct = (total / 3 * 3) - (carried == 0 ? 0 : 3);
+            final byte[] out = new byte[encodedLength(total / 3 * 3)];
+            int o = 0;
+            if (carried > 0) {
+                for (int i = 0; i < borrowed; i++) {
+                    carry.put(src.get(pos + i));
+                }
+                o = encode(carry, 0, 3, out, 0);
+                carry.clear();
+            }
+            encode(src, pos + borrowed, direct, out, o);
+            for (int i = pos + borrowed + direct; i < pos + length; i++) {
+                carry.put(src.get(i));
+            }
+            return ascii(out, out.length);
+        }
+
+        public String end() {
+            final int carried = carry.position();
+            carry.clear();
+            return carried == 0 ? "" : encode(carry, 0, carried);
+        }
+    }
+}
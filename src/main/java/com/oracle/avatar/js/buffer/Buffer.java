@@ -28,9 +28,15 @@ package com.oracle.avatar.js.buffer;
 import java.io.UnsupportedEncodingException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
 import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
-import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public final class Buffer {
 
@@ -40,6 +46,17 @@ public final class Buffer {
     private static final byte[] EMPTY_BYTE_ARRAY = {};
     private static final String EMPTY_STRING = "";
 
+    private static final ThreadLocal<CharsetEncoder> UTF8_ENCODER = encoderCache(StandardCharsets.UTF_8);
+    private static final ThreadLocal<CharsetEncoder> UTF16LE_ENCODER = encoderCache(StandardCharsets.UTF_16LE);
+    private static final int SCRATCH_SIZE = 64 * 1024;
+    private static final ThreadLocal<byte[]> SCRATCH = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[SCRATCH_SIZE];
+        }
+    };
+    private static final Map<String, Charset> CHARSETS = new ConcurrentHashMap<>();
+
     private final ByteBuffer byteBuffer;
     private int charsWritten = 0;
 
@@ -51,12 +68,100 @@ public final class Buffer {
         return new Buffer(ByteBuffer.wrap(array, offset, length));
     }
 
+    /**
+     * Prepares chunks for a gathered write. The chunks are copied in order
+     * into one direct buffer so that a response, its framing and its body go
+     * out in one native write.
+     *
+     * @param chunks Alternating chunks, a {@code Buffer} or a string, and
+     *               encodings. The encoding of a {@code Buffer} is ignored.
+     * @return The buffer to write.
+     * @throws UnsupportedEncodingException if an encoding is not supported.
+     */
+    public static ByteBuffer gather(final Object[] chunks) throws UnsupportedEncodingException {
+        final ByteBuffer[] parts = new ByteBuffer[chunks.length / 2];
+        for (int i = 0; i + 1 < chunks.length; i += 2) {
+            final Object chunk = chunks[i];
+            if (chunk instanceof Buffer) {
+                parts[i / 2] = ((Buffer) chunk).byteBuffer.duplicate();
+            } else {
+                parts[i / 2] = ByteBuffer.wrap(toBytes(chunk.toString(), (String) chunks[i + 1]));
+            }
+        }
+        return join(parts);
+    }
+
+    /**
+     * Joins buffers for a single native write. A lone direct buffer is
+     * returned as is, anything else is copied into one direct buffer.
+     *
+     * @param buffers The buffers, from their position to their limit.
+     * @return The buffer to write.
+     */
+    public static ByteBuffer join(final ByteBuffer[] buffers) {
+        if (buffers.length == 1) {
+            // the native write needs it direct
+            final ByteBuffer part = buffers[0];
+            return part.isDirect() ? part : copy(part.duplicate());
+        }
+        int size = 0;
+        for (final ByteBuffer part : buffers) {
+            size += part.remaining();
+        }
+        final ByteBuffer joined = ByteBuffer.allocateDirect(size);
+        for (final ByteBuffer part : buffers) {
+            joined.put(part.duplicate());
+        }
+        joined.flip();
+        return joined;
+    }
+
+    private static ByteBuffer copy(final ByteBuffer src) {
+        final ByteBuffer copy = ByteBuffer.allocateDirect(src.remaining());
+        copy.put(src);
+        copy.flip();
+        return copy;
+    }
+
+    /**
+     * Concatenates buffers into a new buffer in one pass.
+     *
+     * @param list The buffers.
+     * @param totalLength The length of the result, or a negative value for
+     *                    the sum of the lengths. Buffers past the length are
+     *                    truncated, a longer result is zero filled.
+     * @return The new buffer.
+     */
+    public static Buffer concat(final Buffer[] list, final int totalLength) {
+        int length = totalLength;
+        if (length < 0) {
+            length = 0;
+            for (final Buffer buffer : list) {
+                length += buffer.byteBuffer.capacity();
+            }
+        }
+        final Buffer result = new Buffer(length);
+        final ByteBuffer target = result.byteBuffer.duplicate();
+        target.clear();
+        for (final Buffer buffer : list) {
+            final int n = Math.min(buffer.byteBuffer.capacity(), target.remaining());
+            if (n == 0) {
+                if (target.hasRemaining()) {
+                    continue;
+                }
+                break;
+            }
+            target.put(window(buffer.byteBuffer, 0, n));
+        }
+        return result;
+    }
+
     public Buffer(final ByteBuffer byteBuffer) {
         this.byteBuffer = byteBuffer;
     }
 
     public Buffer(final int size) {
-        byteBuffer = ByteBuffer.allocateDirect(size);
+        byteBuffer = BufferPool.allocate(size);
     }
 
     public Buffer(final Double[] numbers) {
@@ -145,9 +250,10 @@ public final class Buffer {
     }
 
     public byte[] array() {
-        if (byteBuffer.hasArray()) {
+        if (byteBuffer.hasArray() && byteBuffer.arrayOffset() == 0 && byteBuffer.array().length == byteBuffer.capacity()) {
             return byteBuffer.array();
         } else {
+            // a direct buffer, or a slice of a larger array
             final ByteBuffer dup = byteBuffer.duplicate();
             final byte[] data = new byte[dup.capacity()];
             dup.clear();
@@ -165,17 +271,13 @@ public final class Buffer {
     }
 
     public ByteBuffer toByteBuffer(final int position, final int limit) {
-        // A sliced buffer has its position set at the position of this buffer
-        int currentPos = byteBuffer.position();
-        try {
-            byteBuffer.position(0);
-            final ByteBuffer slice = byteBuffer.slice();
-            slice.position(position);
-            slice.limit(limit);
-            return slice;
-        } finally {
-            byteBuffer.position(currentPos);
-        }
+        // the range of the whole buffer, whatever position and limit
+        // earlier writes left on it
+        final ByteBuffer view = byteBuffer.duplicate();
+        view.clear();
+        view.limit(limit);
+        view.position(position);
+        return view;
     }
 
     public String toStringContent() {
@@ -250,27 +352,53 @@ public final class Buffer {
             return towrite;
         }
 
-        // for (hex, base64), try to write as many whole chars as we can fit (slow, inefficient, TODO)
-        final boolean hex = "hex".equals(encoding);
-        final int canwrite = Math.min(byteBuffer.capacity() - off, length);
-        int fit = str.length();
-        // our hex decoder chokes on odd-sized input, so we ensure we pass an even number of characters if hex is used
-        if (hex) {
-            fit = (fit / 2) * 2;
-        }
-        for (; fit > 0; fit = hex ? fit-2 : fit-1) {
-            final byte[] bytes = Buffer.toBytes(str.substring(0, fit), encoding);
-            if (bytes.length <= canwrite) {
-                byteBuffer.position(off);
-                byteBuffer.put(bytes, 0, bytes.length);
-                charsWritten = isEncoded(encoding) ?
-                        bytes.length :
-                        new String(bytes, encoding).toCharArray().length;
-                return bytes.length;
-            }
+        final int canwrite = Math.max(0, Math.min(byteBuffer.capacity() - off, length));
+        final ByteBuffer target = byteBuffer.duplicate();
+        target.limit(off + canwrite).position(off);
+        switch (encoding) {
+            case HEX_ENCODING:
+                HexUtils.decode(str, target);
+                break;
+            case BASE64_ENCODING:
+                Base64Codec.decode(str, target);
+                break;
+            default:
+                // the encoder stops before a character that does not fit whole
+                final CharBuffer in = CharBuffer.wrap(str);
+                final CharsetEncoder encoder = encoder(encoding);
+                encoder.encode(in, target, true);
+                encoder.reset();
+                charsWritten = in.position();
+        }
+        final int written = target.position() - off;
+        if (isEncoded(encoding)) {
+            charsWritten = written;
         }
+        byteBuffer.position(target.position());
+        return written;
+    }
 
-        return 0;
+    private static CharsetEncoder encoder(final String encoding) {
+        if ("utf-8".equals(encoding) || "utf8".equals(encoding)) {
+            return UTF8_ENCODER.get();
+        }
+        if ("utf-16le".equals(encoding)) {
+            return UTF16LE_ENCODER.get();
+        }
+        return Charset.forName(encoding).newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    private static ThreadLocal<CharsetEncoder> encoderCache(final Charset charset) {
+        return new ThreadLocal<CharsetEncoder>() {
+            @Override
+            protected CharsetEncoder initialValue() {
+                return charset.newEncoder()
+                        .onMalformedInput(CodingErrorAction.REPLACE)
+                        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            }
+        };
     }
 
     public int getCharsWritten() {
@@ -279,44 +407,221 @@ public final class Buffer {
 
     public int copy(final Buffer targetBuffer, final int targetStart, final int sourceStart, final int sourceEnd) {
         final int len = Math.min(sourceEnd - sourceStart, targetBuffer.byteBuffer.capacity());
-        if (byteBuffer.hasArray() && targetBuffer.byteBuffer.hasArray()) {
-            System.arraycopy(byteBuffer.array(), sourceStart, targetBuffer.byteBuffer.array(), targetStart, len);
-        } else if (targetBuffer.byteBuffer.hasArray()) {
-            System.arraycopy(array(), sourceStart, targetBuffer.byteBuffer.array(), targetStart, len);
-        } else {
-            final int pos = targetBuffer.byteBuffer.position();
-            try {
-                targetBuffer.byteBuffer.position(targetStart);
-                targetBuffer.byteBuffer.put(array(), sourceStart, len);
-            } finally {
-                targetBuffer.byteBuffer.position(pos);
-            }
-        }
+        final ByteBuffer src = window(byteBuffer, sourceStart, sourceStart + len);
+        final ByteBuffer dst = window(targetBuffer.byteBuffer, targetStart, targetBuffer.byteBuffer.capacity());
+        dst.put(src);
         return len;
     }
 
     public String toString(final String encoding, final int start, final int length)
             throws UnsupportedEncodingException {
-        return Buffer.fromBytes(Arrays.copyOfRange(array(), start, start + length), encoding);
+        switch (encoding) {
+            case BASE64_ENCODING:
+                return Base64Codec.encode(byteBuffer, start, length);
+            case HEX_ENCODING:
+                return HexUtils.encode(byteBuffer, start, length);
+            case BINARY_ENCODING:
+                return latin1(byteBuffer, start, length);
+        }
+        return decode(byteBuffer, start, length, charset(encoding));
+    }
+
+    /**
+     * Returns the charset for an encoding name, looked up once per name.
+     *
+     * @param encoding The encoding name.
+     * @return The charset.
+     * @throws UnsupportedEncodingException if the encoding is not supported.
+     */
+    static Charset charset(final String encoding) throws UnsupportedEncodingException {
+        switch (encoding) {
+            case "utf-8":
+            case "utf8":
+                return StandardCharsets.UTF_8;
+            case "utf-16le":
+                return StandardCharsets.UTF_16LE;
+            case "iso-8859-1":
+                return StandardCharsets.ISO_8859_1;
+            case "us-ascii":
+                return StandardCharsets.US_ASCII;
+        }
+        Charset charset = CHARSETS.get(encoding);
+        if (charset == null) {
+            try {
+                charset = Charset.forName(encoding);
+            } catch (final IllegalArgumentException ex) {
+                throw new UnsupportedEncodingException(encoding);
+            }
+            CHARSETS.put(encoding, charset);
+        }
+        return charset;
+    }
+
+    // decodes a range without copying the whole buffer first; ASCII and
+    // Latin-1 text are built directly from the bytes
+    private static String decode(final ByteBuffer buffer, final int start, final int length, final Charset charset) {
+        if (StandardCharsets.ISO_8859_1.equals(charset)
+                || (StandardCharsets.UTF_8.equals(charset) && isAscii(buffer, start, length))) {
+            return latin1(buffer, start, length);
+        }
+        if (buffer.hasArray()) {
+            return new String(buffer.array(), buffer.arrayOffset() + start, length, charset);
+        }
+        // the JDK decodes arrays much faster than direct buffers
+        final byte[] bytes = scratch(length);
+        window(buffer, start, start + length).get(bytes, 0, length);
+        return new String(bytes, 0, length, charset);
+    }
+
+    private static boolean isAscii(final ByteBuffer buffer, final int start, final int length) {
+        final int end = start + length;
+        int i = start;
+        for (; end - i >= 8; i += 8) {
+            if ((buffer.getLong(i) & 0x8080808080808080L) != 0) {
+                return false;
+            }
+        }
+        for (; i < end; i++) {
+            if (buffer.get(i) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // a char per byte, without a charset decoder
+    private static String latin1(final ByteBuffer buffer, final int start, final int length) {
+        if (buffer.hasArray()) {
+            return Base64Codec.ascii(buffer.array(), buffer.arrayOffset() + start, length);
+        }
+        final byte[] bytes = scratch(length);
+        window(buffer, start, start + length).get(bytes, 0, length);
+        return Base64Codec.ascii(bytes, 0, length);
     }
 
+    // a per thread array to stage direct memory in, larger requests are
+    // allocated
+    private static byte[] scratch(final int length) {
+        if (length > SCRATCH_SIZE) {
+            return new byte[length];
+        }
+        return SCRATCH.get();
+    }
+
+    /**
+     * Returns a view of a range of this buffer. The view shares its content
+     * with this buffer, as slices do in node.
+     */
     public Buffer slice(final int position, final int end) {
-        return new Buffer(Arrays.copyOfRange(array(), position, end));
+        return new Buffer(slice(byteBuffer, position, end));
+    }
+
+    /**
+     * Returns a view of a range of a byte buffer, for buffers that have not
+     * been wrapped yet.
+     */
+    public static ByteBuffer slice(final ByteBuffer buffer, final int position, final int end) {
+        return window(buffer, position, end).slice();
     }
 
     public void fill(final Double value, final int start, final int end) {
         if (byteBuffer.hasArray()) {
-            Arrays.fill(byteBuffer.array(), start, end, value.byteValue());
+            final int offset = byteBuffer.arrayOffset();
+            Arrays.fill(byteBuffer.array(), offset + start, offset + end, value.byteValue());
         } else {
-            final byte[] data = new byte[end - start];
-            Arrays.fill(data, value.byteValue());
-            final ByteBuffer dup = byteBuffer.duplicate();
-            dup.clear();
-            dup.position(start);
-            dup.put(data, 0, data.length);
+            final byte b = value.byteValue();
+            for (int i = start; i < end; i++) {
+                byteBuffer.put(i, b);
+            }
         }
     }
 
+    // an independent position and limit over the given range
+    private static ByteBuffer window(final ByteBuffer buffer, final int position, final int limit) {
+        final ByteBuffer dup = buffer.duplicate();
+        dup.limit(limit);
+        dup.position(position);
+        return dup;
+    }
+
+    // The multi-byte accessors read and write in the order of byteBuffer and
+    // swap the bytes when the other order is wanted. The order of byteBuffer
+    // is never switched, as the buffer may be shared with zlib or crypto
+    // worker threads.
+    private boolean swap(final boolean littleEndian) {
+        return (byteBuffer.order() == ByteOrder.LITTLE_ENDIAN) != littleEndian;
+    }
+
+    private short getShort(final int off, final boolean littleEndian) {
+        final short value = byteBuffer.getShort(off);
+        return swap(littleEndian) ? Short.reverseBytes(value) : value;
+    }
+
+    private int getInt(final int off, final boolean littleEndian) {
+        final int value = byteBuffer.getInt(off);
+        return swap(littleEndian) ? Integer.reverseBytes(value) : value;
+    }
+
+    private long getLong(final int off, final boolean littleEndian) {
+        final long value = byteBuffer.getLong(off);
+        return swap(littleEndian) ? Long.reverseBytes(value) : value;
+    }
+
+    private void putShort(final int off, final short value, final boolean littleEndian) {
+        byteBuffer.putShort(off, swap(littleEndian) ? Short.reverseBytes(value) : value);
+    }
+
+    private void putInt(final int off, final int value, final boolean littleEndian) {
+        byteBuffer.putInt(off, swap(littleEndian) ? Integer.reverseBytes(value) : value);
+    }
+
+    private void putLong(final int off, final long value, final boolean littleEndian) {
+        byteBuffer.putLong(off, swap(littleEndian) ? Long.reverseBytes(value) : value);
+    }
+
+    /**
+     * Returns the index of the first byte equal to value at or after from.
+     *
+     * @param value The byte, only the low 8 bits are used.
+     * @param from The index to start at.
+     * @return The index, or -1 if not found.
+     */
+    public int indexOf(final int value, final int from) {
+        return indexOf(byteBuffer, (byte) value, from, byteBuffer.capacity());
+    }
+
+    /**
+     * Returns the index of the first occurrence of a pattern at or after from.
+     *
+     * @param needle The pattern.
+     * @param from The index to start at.
+     * @return The index, or -1 if not found.
+     */
+    public int indexOf(final Needle needle, final int from) {
+        return needle.indexOf(byteBuffer, from, byteBuffer.capacity());
+    }
+
+    // compares 8 bytes at a time, a zero byte in (word ^ pattern) is a match
+    static int indexOf(final ByteBuffer buffer, final byte value, final int from, final int to) {
+        final long pattern = (value & 0xffL) * 0x0101010101010101L;
+        final boolean bigEndian = buffer.order() == ByteOrder.BIG_ENDIAN;
+        int i = Math.max(from, 0);
+        for (; to - i >= 8; i += 8) {
+            final long x = buffer.getLong(i) ^ pattern;
+            // exact zero byte test, the high bit of each zero byte is set
+            final long zeros = ~(((x & 0x7f7f7f7f7f7f7f7fL) + 0x7f7f7f7f7f7f7f7fL) | x | 0x7f7f7f7f7f7f7f7fL);
+            if (zeros != 0) {
+                return i + (bigEndian ? Long.numberOfLeadingZeros(zeros) : Long.numberOfTrailingZeros(zeros)) / 8;
+            }
+        }
+        for (; i < to; i++) {
+            if (buffer.get(i) == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
     public int readInt8(final int off) {
         return byteBuffer.get(off);
     }
@@ -326,123 +631,51 @@ public final class Buffer {
     }
 
     public int readInt16LE(final int off) {
-        final ByteOrder obo = byteBuffer.order();
-        try {
-            byteBuffer.order(ByteOrder.LITTLE_ENDIAN);
-            return byteBuffer.getShort(off);
-        } finally {
-            byteBuffer.order(obo);
-        }
+        return getShort(off, true);
     }
 
     public int readUInt16LE(final int off) {
-        final ByteOrder obo = byteBuffer.order();
-        try {
-            byteBuffer.order(ByteOrder.LITTLE_ENDIAN);
-            return byteBuffer.getShort(off) & 0xffff;
-        } finally {
-            byteBuffer.order(obo);
-        }
+        return getShort(off, true) & 0xffff;
     }
 
     public int readInt16BE(final int off) {
-        final ByteOrder obo = byteBuffer.order();
-        try {
-            byteBuffer.order(ByteOrder.BIG_ENDIAN);
-            return byteBuffer.getShort(off);
-        } finally {
-            byteBuffer.order(obo);
-        }
+        return getShort(off, false);
     }
 
     public int readUInt16BE(final int off) {
-        final ByteOrder obo = byteBuffer.order();
-        try {
-            byteBuffer.order(ByteOrder.BIG_ENDIAN);
-            return byteBuffer.getShort(off) & 0xffff;
-        } finally {
-            byteBuffer.order(obo);
-        }
+        return getShort(off, false) & 0xffff;
     }
 
     public long readInt32LE(final int off) {
-        final ByteOrder obo = byteBuffer.order();
-        try {
-            byteBuffer.order(ByteOrder.LITTLE_ENDIAN);
-            return byteBuffer.getInt(off);
-        } finally {
-            byteBuffer.order(obo);
-        }
+        return getInt(off, true);
     }
 
     public long readUInt32LE(final int off) {
-        final ByteOrder obo = byteBuffer.order();
-        try {
-            byteBuffer.order(ByteOrder.LITTLE_ENDIAN);
-            return byteBuffer.getInt(off) & 0xffffffffL;
-        } finally {
-            byteBuffer.order(obo);
-        }
+        return getInt(off, true) & 0xffffffffL;
     }
 
     public long readInt32BE(final int off) {
-        final ByteOrder obo = byteBuffer.order();
-        try {
-            byteBuffer.order(ByteOrder.BIG_ENDIAN);
-            return byteBuffer.getInt(off);
-        } finally {
-            byteBuffer.order(obo);
-        }
+        return getInt(off, false);
     }
 
     public long readUInt32BE(final int off) {
-        final ByteOrder obo = byteBuffer.order();
-        try {
-            byteBuffer.order(ByteOrder.BIG_ENDIAN);
-            return byteBuffer.getInt(off) & 0xffffffffL;
-        } finally {
-            byteBuffer.order(obo);
-        }
+        return getInt(off, false) & 0xffffffffL;
     }
 
     public float readFloatLE(final int off) {
-        final ByteOrder obo = byteBuffer.order();
-        try {
-            byteBuffer.order(ByteOrder.LITTLE_ENDIAN);
-            return byteBuffer.getFloat(off);
-        } finally {
-            byteBuffer.order(obo);
-        }
+        return Float.intBitsToFloat(getInt(off, true));
     }
 
     public float readFloatBE(final int off) {
-        final ByteOrder obo = byteBuffer.order();
-        try {
-            byteBuffer.order(ByteOrder.BIG_ENDIAN);
-            return byteBuffer.getFloat(off);
-        } finally {
-            byteBuffer.order(obo);
-        }
+        return Float.intBitsToFloat(getInt(off, false));
     }
 
     public double readDoubleLE(final int off) {
-        final ByteOrder obo = byteBuffer.order();
-        try {
-            byteBuffer.order(ByteOrder.LITTLE_ENDIAN);
-            return byteBuffer.getDouble(off);
-        } finally {
-            byteBuffer.order(obo);
-        }
+        return Double.longBitsToDouble(getLong(off, true));
     }
 
     public double readDoubleBE(final int off) {
-        final ByteOrder obo = byteBuffer.order();
-        try {
-            byteBuffer.order(ByteOrder.BIG_ENDIAN);
-            return byteBuffer.getDouble(off);
-        } finally {
-            byteBuffer.order(obo);
-        }
+        return Double.longBitsToDouble(getLong(off, false));
     }
 
     public void writeInt8(final int value, final int off) {
@@ -454,123 +687,85 @@ public final class Buffer {
     }
 
     public void writeInt16LE(final int value, final int off) {
-        final ByteOrder obo = byteBuffer.order();
-        try {
-            byteBuffer.order(ByteOrder.LITTLE_ENDIAN);
-            byteBuffer.putShort(off, (short) value);
-        } finally {
-            byteBuffer.order(obo);
-        }
+        putShort(off, (short) value, true);
     }
 
     public void writeUInt16LE(final int value, final int off) {
-        final ByteOrder obo = byteBuffer.order();
-        try {
-            byteBuffer.order(ByteOrder.LITTLE_ENDIAN);
-            byteBuffer.putShort(off, (short) (value & 0xffff));
-        } finally {
-            byteBuffer.order(obo);
-        }
+        putShort(off, (short) (value & 0xffff), true);
     }
 
     public void writeInt16BE(final int value, final int off) {
-        final ByteOrder obo = byteBuffer.order();
-        try {
-            byteBuffer.order(ByteOrder.BIG_ENDIAN);
-            byteBuffer.putShort(off, (short) value);
-        } finally {
-            byteBuffer.order(obo);
-        }
+        putShort(off, (short) value, false);
     }
 
     public void writeUInt16BE(final int value, final int off) {
-        final ByteOrder obo = byteBuffer.order();
-        try {
-            byteBuffer.order(ByteOrder.BIG_ENDIAN);
-            byteBuffer.putShort(off, (short) (value & 0xffff));
-        } finally {
-            byteBuffer.order(obo);
-        }
+        putShort(off, (short) (value & 0xffff), false);
     }
 
     public void writeInt32LE(final long value, final int off) {
-        final ByteOrder obo = byteBuffer.order();
-        try {
-            byteBuffer.order(ByteOrder.LITTLE_ENDIAN);
-            byteBuffer.putInt(off, (int) value);
-        } finally {
-            byteBuffer.order(obo);
-        }
+        putInt(off, (int) value, true);
     }
 
     public void writeUInt32LE(final long value, final int off) {
-        final ByteOrder obo = byteBuffer.order();
-        try {
-            byteBuffer.order(ByteOrder.LITTLE_ENDIAN);
-            byteBuffer.putInt(off, (int) (value & 0xffffffff));
-        } finally {
-            byteBuffer.order(obo);
-        }
+        putInt(off, (int) (value & 0xffffffff), true);
     }
 
     public void writeInt32BE(final long value, final int off) {
-        final ByteOrder obo = byteBuffer.order();
-        try {
-            byteBuffer.order(ByteOrder.BIG_ENDIAN);
-            byteBuffer.putInt(off, (int) value);
-        } finally {
-            byteBuffer.order(obo);
-        }
+        putInt(off, (int) value, false);
     }
 
     public void writeUInt32BE(final long value, final int off) {
-        final ByteOrder obo = byteBuffer.order();
-        try {
-            byteBuffer.order(ByteOrder.BIG_ENDIAN);
-            byteBuffer.putInt(off, (int) (value & 0xffffffff));
-        } finally {
-            byteBuffer.order(obo);
-        }
+        putInt(off, (int) (value & 0xffffffff), false);
     }
 
     public void writeFloatLE(final float value, final int off) {
-        final ByteOrder obo = byteBuffer.order();
-        try {
-            byteBuffer.order(ByteOrder.LITTLE_ENDIAN);
-            byteBuffer.putFloat(off, value);
-        } finally {
-            byteBuffer.order(obo);
-        }
+        putInt(off, Float.floatToRawIntBits(value), true);
     }
 
     public void writeFloatBE(final float value, final int off) {
-        final ByteOrder obo = byteBuffer.order();
-        try {
-            byteBuffer.order(ByteOrder.BIG_ENDIAN);
-            byteBuffer.putFloat(off, value);
-        } finally {
-            byteBuffer.order(obo);
-        }
+        putInt(off, Float.floatToRawIntBits(value), false);
     }
 
     public void writeDoubleLE(final double value, final int off) {
-        final ByteOrder obo = byteBuffer.order();
-        try {
-            byteBuffer.order(ByteOrder.LITTLE_ENDIAN);
-            byteBuffer.putDouble(off, value);
-        } finally {
-            byteBuffer.order(obo);
-        }
+        putLong(off, Double.doubleToRawLongBits(value), true);
     }
 
     public void writeDoubleBE(final double value, final int off) {
-        final ByteOrder obo = byteBuffer.order();
-        try {
-            byteBuffer.order(ByteOrder.BIG_ENDIAN);
-            byteBuffer.putDouble(off, value);
-        } finally {
-            byteBuffer.order(obo);
+        putLong(off, Double.doubleToRawLongBits(value), false);
+    }
+
+    public int[] readInt32s(final int off, final int count, final boolean littleEndian) {
+        final int[] values = new int[count];
+        view(off, count * 4, littleEndian).asIntBuffer().get(values);
+        return values;
+    }
+
+    public long[] readUInt32s(final int off, final int count, final boolean littleEndian) {
+        final IntBuffer ints = view(off, count * 4, littleEndian).asIntBuffer();
+        final long[] values = new long[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = ints.get(i) & 0xffffffffL;
         }
+        return values;
+    }
+
+    public double[] readDoubles(final int off, final int count, final boolean littleEndian) {
+        final double[] values = new double[count];
+        view(off, count * 8, littleEndian).asDoubleBuffer().get(values);
+        return values;
+    }
+
+    public void writeInt32s(final int[] values, final int off, final boolean littleEndian) {
+        view(off, values.length * 4, littleEndian).asIntBuffer().put(values);
+    }
+
+    public void writeDoubles(final double[] values, final int off, final boolean littleEndian) {
+        view(off, values.length * 8, littleEndian).asDoubleBuffer().put(values);
+    }
+
+    // the order of a duplicate is not inherited, so it is set again here
+    private ByteBuffer view(final int off, final int length, final boolean littleEndian) {
+        return window(byteBuffer, off, off + length).order(littleEndian ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
     }
 
     public String inspect(final int maxBytes, final boolean slow) {
@@ -602,7 +797,7 @@ public final class Buffer {
         byte[] bytes;
         switch (encoding) {
         case Buffer.BASE64_ENCODING:
-            bytes = Base64Decoder.decode(str);
+            bytes = Base64Codec.decode(str);
             break;
         case Buffer.HEX_ENCODING:
             bytes = HexUtils.decode(str);
@@ -639,25 +834,19 @@ public final class Buffer {
 
     public static String fromBytes(final byte[] b, final int off, final int length, final String encoding)
             throws UnsupportedEncodingException {
-        // avoid copying in the common case where slicing is not required
-        final byte[] bytes = off == 0 && length == b.length ? b : Arrays.copyOfRange(b, off, off + length);
         String str;
         switch (encoding) {
         case Buffer.BASE64_ENCODING:
-            str = Base64.getEncoder().encodeToString(bytes);
+            str = Base64Codec.encode(ByteBuffer.wrap(b), off, length);
             break;
         case Buffer.HEX_ENCODING:
-            str = HexUtils.encode(bytes);
+            str = HexUtils.encode(ByteBuffer.wrap(b), off, length);
             break;
         case Buffer.BINARY_ENCODING:
-            final char[] chars = new char[bytes.length];
-            for (int i=0; i < chars.length; i++) {
-                chars[i] = (char) (bytes[i] & 0xff);
-            }
-            str = new String(chars);
+            str = Base64Codec.ascii(b, off, length);
             break;
         default:
-            str = new String(bytes, encoding);
+            str = decode(ByteBuffer.wrap(b), off, length, charset(encoding));
         }
         return str == null ? Buffer.EMPTY_STRING : str;
     }
@@ -0,0 +1,221 @@
+/*
+ * Copyright (c) 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package com.oracle.avatar.js.buffer;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The direct memory allocator behind {@link Buffer}.
+ *
+ * Like node's buffer pool, buffers smaller than half of the pool size
+ * (8k by default) are carved out of a shared slab, 8-byte aligned. Each
+ * thread carves from its own slab, so worker threads producing buffers do
+ * not contend with the event loop. A slab is freed by the garbage collector
+ * once none of its buffers is reachable; slab memory is never reused, so
+ * buffers start zeroed as with {@code ByteBuffer.allocateDirect}. Larger
+ * buffers are allocated on their own.
+ *
+ * Every slab and unpooled buffer is tracked with a phantom reference, which
+ * gives the live off-heap footprint and the slab occupancy, and lets leak
+ * tests check that the footprint returns to its baseline.
+ *
+ * The pool size is set with {@code com.oracle.avatar.js.buffer.poolSize},
+ * 0 disables pooling.
+ */
+public final class BufferPool {
+
+    private static final String PACKAGE = BufferPool.class.getPackage().getName() + ".";
+    private static final String POOL_SIZE_PROPERTY = PACKAGE + "poolSize";
+
+    /**
+     * The slab size.
+     */
+    public static final int POOL_SIZE = Integer.getInteger(POOL_SIZE_PROPERTY, 8 * 1024);
+
+    private static final int MAX_POOLED = POOL_SIZE >>> 1;
+    private static final int ALIGNMENT = 8;
+
+    private static final ReferenceQueue<ByteBuffer> QUEUE = new ReferenceQueue<>();
+    private static final Set<Tracked> TRACKED = Collections.newSetFromMap(new ConcurrentHashMap<Tracked, Boolean>());
+
+    private static final AtomicLong POOLED_ALLOCATIONS = new AtomicLong();
+    private static final AtomicLong UNPOOLED_ALLOCATIONS = new AtomicLong();
+    private static final AtomicLong LIVE_SLABS = new AtomicLong();
+    private static final AtomicLong LIVE_SLAB_USED = new AtomicLong();
+    private static final AtomicLong LIVE_UNPOOLED = new AtomicLong();
+    private static final AtomicLong LIVE_UNPOOLED_BYTES = new AtomicLong();
+
+    private static final ThreadLocal<Slab> SLABS = new ThreadLocal<Slab>() {
+        @Override
+        protected Slab initialValue() {
+            return new Slab();
+        }
+    };
+
+    private static final class Tracked extends PhantomReference<ByteBuffer> {
+        private final boolean slab;
+        private final int size;
+        private volatile int used;
+
+        Tracked(final ByteBuffer referent, final boolean slab) {
+            super(referent, QUEUE);
+            this.slab = slab;
+            this.size = referent.capacity();
+        }
+    }
+
+    private static final class Slab {
+        private ByteBuffer buffer;
+        private Tracked tracked;
+        private int offset;
+
+        ByteBuffer carve(final int size) {
+            if (buffer == null || offset + size > POOL_SIZE) {
+                expunge();
+                buffer = ByteBuffer.allocateDirect(POOL_SIZE);
+                tracked = new Tracked(buffer, true);
+                TRACKED.add(tracked);
+                LIVE_SLABS.incrementAndGet();
+                offset = 0;
+            }
+            buffer.limit(offset + size).position(offset);
+            final ByteBuffer slice = buffer.slice();
+            buffer.clear();
+            final int next = Math.min(POOL_SIZE, (offset + size + ALIGNMENT - 1) & -ALIGNMENT);
+            tracked.used += next - offset;
+            LIVE_SLAB_USED.addAndGet(next - offset);
+            offset = next;
+            return slice;
+        }
+    }
+
+    private BufferPool() {
+    }
+
+    /**
+     * Allocates a zeroed direct buffer.
+     *
+     * @param size The capacity.
+     * @return The buffer, position 0 and limit at capacity.
+     */
+    public static ByteBuffer allocate(final int size) {
+        if (size > 0 && size < MAX_POOLED) {
+            POOLED_ALLOCATIONS.incrementAndGet();
+            return SLABS.get().carve(size);
+        }
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(size);
+        UNPOOLED_ALLOCATIONS.incrementAndGet();
+        if (size > 0) {
+            expunge();
+            TRACKED.add(new Tracked(buffer, false));
+            LIVE_UNPOOLED.incrementAndGet();
+            LIVE_UNPOOLED_BYTES.addAndGet(size);
+        }
+        return buffer;
+    }
+
+    private static void expunge() {
+        Reference<? extends ByteBuffer> ref;
+        while ((ref = QUEUE.poll()) != null) {
+            final Tracked tracked = (Tracked) ref;
+            if (TRACKED.remove(tracked)) {
+                if (tracked.slab) {
+                    LIVE_SLABS.decrementAndGet();
+                    LIVE_SLAB_USED.addAndGet(-tracked.used);
+                } else {
+                    LIVE_UNPOOLED.decrementAndGet();
+                    LIVE_UNPOOLED_BYTES.addAndGet(-tracked.size);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the number of buffers carved out of slabs.
+     *
+     * @return The count.
+     */
+    public static long pooledAllocations() {
+        return POOLED_ALLOCATIONS.get();
+    }
+
+    /**
+     * Returns the number of buffers allocated on their own.
+     *
+     * @return The count.
+     */
+    public static long unpooledAllocations() {
+        return UNPOOLED_ALLOCATIONS.get();
+    }
+
+    /**
+     * Returns the number of slabs still referenced.
+     *
+     * @return The count.
+     */
+    public static long liveSlabs() {
+        expunge();
+        return LIVE_SLABS.get();
+    }
+
+    /**
+     * Returns the number of unpooled buffers still referenced.
+     *
+     * @return The count.
+     */
+    public static long liveUnpooled() {
+        expunge();
+        return LIVE_UNPOOLED.get();
+    }
+
+    /**
+     * Returns the direct memory held by live slabs and unpooled buffers.
+     *
+     * @return The size in bytes.
+     */
+    public static long liveBytes() {
+        expunge();
+        return LIVE_SLABS.get() * POOL_SIZE + LIVE_UNPOOLED_BYTES.get();
+    }
+
+    /**
+     * Returns the fraction of live slab memory handed out to buffers.
+     *
+     * @return The occupancy, between 0 and 1.
+     */
+    public static double slabOccupancy() {
+        expunge();
+        final long slabs = LIVE_SLABS.get();
+        return slabs == 0 ? 0 : (double) LIVE_SLAB_USED.get() / (slabs * POOL_SIZE);
+    }
+}
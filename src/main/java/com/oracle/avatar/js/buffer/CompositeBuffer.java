@@ -0,0 +1,213 @@
+/*
+ * Copyright (c) 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package com.oracle.avatar.js.buffer;
+
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Presents a list of buffers as one logical, read-only buffer without
+ * copying them, for consumers that only read or scan the content, such as
+ * body collectors looking for a boundary. The chunks are shared, later
+ * changes to them are visible.
+ */
+public final class CompositeBuffer {
+
+    private final ByteBuffer[] chunks;
+    // starts[i] is the logical index of the first byte of chunks[i]
+    private final int[] starts;
+    private final int length;
+
+    public CompositeBuffer(final Buffer[] buffers) {
+        chunks = new ByteBuffer[buffers.length];
+        starts = new int[buffers.length];
+        int start = 0;
+        for (int i = 0; i < buffers.length; i++) {
+            final ByteBuffer chunk = buffers[i].underlying().duplicate();
+            chunk.clear();
+            chunks[i] = chunk;
+            starts[i] = start;
+            start += chunk.capacity();
+        }
+        length = start;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public int getByteAt(final int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException(String.valueOf(index));
+        }
+        final int chunk = chunkAt(index);
+        return chunks[chunk].get(index - starts[chunk]) & 0xff;
+    }
+
+    /**
+     * Returns the index of the first byte equal to value at or after from.
+     *
+     * @param value The byte, only the low 8 bits are used.
+     * @param from The index to start at.
+     * @return The index, or -1 if not found.
+     */
+    public int indexOf(final int value, final int from) {
+        final int start = Math.max(from, 0);
+        if (start >= length) {
+            return -1;
+        }
+        for (int i = chunkAt(start); i < chunks.length; i++) {
+            final int offset = Math.max(from - starts[i], 0);
+            final int found = Buffer.indexOf(chunks[i], (byte) value, offset, chunks[i].capacity());
+            if (found >= 0) {
+                return starts[i] + found;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the index of the first occurrence of a pattern at or after
+     * from, including occurrences that span chunks.
+     *
+     * @param needle The pattern.
+     * @param from The index to start at.
+     * @return The index, or -1 if not found.
+     */
+    public int indexOf(final Needle needle, final int from) {
+        Objects.requireNonNull(needle);
+        final int m = needle.length();
+        if (m == 0) {
+            return from <= length ? Math.max(from, 0) : -1;
+        }
+        if (length < m || from > length - m) {
+            return -1;
+        }
+        for (int i = chunkAt(Math.max(from, 0)); i < chunks.length; i++) {
+            final int start = starts[i];
+            final int end = start + chunks[i].capacity();
+            // occurrences within the chunk come first
+            final int found = needle.indexOf(chunks[i], Math.max(from - start, 0), chunks[i].capacity());
+            if (found >= 0) {
+                return start + found;
+            }
+            // then those starting in this chunk and ending in a later one
+            for (int p = Math.max(Math.max(from, start), end - m + 1); p < end && p <= length - m; p++) {
+                if (matches(needle, p)) {
+                    return p;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Copies a range into a buffer.
+     *
+     * @return The number of bytes copied.
+     */
+    public int copy(final Buffer target, final int targetStart, final int start, final int end) {
+        checkRange(start, end);
+        final ByteBuffer dst = target.underlying().duplicate();
+        dst.clear();
+        if (targetStart < 0 || targetStart > dst.capacity()) {
+            throw new IndexOutOfBoundsException(String.valueOf(targetStart));
+        }
+        dst.position(targetStart);
+        final int count = Math.min(end - start, dst.remaining());
+        int index = start;
+        final int last = start + count;
+        while (index < last) {
+            final int i = chunkAt(index);
+            final ByteBuffer src = chunks[i].duplicate();
+            final int offset = index - starts[i];
+            final int n = Math.min(src.capacity() - offset, last - index);
+            src.limit(offset + n);
+            src.position(offset);
+            dst.put(src);
+            index += n;
+        }
+        return count;
+    }
+
+    /**
+     * Returns a range as a buffer. A range within one chunk is a view of
+     * that chunk, other ranges are copied.
+     */
+    public Buffer slice(final int start, final int end) {
+        checkRange(start, end);
+        if (start < end) {
+            final int i = chunkAt(start);
+            if (end - starts[i] <= chunks[i].capacity()) {
+                final ByteBuffer view = chunks[i].duplicate();
+                view.limit(end - starts[i]);
+                view.position(start - starts[i]);
+                return new Buffer(view.slice());
+            }
+        }
+        final Buffer copy = new Buffer(end - start);
+        copy(copy, 0, start, end);
+        return copy;
+    }
+
+    public String toString(final String encoding, final int start, final int end) throws UnsupportedEncodingException {
+        return slice(start, end).toString(encoding, 0, end - start);
+    }
+
+    public Buffer toBuffer() {
+        return slice(0, length);
+    }
+
+    private void checkRange(final int start, final int end) {
+        if (start < 0 || start > end || end > length) {
+            throw new IndexOutOfBoundsException(start + ", " + end);
+        }
+    }
+
+    private boolean matches(final Needle needle, final int at) {
+        for (int j = 0; j < needle.length(); j++) {
+            if ((byte) getByteAt(at + j) != needle.byteAt(j)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // the last chunk starting at or before index, empty chunks are skipped
+    private int chunkAt(final int index) {
+        int i = Arrays.binarySearch(starts, index);
+        if (i < 0) {
+            return -i - 2;
+        }
+        // several chunks may start at index when some are empty
+        while (i + 1 < starts.length && starts[i + 1] == index) {
+            i++;
+        }
+        return i;
+    }
+}
@@ -25,6 +25,8 @@
 
 package com.oracle.avatar.js.buffer;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.Arrays;
 
 /**
@@ -36,15 +38,35 @@ import java.util.Arrays;
  */
 public final class HexUtils {
 
-    private static final char[] hexChars =
+    private static final byte[] hexChars =
             { '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f' };
 
     public static byte[] decode(final String str) {
-        final char[] chars = str.toCharArray();
-        final byte[] data = new byte[chars.length / 2 + 1];
-        int pos = 0;
+        final byte[] data = new byte[(str.length() + 1) / 2];
+        final int length = decode(str, ByteBuffer.wrap(data), true);
+        return length == data.length ? data : Arrays.copyOf(data, length);
+    }
+
+    /**
+     * Decodes hex digits straight into a buffer, stopping once the buffer has
+     * no room left for the next byte. Characters that are not hex digits are
+     * skipped, and a last digit without its pair is ignored; Buffer.write
+     * rejects strings of odd length before they get here.
+     *
+     * @param str The hex string.
+     * @param out The buffer, written from its position up to its limit.
+     * @return The number of bytes written.
+     */
+    public static int decode(final String str, final ByteBuffer out) {
+        return decode(str, out, false);
+    }
+
+    private static int decode(final String str, final ByteBuffer out, final boolean strict) {
+        final int start = out.position();
+        int high = -1;
         int hex;
-        for (char c: chars) {
+        for (int i = 0; i < str.length(); i++) {
+            final char c = str.charAt(i);
             if (c >= '0' && c <= '9') {
                 hex = c - '0' ;
             } else if (c >= 'A' && c <= 'F') {
@@ -54,27 +76,59 @@ public final class HexUtils {
             } else {
                 continue;
             }
-            if (pos % 2 == 0) {
-                data[pos/2] = (byte)(hex << 4);
+            if (high < 0) {
+                if (!out.hasRemaining()) {
+                    return out.position() - start;
+                }
+                high = hex;
             } else {
-                data[pos/2] += hex;
+                out.put((byte) ((high << 4) | hex));
+                high = -1;
             }
-            pos++;
         }
-        if (pos % 2 != 0) {
+        if (high >= 0 && strict) {
             throw new RuntimeException("odd number of hex digits found in input");
         }
-        return Arrays.copyOf(data, pos / 2);
+        return out.position() - start;
     }
 
     public static String encode(final byte[] bytes) {
-        final StringBuffer buf = new StringBuffer(bytes.length);
-        for (int i = 0; i < bytes.length; i++) {
-            final byte b = bytes[i];
-            buf.append(hexChars[(b & 0xf0) >> 4]);
-            buf.append(hexChars[b & 0x0f]);
+        return encode(ByteBuffer.wrap(bytes), 0, bytes.length);
+    }
+
+    /**
+     * Encodes a range of a buffer. Whole 8-byte words are read with one
+     * getLong and expanded to 16 digits.
+     *
+     * @param src The buffer, its position and limit are ignored.
+     * @param off The start of the range.
+     * @param length The length of the range.
+     * @return The hex string.
+     */
+    public static String encode(final ByteBuffer src, final int off, final int length) {
+        final byte[] out = new byte[length * 2];
+        final boolean swap = src.order() != ByteOrder.BIG_ENDIAN;
+        final int end = off + length;
+        int i = off;
+        int o = 0;
+        for (; end - i >= 8; i += 8) {
+            long word = src.getLong(i);
+            if (swap) {
+                word = Long.reverseBytes(word);
+            }
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                final int b = (int) (word >>> shift) & 0xff;
+                out[o] = hexChars[b >> 4];
+                out[o + 1] = hexChars[b & 0x0f];
+                o += 2;
+            }
+        }
+        for (; i < end; i++) {
+            final byte b = src.get(i);
+            out[o++] = hexChars[(b & 0xf0) >> 4];
+            out[o++] = hexChars[b & 0x0f];
         }
-        return buf.toString();
+        return Base64Codec.ascii(out, out.length);
     }
 
 }
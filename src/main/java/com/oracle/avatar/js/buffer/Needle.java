@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package com.oracle.avatar.js.buffer;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A byte pattern prepared for repeated searches, such as a multipart
+ * boundary or a protocol delimiter.
+ *
+ * Searches use Boyer-Moore-Horspool: the last byte of the window is
+ * compared first and, on a mismatch, the window moves by the distance from
+ * that byte's last occurrence in the pattern to the end of the pattern.
+ * Single byte patterns use {@link Buffer#indexOf(int, int)}.
+ */
+public final class Needle {
+
+    private final byte[] pattern;
+    private final int[] skip;
+
+    public Needle(final byte[] pattern) {
+        this.pattern = pattern.clone();
+        final int length = pattern.length;
+        skip = new int[256];
+        Arrays.fill(skip, Math.max(length, 1));
+        for (int i = 0; i < length - 1; i++) {
+            skip[pattern[i] & 0xff] = length - 1 - i;
+        }
+    }
+
+    public Needle(final Buffer pattern) {
+        this(pattern.array());
+    }
+
+    public int length() {
+        return pattern.length;
+    }
+
+    byte byteAt(final int index) {
+        return pattern[index];
+    }
+
+    /**
+     * Returns the index of the first occurrence of the pattern that lies
+     * within a range of the buffer.
+     *
+     * @param haystack The buffer, its position and limit are ignored.
+     * @param from The start of the range.
+     * @param to The end of the range, exclusive.
+     * @return The index, or -1 if the pattern does not occur.
+     */
+    public int indexOf(final ByteBuffer haystack, final int from, final int to) {
+        final int length = pattern.length;
+        if (length == 0) {
+            return from <= to ? from : -1;
+        }
+        if (length == 1) {
+            return Buffer.indexOf(haystack, pattern[0], from, to);
+        }
+        final int lastIndex = length - 1;
+        final byte last = pattern[lastIndex];
+        int i = Math.max(from, 0);
+        while (i <= to - length) {
+            final byte b = haystack.get(i + lastIndex);
+            if (b == last && matches(haystack, i, lastIndex)) {
+                return i;
+            }
+            i += skip[b & 0xff];
+        }
+        return -1;
+    }
+
+    private boolean matches(final ByteBuffer haystack, final int at, final int count) {
+        for (int j = 0; j < count; j++) {
+            if (haystack.get(at + j) != pattern[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -29,8 +29,8 @@ import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
 import java.nio.charset.Charset;
 import java.nio.charset.CharsetDecoder;
-import java.nio.charset.CoderResult;
 import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
 
 /**
  * A String decoder used to handle Buffer characters decoding.
@@ -40,68 +40,138 @@ import java.nio.charset.CodingErrorAction;
  * The way to implement byte per byte decoding of multi byte char is to use
  * CharsetDecoder.
  *
+ * The decoder streams: it reads straight from the Buffer, carries the bytes
+ * of a character split across writes in a small fixed buffer, and reuses
+ * its output buffer. ASCII runs in UTF-8 text are copied without going
+ * through the CharsetDecoder.
+ *
  */
 public class StringDecoder {
 
-    private CharsetDecoder decoder;
-    private ByteBuffer remaining;
+    // longest incomplete sequence plus the bytes needed to complete it
+    private static final int CARRY_SIZE = 8;
+    // larger output buffers are dropped once used
+    private static final int MAX_RETAINED = 64 * 1024;
+
+    private final CharsetDecoder decoder;
+    private final boolean utf8;
+    // base64 streams are encoded rather than decoded
+    private final Base64Codec.StreamEncoder base64;
+    // bytes of an incomplete character left over from the previous write
+    private final ByteBuffer carry = ByteBuffer.allocate(CARRY_SIZE);
     private CharBuffer out;
-    private final String charSet;
 
     public StringDecoder(String encoding) {
-        charSet = encoding;
-        init();
-    }
-
-    private void init() {
-        decoder = Charset.forName(charSet).newDecoder();
-        decoder.onMalformedInput(CodingErrorAction.REPORT);
-        remaining = null;
+        if ("base64".equals(encoding)) {
+            base64 = new Base64Codec.StreamEncoder();
+            decoder = null;
+            utf8 = false;
+            return;
+        }
+        final Charset charset = Charset.forName(encoding);
+        decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        utf8 = StandardCharsets.UTF_8.equals(charset);
+        base64 = null;
     }
 
     public String write(Buffer buffer) {
-        // The received buffer can be fully consumed
-        ByteBuffer buff = ByteBuffer.allocate(buffer.capacity());
-        buff.put(buffer.array());
-        buff.flip();
-        ByteBuffer nBuffer = buff;
-        if (remaining != null) {
-            nBuffer = ByteBuffer.allocate(buff.limit() + remaining.limit());
-            nBuffer.put(remaining);
-            nBuffer.put(buff);
-            nBuffer.flip();
-            remaining = null;
+        final ByteBuffer src = buffer.underlying().duplicate();
+        src.clear();
+        if (base64 != null) {
+            return base64.write(src);
+        }
+        reserve(src.remaining() + carry.position() + 1);
+        if (carry.position() > 0) {
+            completeCarry(src);
+        }
+        if (utf8) {
+            copyAscii(src);
         }
-        CoderResult res = decode(nBuffer);
-        if (nBuffer.remaining() != 0) {
-            // keep all that has not been read.
-            remaining = ByteBuffer.allocate(nBuffer.remaining());
-            remaining.put(nBuffer);
-            remaining.flip();
+        decode(src, false);
+        if (src.hasRemaining()) {
+            // an incomplete character at the end, kept for the next write
+            carry.put(src);
         }
-        out.flip();
+        return result();
+    }
 
-        return out.toString();
+    public String end() {
+        if (base64 != null) {
+            return base64.end();
+        }
+        // Keep invalid/incomplete when ending
+        reserve(carry.position() + 1);
+        carry.flip();
+        decode(carry, true);
+        decoder.flush(out);
+        carry.clear();
+        decoder.reset();
+        return result();
     }
 
-    private CoderResult decode(ByteBuffer input) {
-        CoderResult res = null;
-        out = CharBuffer.allocate(input.capacity());
-        do {
-            res = decoder.decode(input, out, true);
-            if (res.isOverflow()) {
-                out = CharBuffer.allocate(out.capacity() + input.limit());
+    // borrows bytes from src until the carried character is complete
+    private void completeCarry(final ByteBuffer src) {
+        final int carried = carry.position();
+        final int start = src.position();
+        final int borrowed = Math.min(src.remaining(), carry.remaining());
+        for (int i = 0; i < borrowed; i++) {
+            carry.put(src.get(start + i));
+        }
+        carry.flip();
+        decode(carry, false);
+        final int consumed = carry.position();
+        if (consumed >= carried) {
+            src.position(start + consumed - carried);
+            carry.clear();
+        } else {
+            src.position(start + borrowed);
+            carry.compact();
+        }
+    }
+
+    // the common case of plain ASCII text needs no decoder
+    private void copyAscii(final ByteBuffer src) {
+        final char[] chars = out.array();
+        int pos = out.position();
+        int i = src.position();
+        final int limit = src.limit();
+        for (; i < limit; i++) {
+            final byte b = src.get(i);
+            if (b < 0) {
+                break;
             }
-        } while (res.isOverflow());
-        return res;
+            chars[pos++] = (char) b;
+        }
+        src.position(i);
+        out.position(pos);
     }
 
-    public String end() {
-        // Keep invalid/incomplete when ending
-        decoder.onMalformedInput(CodingErrorAction.REPLACE);
-        decode(remaining == null ? ByteBuffer.allocate(0) : remaining);
-        out.flip();
-        init();
-        return out.toString();
+    private void decode(final ByteBuffer input, final boolean endOfInput) {
+        while (decoder.decode(input, out, endOfInput).isOverflow()) {
+            reserve(out.position() + input.remaining() + 1);
+        }
+    }
+
+    private void reserve(final int capacity) {
+        if (out == null) {
+            out = CharBuffer.allocate(Math.max(capacity, 256));
+        } else if (out.capacity() < capacity) {
+            final CharBuffer bigger = CharBuffer.allocate(Math.max(capacity, out.capacity() * 2));
+            out.flip();
+            bigger.put(out);
+            out = bigger;
+        }
+    }
+
+    private String result() {
+        final String str = new String(out.array(), 0, out.position());
+        if (out.capacity() > MAX_RETAINED) {
+            out = null;
+        } else {
+            out.clear();
+        }
+        return str;
     }
 }
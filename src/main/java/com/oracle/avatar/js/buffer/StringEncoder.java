@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package com.oracle.avatar.js.buffer;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Encodes strings for socket writes directly into pooled direct buffers.
+ *
+ * Strings that fit are encoded into a 4k buffer, larger strings into as many
+ * 64k buffers as needed, so a string write makes a single copy of its
+ * characters. The returned buffers are slices of pooled buffers which go back
+ * to the pool through {@link #release(ByteBuffer)} once written.
+ *
+ * An encoder is not thread safe, there is one per event loop.
+ */
+public final class StringEncoder {
+
+    private static final int SMALL_SIZE = 4 * 1024;
+    private static final int LARGE_SIZE = 64 * 1024;
+    private static final int MAX_POOLED = 32;
+    private static final ByteBuffer[] EMPTY = { ByteBuffer.allocateDirect(0) };
+
+    private final CharsetEncoder utf8 = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final ArrayDeque<ByteBuffer> small = new ArrayDeque<>();
+    private final ArrayDeque<ByteBuffer> large = new ArrayDeque<>();
+    private final Map<ByteBuffer, ByteBuffer> outstanding = new IdentityHashMap<>();
+
+    /**
+     * Encodes a string as UTF-8.
+     *
+     * @param str The string.
+     * @return The encoded bytes, in one or more buffers.
+     */
+    public ByteBuffer[] encodeUtf8(final String str) {
+        if (str.isEmpty()) {
+            return EMPTY;
+        }
+        final CharBuffer in = CharBuffer.wrap(str);
+        if (str.length() * (long) utf8.maxBytesPerChar() <= SMALL_SIZE) {
+            final ByteBuffer out = acquire(small, SMALL_SIZE);
+            encode(in, out);
+            return new ByteBuffer[] { slice(out) };
+        }
+        final List<ByteBuffer> chunks = new ArrayList<>();
+        while (in.hasRemaining()) {
+            final ByteBuffer out = acquire(large, LARGE_SIZE);
+            encode(in, out);
+            chunks.add(slice(out));
+        }
+        return chunks.toArray(new ByteBuffer[chunks.size()]);
+    }
+
+    /**
+     * Encodes a string as 7-bit ASCII, other characters are replaced by '?'
+     * like {@code String.getBytes("US-ASCII")} does.
+     *
+     * @param str The string.
+     * @return The encoded bytes, in one or more buffers.
+     */
+    public ByteBuffer[] encodeAscii(final String str) {
+        final int length = str.length();
+        if (length == 0) {
+            return EMPTY;
+        }
+        final boolean fits = length <= SMALL_SIZE;
+        final List<ByteBuffer> chunks = fits ? null : new ArrayList<ByteBuffer>();
+        int i = 0;
+        while (i < length) {
+            final ByteBuffer out = fits ? acquire(small, SMALL_SIZE) : acquire(large, LARGE_SIZE);
+            final int end = Math.min(length, i + out.remaining());
+            for (; i < end; i++) {
+                final char c = str.charAt(i);
+                if (c < 0x80) {
+                    out.put((byte) c);
+                } else {
+                    // a surrogate pair is one character
+                    if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(str.charAt(i + 1))) {
+                        i++;
+                    }
+                    out.put((byte) '?');
+                }
+            }
+            if (fits) {
+                return new ByteBuffer[] { slice(out) };
+            }
+            chunks.add(slice(out));
+        }
+        return chunks.toArray(new ByteBuffer[chunks.size()]);
+    }
+
+    /**
+     * Returns a written buffer to the pool. Buffers not returned by this
+     * encoder are ignored.
+     *
+     * @param buffer A buffer returned by one of the encode methods.
+     */
+    public void release(final ByteBuffer buffer) {
+        final ByteBuffer pooled = outstanding.remove(buffer);
+        if (pooled == null) {
+            return;
+        }
+        final ArrayDeque<ByteBuffer> pool = pooled.capacity() == SMALL_SIZE ? small : large;
+        if (pool.size() < MAX_POOLED) {
+            pooled.clear();
+            pool.push(pooled);
+        }
+    }
+
+    private void encode(final CharBuffer in, final ByteBuffer out) {
+        final CoderResult result = utf8.encode(in, out, true);
+        if (result.isUnderflow()) {
+            utf8.flush(out);
+            utf8.reset();
+        }
+        // on overflow the encoder keeps its state for the next buffer
+    }
+
+    private static ByteBuffer acquire(final ArrayDeque<ByteBuffer> pool, final int size) {
+        final ByteBuffer pooled = pool.poll();
+        return pooled != null ? pooled : ByteBuffer.allocateDirect(size);
+    }
+
+    private ByteBuffer slice(final ByteBuffer out) {
+        out.flip();
+        final ByteBuffer slice = out.slice();
+        outstanding.put(slice, out);
+        return slice;
+    }
+}
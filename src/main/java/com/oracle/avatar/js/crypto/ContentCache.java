@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package com.oracle.avatar.js.crypto;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.oracle.avatar.js.buffer.HexUtils;
+
+/**
+ * A content addressed cache, values are keyed by a digest of the input
+ * they were built from.
+ *
+ * The {@code maxEntries} most recently used values are held strongly.
+ * Older ones are only held weakly, they are found again for as long as
+ * something else, a live secure context for example, still uses them.
+ * All methods are synchronized, values are shared by all threads.
+ *
+ * @param <V> The value type, values must be immutable or thread safe.
+ */
+final class ContentCache<V> {
+
+    private final class WeakValue extends WeakReference<V> {
+        private final String key;
+
+        WeakValue(final String key, final V value) {
+            super(value, queue);
+            this.key = key;
+        }
+    }
+
+    private final int maxEntries;
+    private final ReferenceQueue<V> queue = new ReferenceQueue<>();
+    private final Map<String, WeakValue> weak = new HashMap<>();
+    private final LinkedHashMap<String, V> strong;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    ContentCache(final int maxEntries) {
+        this.maxEntries = maxEntries;
+        this.strong = new LinkedHashMap<String, V>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, V> eldest) {
+                if (size() > ContentCache.this.maxEntries) {
+                    // still reachable through the weak map
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns the digest of the given parts, to be used as a key. Parts are
+     * length prefixed, {@code null} parts are allowed.
+     */
+    static String key(final Object... parts) {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (final NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+        for (final Object part : parts) {
+            final byte[] bytes = part == null ? null :
+                    part instanceof byte[] ? (byte[]) part : part.toString().getBytes(StandardCharsets.UTF_8);
+            if (bytes == null) {
+                digest.update((byte) '-');
+            } else {
+                digest.update(Integer.toString(bytes.length).getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) ':');
+                digest.update(bytes);
+            }
+            digest.update((byte) 0);
+        }
+        return HexUtils.encode(digest.digest());
+    }
+
+    synchronized V get(final String key) {
+        expunge();
+        V value = strong.get(key);
+        if (value == null) {
+            final WeakValue ref = weak.get(key);
+            value = ref == null ? null : ref.get();
+            if (value != null) {
+                strong.put(key, value);
+            }
+        }
+        if (value == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return value;
+    }
+
+    /**
+     * Adds a value. If a value was added for the key meanwhile, that one is
+     * kept and returned.
+     */
+    synchronized V put(final String key, final V value) {
+        expunge();
+        final WeakValue ref = weak.get(key);
+        final V existing = ref == null ? null : ref.get();
+        if (existing != null) {
+            strong.put(key, existing);
+            return existing;
+        }
+        weak.put(key, new WeakValue(key, value));
+        strong.put(key, value);
+        return value;
+    }
+
+    private void expunge() {
+        Reference<? extends V> ref;
+        while ((ref = queue.poll()) != null) {
+            @SuppressWarnings("unchecked")
+            final WeakValue value = (WeakValue) ref;
+            if (weak.get(value.key) == value) {
+                weak.remove(value.key);
+            }
+        }
+    }
+
+    synchronized int size() {
+        expunge();
+        return weak.size();
+    }
+
+    synchronized long hits() {
+        return hits;
+    }
+
+    synchronized long misses() {
+        return misses;
+    }
+
+    synchronized long evictions() {
+        return evictions;
+    }
+}
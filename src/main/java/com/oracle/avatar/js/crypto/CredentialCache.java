@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package com.oracle.avatar.js.crypto;
+
+import java.io.ByteArrayInputStream;
+import java.security.KeyFactory;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509CRL;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.util.Enumeration;
+
+import com.oracle.avatar.js.buffer.Base64Decoder;
+
+/**
+ * Parsed certificates, CRLs, private keys and PKCS12 key stores, keyed by
+ * a digest of their PEM or PFX input.
+ *
+ * Clients that pass {@code ca}, {@code cert} or {@code key} options to each
+ * request parse the same PEM strings over and over; with this cache they
+ * are parsed once. Initialized {@code SSLContext}s are shared the same way
+ * by {@link SessionCache}.
+ *
+ * Each kind keeps its {@link #SIZE} most recently used values, older ones
+ * are kept while still referenced, see {@link ContentCache}. The size is
+ * set with {@code com.oracle.avatar.js.crypto.credentialCacheSize}.
+ */
+public final class CredentialCache {
+
+    private static final String PACKAGE = CredentialCache.class.getPackage().getName() + ".";
+
+    /**
+     * The number of values of each kind held strongly.
+     */
+    public static final int SIZE = Integer.getInteger(PACKAGE + "credentialCacheSize", 256);
+
+    private static final ContentCache<Certificate> CERTIFICATES = new ContentCache<>(SIZE);
+    private static final ContentCache<X509CRL> CRLS = new ContentCache<>(SIZE);
+    private static final ContentCache<PrivateKey> KEYS = new ContentCache<>(SIZE);
+    private static final ContentCache<KeyStore> KEY_STORES = new ContentCache<>(SIZE);
+
+    private CredentialCache() {
+    }
+
+    static Certificate certificate(final Crypto crypto, final String pem) throws Exception {
+        final String key = ContentCache.key("cert", pem);
+        final Certificate cached = CERTIFICATES.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        final byte[] cert = Base64Decoder.decode(crypto.removePEMHeaderAndFooter(pem));
+        final CertificateFactory certFactory = CertificateFactory.getInstance("X.509");
+        return CERTIFICATES.put(key, certFactory.generateCertificate(new ByteArrayInputStream(cert)));
+    }
+
+    static X509CRL crl(final Crypto crypto, final String pem) throws Exception {
+        final String key = ContentCache.key("crl", pem);
+        final X509CRL cached = CRLS.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        final byte[] bytes = Base64Decoder.decode(crypto.removePEMHeaderAndFooter(pem));
+        final CertificateFactory cf = CertificateFactory.getInstance("X.509");
+        try (ByteArrayInputStream stream = new ByteArrayInputStream(bytes)) {
+            return CRLS.put(key, (X509CRL) cf.generateCRL(stream));
+        }
+    }
+
+    static PrivateKey privateKey(final String algorithm, final PKCS8EncodedKeySpec spec) throws Exception {
+        final String key = ContentCache.key("key", algorithm, spec.getEncoded());
+        final PrivateKey cached = KEYS.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        final KeyFactory keyFactory = KeyFactory.getInstance(algorithm);
+        return KEYS.put(key, keyFactory.generatePrivate(spec));
+    }
+
+    /**
+     * Returns the loaded key store, which must not be modified.
+     */
+    static KeyStore pkcs12(final byte[] pfx, final String passPhrase) throws Exception {
+        final String key = ContentCache.key("pfx", pfx, passPhrase);
+        final KeyStore cached = KEY_STORES.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        try (ByteArrayInputStream stream = new ByteArrayInputStream(pfx)) {
+            final KeyStore pkcs12 = KeyStore.getInstance("PKCS12");
+            pkcs12.load(stream, passPhrase == null ? null : passPhrase.toCharArray());
+            // Check authentication because no Exception is thrown
+            // if the passphrase was wrong
+            final Enumeration<String> it = pkcs12.aliases();
+            while (it.hasMoreElements()) {
+                String alias = it.nextElement();
+                final Certificate cert = pkcs12.getCertificate(alias);
+                if (cert == null) {
+                    throw new Exception("Authentication failed");
+                }
+            }
+            return KEY_STORES.put(key, pkcs12);
+        }
+    }
+
+    /**
+     * Returns the number of cached values, of all kinds.
+     *
+     * @return The count.
+     */
+    public static int size() {
+        return CERTIFICATES.size() + CRLS.size() + KEYS.size() + KEY_STORES.size();
+    }
+
+    /**
+     * Returns the number of inputs that were found parsed.
+     *
+     * @return The count.
+     */
+    public static long hits() {
+        return CERTIFICATES.hits() + CRLS.hits() + KEYS.hits() + KEY_STORES.hits();
+    }
+
+    /**
+     * Returns the number of inputs that had to be parsed.
+     *
+     * @return The count.
+     */
+    public static long misses() {
+        return CERTIFICATES.misses() + CRLS.misses() + KEYS.misses() + KEY_STORES.misses();
+    }
+
+    /**
+     * Returns the number of values no longer held strongly.
+     *
+     * @return The count.
+     */
+    public static long evictions() {
+        return CERTIFICATES.evictions() + CRLS.evictions() + KEYS.evictions() + KEY_STORES.evictions();
+    }
+}
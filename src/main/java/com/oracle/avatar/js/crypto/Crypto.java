@@ -50,6 +50,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
 
 import javax.crypto.Cipher;
 import javax.crypto.KeyAgreement;
@@ -66,8 +67,8 @@ import javax.crypto.spec.SecretKeySpec;
 import com.oracle.avatar.js.buffer.Buffer;
 import com.oracle.avatar.js.buffer.Base64Decoder;
 import com.oracle.avatar.js.eventloop.Callback;
-import com.oracle.avatar.js.eventloop.Event;
 import com.oracle.avatar.js.eventloop.EventLoop;
+import com.oracle.avatar.js.eventloop.ThreadPool;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
@@ -593,7 +594,7 @@ public final class Crypto {
             @Override
             public Void call() throws Exception {
                 final Buffer buff = pbkdf2(password, salt, iteration, bytesLen);
-                eventLoop.post(new Event("crypto.pbkdf2", cb, null, buff));
+                eventLoop.post("crypto.pbkdf2", cb, null, buff);
                 return null;
             }
         };
@@ -696,7 +697,7 @@ public final class Crypto {
             @Override
             public Void call() throws Exception {
                 final Buffer rand = randomBytes(size);
-                eventLoop.post(new Event("crypto.randomBytes", cb, null, rand));
+                eventLoop.post("crypto.randomBytes", cb, null, rand);
                 return null;
             }
         };
@@ -717,7 +718,7 @@ public final class Crypto {
             @Override
             public Void call() throws Exception {
                 final Buffer rand = pseudoRandomBytes(size);
-                eventLoop.post(new Event("crypto.pseudoRandomBytes", cb, null, rand));
+                eventLoop.post("crypto.pseudoRandomBytes", cb, null, rand);
                 return null;
             }
         };
@@ -903,21 +904,26 @@ public final class Crypto {
 
     private void submitToLoop(final Callable<?> callable, final Callback cb) {
         final EventLoop.Handle handle = eventLoop.acquire();
-        eventLoop.submit(new Runnable() {
-            @Override
-            public void run() {
-                try {
-                    callable.call();
-                } catch (final Exception e) {
-                    if (LOG.enabled()) {
-                        LOG.log(e.getMessage());
-                        //e.printStackTrace();
+        try {
+            eventLoop.submit(ThreadPool.Category.CRYPTO, new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        callable.call();
+                    } catch (final Exception e) {
+                        if (LOG.enabled()) {
+                            LOG.log(e.getMessage());
+                            //e.printStackTrace();
+                        }
+                        eventLoop.post("crypto.error", cb, e, null);
+                    } finally {
+                        handle.close();
                     }
-                    eventLoop.post(new Event("crypto.error", cb, e, null));
-                } finally {
-                    handle.close();
                 }
-            }
-        });
+            });
+        } catch (final RejectedExecutionException e) {
+            eventLoop.post("crypto.error", cb, e, null);
+            handle.close();
+        }
     }
 }
@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package com.oracle.avatar.js.crypto;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The shared pool of {@code SSLEngine} buffers.
+ *
+ * Each TLS connection needs four buffers of the engine packet or
+ * application size, 16 to 17k each. Like OpenSSL's release buffers mode,
+ * a connection leases them when data flows and gives back the ones that
+ * are empty at the end of each operation, so idle keep-alive connections
+ * hold no buffer.
+ *
+ * Buffers are direct and recycled by capacity. At most {@link #MAX_IDLE}
+ * buffers, across all loops, wait in the pool; the others, as well as the
+ * odd-sized buffers grown on overflow, are left to the garbage collector.
+ * The limit is set with {@code com.oracle.avatar.js.crypto.maxIdleBuffers},
+ * 0 disables pooling.
+ */
+public final class EngineBuffers {
+
+    private static final String PACKAGE = EngineBuffers.class.getPackage().getName() + ".";
+
+    /**
+     * The maximum number of buffers kept in the pool.
+     */
+    public static final int MAX_IDLE = Integer.getInteger(PACKAGE + "maxIdleBuffers", 1024);
+
+    private static final ConcurrentMap<Integer, Queue<ByteBuffer>> POOLS = new ConcurrentHashMap<>();
+    private static final AtomicInteger LEASED = new AtomicInteger();
+    private static final AtomicInteger IDLE = new AtomicInteger();
+    private static final AtomicLong IDLE_BYTES = new AtomicLong();
+    private static final AtomicLong ALLOCATIONS = new AtomicLong();
+
+    private EngineBuffers() {
+    }
+
+    /**
+     * Leases a cleared buffer of the given capacity. The capacity becomes
+     * poolable.
+     */
+    static ByteBuffer lease(final int size) {
+        Queue<ByteBuffer> pool = POOLS.get(size);
+        if (pool == null) {
+            final Queue<ByteBuffer> created = new ConcurrentLinkedQueue<>();
+            pool = POOLS.putIfAbsent(size, created);
+            if (pool == null) {
+                pool = created;
+            }
+        }
+        final ByteBuffer buffer = pool.poll();
+        if (buffer == null) {
+            return grow(size);
+        }
+        IDLE.decrementAndGet();
+        IDLE_BYTES.addAndGet(-size);
+        LEASED.incrementAndGet();
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Leases a new buffer, without making its capacity poolable.
+     */
+    static ByteBuffer grow(final int size) {
+        ALLOCATIONS.incrementAndGet();
+        LEASED.incrementAndGet();
+        return ByteBuffer.allocateDirect(size);
+    }
+
+    /**
+     * Gives back a leased buffer, which must not be used anymore.
+     *
+     * @return {@code null}, for the field that held the buffer.
+     */
+    static ByteBuffer release(final ByteBuffer buffer) {
+        if (buffer == null) {
+            return null;
+        }
+        LEASED.decrementAndGet();
+        final int size = buffer.capacity();
+        final Queue<ByteBuffer> pool = POOLS.get(size);
+        if (pool != null && IDLE.incrementAndGet() <= MAX_IDLE) {
+            IDLE_BYTES.addAndGet(size);
+            pool.offer(buffer);
+        } else if (pool != null) {
+            IDLE.decrementAndGet();
+        }
+        return null;
+    }
+
+    /**
+     * Returns the number of buffers held by connections.
+     *
+     * @return The count.
+     */
+    public static int leased() {
+        return LEASED.get();
+    }
+
+    /**
+     * Returns the number of buffers waiting in the pool.
+     *
+     * @return The count.
+     */
+    public static int idle() {
+        return IDLE.get();
+    }
+
+    /**
+     * Returns the memory of the buffers waiting in the pool.
+     *
+     * @return The size in bytes.
+     */
+    public static long idleBytes() {
+        return IDLE_BYTES.get();
+    }
+
+    /**
+     * Returns the number of buffers allocated since startup.
+     *
+     * @return The count.
+     */
+    public static long allocations() {
+        return ALLOCATIONS.get();
+    }
+}
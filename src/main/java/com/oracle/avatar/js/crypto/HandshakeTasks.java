@@ -0,0 +1,210 @@
+/*
+ * Copyright (c) 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package com.oracle.avatar.js.crypto;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.oracle.avatar.js.eventloop.Callback;
+import com.oracle.avatar.js.eventloop.EventLoop;
+import com.oracle.avatar.js.eventloop.LatencyHistogram;
+import com.oracle.avatar.js.eventloop.ThreadPool;
+
+/**
+ * Runs the delegated tasks of TLS handshakes off the event thread.
+ *
+ * {@code SSLEngine} hands the expensive steps of a handshake, certificate
+ * validation and the key exchange, to delegated tasks. Run on the event
+ * thread, each handshake stalls every other connection of the loop for
+ * milliseconds. The tasks of a handshake step run on the crypto threads of
+ * the pool instead and the handshake resumes on its event loop.
+ *
+ * At most {@link #MAX_CONCURRENT} handshakes, across all loops, run tasks
+ * at the same time; the others wait in arrival order, so a burst of new
+ * connections cannot take every pool thread. The limit is set with
+ * {@code com.oracle.avatar.js.crypto.maxConcurrentHandshakes} and defaults
+ * to the number of processors; 0 runs the tasks on the event thread. Tasks
+ * the pool rejects also run on the event thread.
+ */
+public final class HandshakeTasks {
+
+    private static final String PACKAGE = HandshakeTasks.class.getPackage().getName() + ".";
+
+    /**
+     * The maximum number of handshakes running delegated tasks at once.
+     */
+    public static final int MAX_CONCURRENT = Integer.getInteger(PACKAGE + "maxConcurrentHandshakes",
+                                                                Runtime.getRuntime().availableProcessors());
+
+    private static final AtomicInteger RUNNING = new AtomicInteger();
+    private static final Queue<Batch> WAITING = new ConcurrentLinkedQueue<>();
+
+    private static final LatencyHistogram HANDSHAKES = new LatencyHistogram();
+    private static final LatencyHistogram TASKS = new LatencyHistogram();
+    private static final LatencyHistogram WAITS = new LatencyHistogram();
+
+    private static final class Batch implements Runnable {
+        private final EventLoop eventLoop;
+        private final EventLoop.Handle handle;
+        private final List<Runnable> tasks;
+        private final Callback done;
+        private final long queued = System.nanoTime();
+
+        private final Callback inline = new Callback() {
+            @Override
+            public void call(String name, Object[] args) {
+                run();
+            }
+        };
+
+        Batch(final EventLoop eventLoop, final List<Runnable> tasks, final Callback done) {
+            this.eventLoop = eventLoop;
+            this.handle = eventLoop.acquire();
+            this.tasks = tasks;
+            this.done = done;
+        }
+
+        @Override
+        public void run() {
+            final long begin = System.nanoTime();
+            WAITS.record(begin - queued);
+            Throwable error = null;
+            try {
+                for (final Runnable task : tasks) {
+                    task.run();
+                }
+            } catch (final Throwable ex) {
+                error = ex;
+            }
+            TASKS.record(System.nanoTime() - begin);
+            finish(error);
+        }
+
+        void finish(final Throwable error) {
+            eventLoop.post(done, error);
+            handle.close();
+            RUNNING.decrementAndGet();
+            drain();
+        }
+    }
+
+    private HandshakeTasks() {
+    }
+
+    static boolean enabled() {
+        return MAX_CONCURRENT > 0;
+    }
+
+    /**
+     * Runs tasks on the thread pool, then calls back on the event loop
+     * with the error thrown by a task, or {@code null}.
+     */
+    static void submit(final EventLoop eventLoop, final List<Runnable> tasks, final Callback done) {
+        WAITING.add(new Batch(eventLoop, tasks, done));
+        drain();
+    }
+
+    private static void drain() {
+        while (!WAITING.isEmpty()) {
+            final int running = RUNNING.get();
+            if (running >= MAX_CONCURRENT) {
+                // a running batch drains again when it finishes
+                return;
+            }
+            if (!RUNNING.compareAndSet(running, running + 1)) {
+                continue;
+            }
+            final Batch batch = WAITING.poll();
+            if (batch == null) {
+                RUNNING.decrementAndGet();
+                continue;
+            }
+            try {
+                batch.eventLoop.submit(ThreadPool.Category.CRYPTO, batch);
+            } catch (final RejectedExecutionException ex) {
+                // the pool is saturated or shutting down, the handshake
+                // itself is fine: run its tasks on its event thread
+                batch.eventLoop.post(batch.inline);
+                return;
+            }
+        }
+    }
+
+    static void recordHandshake(final long nanos) {
+        HANDSHAKES.record(nanos);
+    }
+
+    /**
+     * Returns the number of handshakes running delegated tasks.
+     *
+     * @return The count.
+     */
+    public static int running() {
+        return RUNNING.get();
+    }
+
+    /**
+     * Returns the number of handshakes waiting for a slot to run tasks.
+     *
+     * @return The count.
+     */
+    public static int waiting() {
+        return WAITING.size();
+    }
+
+    /**
+     * Returns the durations of completed handshakes, from start to
+     * finished, in nanoseconds.
+     *
+     * @return The histogram.
+     */
+    public static LatencyHistogram handshakes() {
+        return HANDSHAKES;
+    }
+
+    /**
+     * Returns the time spent running the delegated tasks of one handshake
+     * step, in nanoseconds.
+     *
+     * @return The histogram.
+     */
+    public static LatencyHistogram tasks() {
+        return TASKS;
+    }
+
+    /**
+     * Returns the time handshake steps waited for a slot and a pool thread,
+     * in nanoseconds.
+     *
+     * @return The histogram.
+     */
+    public static LatencyHistogram waits() {
+        return WAITS;
+    }
+}
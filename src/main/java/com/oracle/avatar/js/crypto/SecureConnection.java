@@ -60,6 +60,9 @@ import com.oracle.avatar.js.log.Logger;
  */
 public class SecureConnection {
 
+    // the largest TLS record payload, 2^14
+    private static final int MAX_RECORD = 16 * 1024;
+
     /**
      * Convey the session, no access to SSLContext outside current class.
      */
@@ -82,8 +85,16 @@ public class SecureConnection {
     private final boolean rejectUnauthorized;
     private final String serverName;
     private SSLEngine sslEngine;
+    // Leased from EngineBuffers while they hold data, null otherwise.
     private ByteBuffer localNetDataForPeer;
+    // encrypted bytes already handed out, from the start of localNetDataForPeer
+    private int netRead;
     private ByteBuffer localAppData;
+    // small cleartext writes, gathered into one record
+    private ByteBuffer gathered;
+    private boolean flushPosted;
+    // set once the event that gathered writes has been dispatched
+    private boolean flushDue;
     private ByteBuffer decryptedAppData;
     private ByteBuffer incomingFromPeer;
     private boolean shutingdown;
@@ -91,22 +102,33 @@ public class SecureConnection {
     private Exception exception;
     private final SSLContext ctx;
     private final Callback onRenegoStart;
+    private final Callback onResume;
+    private final EventLoop eventLoop;
     private boolean isRenegotiating;
+    // delegated tasks are running on the thread pool, they hold the engine
+    // lock: until they are done, state comes from fields, not the engine
+    private boolean tasksPending;
+    private int packetSize;
+    private long handshakeStart;
+    private long handshakeStartMillis;
+    private boolean sessionResumed;
 
     public SecureConnection(final EventLoop eventLoop,
                             final SecureContext context,
                             final boolean requestCertificate,
                             final boolean rejectUnauthorized,
-                            final Callback onRenegoStart) throws Exception {
-        this(eventLoop, true, context, requestCertificate, null, rejectUnauthorized, onRenegoStart);
+                            final Callback onRenegoStart,
+                            final Callback onResume) throws Exception {
+        this(eventLoop, true, context, requestCertificate, null, rejectUnauthorized, onRenegoStart, onResume);
     }
 
     public SecureConnection(final EventLoop eventLoop,
                             final SecureContext context,
                             final String serverName,
                             final boolean rejectUnauthorized,
-                            final Callback onRenegoStart) throws Exception {
-        this(eventLoop, false, context, false, serverName, rejectUnauthorized, onRenegoStart);
+                            final Callback onRenegoStart,
+                            final Callback onResume) throws Exception {
+        this(eventLoop, false, context, false, serverName, rejectUnauthorized, onRenegoStart, onResume);
     }
 
     private SecureConnection(final EventLoop eventLoop,
@@ -115,7 +137,9 @@ public class SecureConnection {
                              final boolean requestCertificate,
                              final String serverName,
                              final boolean rejectUnauthorized,
-                             final Callback onRenegoStart) throws Exception {
+                             final Callback onRenegoStart,
+                             final Callback onResume) throws Exception {
+        this.eventLoop = eventLoop;
         this.isServer = isServer;
         this.context = context;
         this.requestCertificate = requestCertificate;
@@ -124,6 +148,7 @@ public class SecureConnection {
         LOG = eventLoop.logger("tls-" + (isServer ? "server" : "client"));
         ctx = context.getContext(LOG, isServer, rejectUnauthorized);
         this.onRenegoStart = onRenegoStart;
+        this.onResume = onResume;
     }
 
     public static final class CipherSuite {
@@ -172,7 +197,7 @@ public class SecureConnection {
 
     public CipherSuite getCipherSuite() {
         CipherSuite suite = null;
-        if (sslEngine != null && sslEngine.getSession() != null) {
+        if (sslEngine != null && !tasksPending && sslEngine.getSession() != null) {
             final String suiteName = sslEngine.getSession().getCipherSuite();
             final String version = sslEngine.getSession().getProtocol();
             suite = new CipherSuite(SecureContext.toNodeCipherName(suiteName), suiteName, version);
@@ -189,7 +214,7 @@ public class SecureConnection {
     }
 
     public boolean isSessionReused() {
-        return context.isSessionReused();
+        return sessionResumed || context.isSessionReused();
     }
 
     private SSLEngine createSSLEngine(final SecureContext context) throws Exception {
@@ -198,6 +223,9 @@ public class SecureConnection {
         SSLParameters params = new SSLParameters();
 
         if (context.getHost() != null) {
+            if (!isServer) {
+                SessionCache.connecting(context.identity(), context.getHost(), context.getPort());
+            }
             engine = ctx.createSSLEngine(context.getHost(), context.getPort());
         } else {
             engine = ctx.createSSLEngine();
@@ -238,6 +266,7 @@ public class SecureConnection {
         }
 
         engine.setSSLParameters(params);
+        context.bind(engine);
         return engine;
     }
 
@@ -273,13 +302,11 @@ public class SecureConnection {
             assert sslEngine != null;
             started = true;
             assert sslEngine != null;
+            packetSize = sslEngine.getSession().getPacketBufferSize();
 
-            final SSLSession session = sslEngine.getSession();
-            localNetDataForPeer = ByteBuffer.allocate(session.getPacketBufferSize());
-            localAppData = ByteBuffer.allocate(session.getApplicationBufferSize());
-            decryptedAppData = ByteBuffer.allocate(session.getApplicationBufferSize());
-            incomingFromPeer = ByteBuffer.allocate(session.getPacketBufferSize());
-
+            // buffers are leased on the first read or write
+            handshakeStart = System.nanoTime();
+            handshakeStartMillis = System.currentTimeMillis();
             sslEngine.beginHandshake();
         } catch (final Exception ex) {
             exception = ex;
@@ -575,19 +602,63 @@ public class SecureConnection {
             return;
         }
         shutingdown = true;
+        if (!isHandshake() && !sslEngine.isOutboundDone()) {
+            // gathered writes go before the close_notify
+            try {
+                flushGathered();
+            } catch (final SSLException ex) {
+                LOG.log("WARNING, shutdown, Wrap Exception " + ex);
+            }
+        }
+        if (tasksPending) {
+            // closed by resume
+            return;
+        }
         sslEngine.closeOutbound();
     }
 
     public void close() {
         LOG.log("explicit close");
         started = false;
+        localNetDataForPeer = EngineBuffers.release(localNetDataForPeer);
+        netRead = 0;
+        localAppData = EngineBuffers.release(localAppData);
+        gathered = EngineBuffers.release(gathered);
+        flushDue = false;
+        decryptedAppData = EngineBuffers.release(decryptedAppData);
+        incomingFromPeer = EngineBuffers.release(incomingFromPeer);
+    }
+
+    /*
+     * Gives back the buffers that hold nothing, at the end of each operation.
+     * At rest all buffers are in write mode, the position is what they hold.
+     * The application data to wrap is always consumed.
+     */
+    private void releaseIdle() {
+        localAppData = EngineBuffers.release(localAppData);
+        if (localNetDataForPeer != null && localNetDataForPeer.position() == 0) {
+            localNetDataForPeer = EngineBuffers.release(localNetDataForPeer);
+        }
+        if (gathered != null && gathered.position() == 0) {
+            gathered = EngineBuffers.release(gathered);
+        }
+        if (decryptedAppData != null && decryptedAppData.position() == 0) {
+            decryptedAppData = EngineBuffers.release(decryptedAppData);
+        }
+        if (incomingFromPeer != null && incomingFromPeer.position() == 0) {
+            incomingFromPeer = EngineBuffers.release(incomingFromPeer);
+        }
+    }
+
+    private static ByteBuffer lease(final ByteBuffer buffer, final int size) {
+        return buffer != null ? buffer : EngineBuffers.lease(size);
     }
 
     public int clearPending() {
         if (!started) {
             return -1;
         }
-        return decryptedAppData.position();
+        return decryptedAppData == null ? 0 : decryptedAppData.position();
     }
 
     public int encPending() {
@@ -606,7 +677,7 @@ public class SecureConnection {
          * until the remote close_notify is received. If it is never received,
          * the socket will at some point be closed and this connection will be cleared.
          */
-        final int ret = hsNeedsForWrap() ? 1 : localNetDataForPeer.position();
+        final int ret = hsNeedsForWrap() ? 1 : localNetDataForPeer == null ? 0 : localNetDataForPeer.position() - netRead;
         return ret;
     }
 
@@ -655,6 +726,10 @@ public class SecureConnection {
         if (sslEngine == null) {
             return false;
         }
+        if (tasksPending) {
+            // only handshakes have delegated tasks
+            return started;
+        }
         final HandshakeStatus status = sslEngine.getHandshakeStatus();
         final boolean ret = started && (status != HandshakeStatus.FINISHED && status != HandshakeStatus.NOT_HANDSHAKING);
         return ret;
@@ -666,7 +741,8 @@ public class SecureConnection {
      * @return
      */
     private boolean hsNeedsForWrap() {
-        return isHandshake() && sslEngine.getHandshakeStatus() == HandshakeStatus.NEED_WRAP;
+        // nothing to wrap before the tasks are done, resume cycles the streams
+        return !tasksPending && isHandshake() && sslEngine.getHandshakeStatus() == HandshakeStatus.NEED_WRAP;
     }
     /**
      * Data received from the peer. In v10, encIn is not followed by an encOut in the
@@ -679,7 +755,15 @@ public class SecureConnection {
             return -1;
         }
         LOG.log("encIn, " + data + ", offset : " + offset + ", length : " + length);
+        if (tasksPending) {
+            // unwrapped by resume once the tasks are done
+            stage(data, offset, length);
+            return length;
+        }
         try {
+            packetSize = sslEngine.getSession().getPacketBufferSize();
+            incomingFromPeer = lease(incomingFromPeer, packetSize);
+            decryptedAppData = lease(decryptedAppData, sslEngine.getSession().getApplicationBufferSize());
             return unwrap(data, offset, length);
         } catch (final Exception ex) {
             LOG.log("WARNING, encIn, Unwrap Exception " + ex);
@@ -691,6 +775,8 @@ public class SecureConnection {
             // The next call to encOut will generate a close message
             // and this side of the connection is closed.
             shutdown();
+        } finally {
+            releaseIdle();
         }
         return 0;
     }
@@ -707,37 +793,32 @@ public class SecureConnection {
             return -1;
         }
         int wrote = 0;
-        if (localNetDataForPeer.position() != 0) {
-            LOG.log("encOut, encrypted data length " + localNetDataForPeer.position());
-            wrote = fillBuffer(localNetDataForPeer, pool);
-            // wrote is the min between localNetDataForPeer.limit() and pool.remaining()
-            // can't be greater than the localNetDataForPeer.limit().
-            if (wrote == localNetDataForPeer.limit()) {
-                localNetDataForPeer = ByteBuffer.allocate(sslEngine.getSession().getPacketBufferSize());
-            } else {
-                LOG.log("encOut, provided buffer is too small.");
-                localNetDataForPeer.compact();
+        try {
+            if (flushDue && !shutingdown && !isHandshake()) {
+                // tls.js cycles the encrypted stream after every write, the
+                // gathered writes are only sent once their event is done
+                flushDue = false;
+                flushGathered();
             }
-
-        } else {
-            try {
-                if (shutingdown) {
-                    if (!sslEngine.isOutboundDone() && !sslEngine.isInboundDone()) {
-                        wrote = wrapClose(pool, offset, length);
-                    }
-                } else {
-                    if (isHandshake()) {
-                        wrote = wrapHS(pool, offset, length);
-                    }
+            if (localNetDataForPeer != null && localNetDataForPeer.position() != netRead) {
+                LOG.log("encOut, encrypted data length " + (localNetDataForPeer.position() - netRead));
+                wrote = drainNet(pool, offset, length);
+            } else if (shutingdown && !tasksPending) {
+                if (!sslEngine.isOutboundDone() && !sslEngine.isInboundDone()) {
+                    wrote = wrapClose(pool, offset, length);
                 }
-            } catch (final Exception ex) {
-                LOG.log("WARNING, encOut, Wrap Exception " + ex);
-                exception = ex;
-                if (LOG.enabled()) {
-                    ex.printStackTrace();
-                }
-                shutdown();
+            } else if (isHandshake() && !tasksPending) {
+                wrote = wrapHS(pool, offset, length);
             }
+        } catch (final Exception ex) {
+            LOG.log("WARNING, encOut, Wrap Exception " + ex);
+            exception = ex;
+            if (LOG.enabled()) {
+                ex.printStackTrace();
+            }
+            shutdown();
+        } finally {
+            releaseIdle();
         }
         return wrote;
     }
@@ -758,8 +839,8 @@ public class SecureConnection {
         }
         LOG.log("clearIn offset " + offset + " length " + length);
         try {
-            final int ret = wrap(pool, offset, length);
-            return ret;
+            gather(pool.toByteBuffer(offset, offset + length));
+            return length;
         } catch (final Exception ex) {
             LOG.log("WARNING, clearIn, Wrap Exception " + ex);
             exception = ex;
@@ -767,6 +848,8 @@ public class SecureConnection {
                 ex.printStackTrace();
             }
             shutdown();
+        } finally {
+            releaseIdle();
         }
         return -1;
 
@@ -778,16 +861,12 @@ public class SecureConnection {
             return -1;
         }
         int ret = 0;
-        if (decryptedAppData.position() != 0) {
-            ret = fillBuffer(decryptedAppData, pool);
-            // ret is the min between decryptedAppData.limit() and pool.remaining()
-            // can't be greater than the decryptedAppData.limit().
-            if (ret == decryptedAppData.limit()) {
-                decryptedAppData =
-                    ByteBuffer.allocate(sslEngine.getSession().getApplicationBufferSize());
+        if (decryptedAppData != null && decryptedAppData.position() != 0) {
+            ret = fillBuffer(decryptedAppData, pool, offset, length);
+            if (decryptedAppData.position() == 0) {
+                decryptedAppData = EngineBuffers.release(decryptedAppData);
             } else {
                 LOG.log("clearOut, provided buffer is too small.");
-                decryptedAppData.compact();
             }
             LOG.log("clearOut produced " + ret + " bytes for application");
         }
@@ -805,12 +884,11 @@ public class SecureConnection {
             switch (res.getStatus()) {
                 case CLOSED:
                 case OK: {
-                    encLength += fillBuffer(localNetDataForPeer, pool);
-                    localNetDataForPeer.compact();
+                    encLength += drainNet(pool, offset + encLength, length - encLength);
                     break;
                 }
                 case BUFFER_OVERFLOW: {
-                    localNetDataForPeer = handleBufferOverFlow(sslEngine.getSession().getPacketBufferSize(), localNetDataForPeer);
+                    growNet(sslEngine.getSession().getPacketBufferSize());
                     break;
                 }
                 case BUFFER_UNDERFLOW: {
@@ -827,20 +905,19 @@ public class SecureConnection {
             initWrap();
             do {
                 // Generate handshaking data
-                localNetDataForPeer.clear();
+                compactNet();
                 final SSLEngineResult res = sslEngine.wrap(localAppData, localNetDataForPeer);
                 LOG.log("--HS-- wrap " + res + ", buffer to fill " + pool);
                 switch (res.getStatus()) {
                     case OK:
-                        encLength += fillBuffer(localNetDataForPeer, pool);
-                        localNetDataForPeer.compact();
+                        encLength += drainNet(pool, offset + encLength, length - encLength);
                         break;
                     case CLOSED: {
                         shutdown();
                         break;
                     }
                     case BUFFER_OVERFLOW: {
-                        localNetDataForPeer = handleBufferOverFlow(sslEngine.getSession().getPacketBufferSize(), localNetDataForPeer);
+                        growNet(sslEngine.getSession().getPacketBufferSize());
                         break;
                     }
                     case BUFFER_UNDERFLOW: {
@@ -849,6 +926,7 @@ public class SecureConnection {
                 }
                 if (res.getHandshakeStatus() == HandshakeStatus.FINISHED) {
                     LOG.log("--HS-- FINISHED, Cipher suite [ " + getCipherSuite() + "] Session [" + HexUtils.encode(sslEngine.getSession().getId()) + "]");
+                    handshakeFinished();
                 }
              // Loop must stop when the provided buffer is full.
             } while (sslEngine.getHandshakeStatus() == HandshakeStatus.NEED_WRAP && encLength < length);
@@ -857,39 +935,118 @@ public class SecureConnection {
         return encLength;
     }
 
-    private int wrap(final Buffer pool, final int offset, final int length) throws SSLException {
-        if (pool != null) {
-            localAppData.clear();
-            localAppData = safeAllocation(localAppData, pool, offset, length);
-            // Allocating more than the packet size will avoid some useless Buffer Overflow
-            // If some content, means that socket has reached its limit and content is accumulating
-            // at some point, user will stop write content (write returning false) and
-            // the accumulated content will be read and piped to socket.
-            // User will then receive drain event to push more data (if needed)
-            if (localNetDataForPeer.position() == 0) {
-                localNetDataForPeer = ByteBuffer.allocate(Math.max(sslEngine.getSession().getPacketBufferSize(), length));
-            }
-        } else {
-            // default buffer allocation
-            initWrap();
-        }
-        int consumed = 0;
+    // Handshake wrap, no application data.
+    private void wrapEmpty() throws SSLException {
+        initWrap();
         SSLEngineResult res;
         do {
             res = sslEngine.wrap(localAppData, localNetDataForPeer);
+            LOG.log("wrap " + res + ", enc length " + localNetDataForPeer.position());
+            switch (res.getStatus()) {
+                case OK: {
+                    break;
+                }
+                case CLOSED: {
+                    shutdown();
+                    return;
+                }
+                case BUFFER_OVERFLOW: {
+                    growNet(sslEngine.getSession().getPacketBufferSize());
+                    break;
+                }
+                case BUFFER_UNDERFLOW: {
+                    throw new RuntimeException("NOT EXPECTING THIS BUFFER_UNDERFLOW");
+                }
+            }
+        } while (res.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW);
+    }
+
+    /*
+     * Writes are gathered into records. A record is wrapped as soon as it is
+     * full; whole records of a large write are wrapped directly from the
+     * caller's buffer. The last partial record is sent once the current
+     * event is dispatched, or before the close_notify on shutdown.
+     */
+    private void gather(final ByteBuffer src) throws SSLException {
+        final int record = Math.min(MAX_RECORD, sslEngine.getSession().getApplicationBufferSize());
+        final int pending = gathered == null ? 0 : gathered.position();
+        if (pending != 0) {
+            // complete the pending record with the head of this write
+            final ByteBuffer head = src.duplicate();
+            head.limit(head.position() + Math.min(record - pending, src.remaining()));
+            gathered.put(head);
+            src.position(head.limit());
+            if (gathered.position() < record) {
+                postFlush();
+                return;
+            }
+            flushGathered();
+        }
+        final int whole = src.remaining() - src.remaining() % record;
+        if (whole != 0) {
+            final ByteBuffer records = src.duplicate();
+            records.limit(records.position() + whole);
+            wrapApp(records);
+            src.position(records.limit());
+        }
+        if (src.hasRemaining()) {
+            // the tail starts the next record
+            gathered = lease(gathered, sslEngine.getSession().getApplicationBufferSize());
+            gathered.put(src);
+            postFlush();
+        }
+    }
+
+    private void flushGathered() throws SSLException {
+        if (gathered != null && gathered.position() != 0) {
+            gathered.flip();
+            wrapApp(gathered);
+            gathered.clear();
+        }
+    }
 
+    private void postFlush() {
+        if (flushPosted) {
+            return;
+        }
+        flushPosted = true;
+        eventLoop.post(new Callback() {
+            @Override
+            public void call(final String name, final Object[] args) throws Exception {
+                flushPosted = false;
+                if (started && gathered != null && gathered.position() != 0) {
+                    flushDue = true;
+                    // tls.js cycles the encrypted stream, calling encOut
+                    onResume.call("tls.flush", null);
+                }
+            }
+        });
+    }
+
+    // Encrypts all of src into localNetDataForPeer, the only copy of the data.
+    private void wrapApp(final ByteBuffer src) throws SSLException {
+        final int packet = sslEngine.getSession().getPacketBufferSize();
+        localNetDataForPeer = lease(localNetDataForPeer, packet);
+        compactNet();
+        // room for all records, so that the output is not grown record by record
+        final int records = (src.remaining() + MAX_RECORD - 1) / MAX_RECORD;
+        final int needed = Math.max(packet, src.remaining() + records * (packet - MAX_RECORD));
+        if (localNetDataForPeer.remaining() < needed) {
+            growNet(needed);
+        }
+        while (src.hasRemaining()) {
+            final SSLEngineResult res = sslEngine.wrap(src, localNetDataForPeer);
             LOG.log("wrap " + res + " bytes consumed " + res.bytesConsumed() + ", enc length " + localNetDataForPeer.position());
-            consumed += res.bytesConsumed();
             switch (res.getStatus()) {
                 case OK: {
                     break;
                 }
                 case CLOSED: {
                     shutdown();
-                    return length;
+                    return;
                 }
                 case BUFFER_OVERFLOW: {
-                    localNetDataForPeer = handleBufferOverFlow(sslEngine.getSession().getPacketBufferSize(), localNetDataForPeer);
+                    growNet(packet);
                     break;
                 }
                 case BUFFER_UNDERFLOW: {
@@ -897,14 +1054,44 @@ public class SecureConnection {
                     throw new RuntimeException("NOT EXPECTING THIS BUFFER_UNDERFLOW");
                 }
             }
-        } while (res.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW || consumed < length);
+        }
+    }
+
+    // Moves the pending encrypted bytes to the start of localNetDataForPeer.
+    private void compactNet() {
+        if (netRead != 0) {
+            localNetDataForPeer.flip();
+            localNetDataForPeer.position(netRead);
+            localNetDataForPeer.compact();
+            netRead = 0;
+        }
+    }
 
-        return length;
+    private void growNet(final int size) {
+        compactNet();
+        localNetDataForPeer = handleBufferOverFlow(size, localNetDataForPeer);
+    }
+
+    // Hands out pending encrypted bytes to the provided buffer.
+    private int drainNet(final Buffer pool, final int offset, final int length) {
+        final int end = Math.min(localNetDataForPeer.position(), netRead + length);
+        final ByteBuffer src = localNetDataForPeer.duplicate();
+        src.limit(end).position(netRead);
+        final int n = copy(src, pool, offset);
+        netRead = end;
+        if (netRead == localNetDataForPeer.position()) {
+            localNetDataForPeer.clear();
+            netRead = 0;
+        }
+        return n;
     }
 
     private void initWrap() {
-        localNetDataForPeer = ByteBuffer.allocate(sslEngine.getSession().getPacketBufferSize());
-        localAppData = ByteBuffer.allocate(sslEngine.getSession().getApplicationBufferSize());
+        EngineBuffers.release(localNetDataForPeer);
+        netRead = 0;
+        EngineBuffers.release(localAppData);
+        localNetDataForPeer = EngineBuffers.lease(sslEngine.getSession().getPacketBufferSize());
+        localAppData = EngineBuffers.lease(sslEngine.getSession().getApplicationBufferSize());
     }
 
     private int unwrap(final Buffer data, final int offset, final int length) throws Exception {
@@ -921,6 +1108,8 @@ public class SecureConnection {
                 if(before && !after) {
                     LOG.log("unwrap, handshake renegociation");
                     isRenegotiating = true;
+                    handshakeStart = System.nanoTime();
+                    handshakeStartMillis = System.currentTimeMillis();
                     onRenegoStart.call("renegotiation.start", null);
                 }
             } while (res.getStatus() == SSLEngineResult.Status.OK
@@ -939,12 +1128,14 @@ public class SecureConnection {
             }
             if (res.getHandshakeStatus() == HandshakeStatus.FINISHED) {
                 LOG.log("--HS-- FINISHED, Session [" + HexUtils.encode(sslEngine.getSession().getId()) + "]");
+                handshakeFinished();
             }
             // If there is some data in the incoming buffer, then loop to decrypt it.
-            // Termination occurs when there is not enough in incoming to decrypt
-            // or if Closed has been received embedded in the current packet.
+            // Termination occurs when there is not enough in incoming to decrypt,
+            // if Closed has been received embedded in the current packet or
+            // if the handshake waits for its delegated tasks.
         } while (res.getStatus() != SSLEngineResult.Status.BUFFER_UNDERFLOW && res.getStatus() != SSLEngineResult.Status.CLOSED
-                && incomingFromPeer.hasRemaining());
+                && incomingFromPeer.hasRemaining() && !tasksPending);
         readLength = endUnwrap(res, length);
 
         return readLength;
@@ -953,9 +1144,23 @@ public class SecureConnection {
 
     private void initUnwrap(final Buffer data, final int offset, final int length) {
         LOG.log("start unwrap, incomingFromPeer.position == " + incomingFromPeer.position());
+        if (data == null) {
+            // resuming after delegated tasks, unwrap what is left
+            incomingFromPeer.flip();
+            return;
+        }
         incomingFromPeer = safeAllocation(incomingFromPeer, data, offset, length);
     }
 
+    // keeps bytes from the peer, incomingFromPeer stays in write mode
+    private void stage(final Buffer data, final int offset, final int length) {
+        incomingFromPeer = lease(incomingFromPeer, packetSize);
+        if (incomingFromPeer.remaining() < length) {
+            incomingFromPeer = handleBufferOverFlow(length, incomingFromPeer);
+        }
+        incomingFromPeer.put(data.toByteBuffer(offset, offset + length));
+    }
+
     private int endUnwrap(final SSLEngineResult res, final int length) throws SSLException {
         final int readLength = length;
         incomingFromPeer.compact();
@@ -977,7 +1182,8 @@ public class SecureConnection {
                 break;
             }
             case BUFFER_UNDERFLOW: {
-                incomingFromPeer = handleBufferUnderFlow(sslEngine.getSession().getPacketBufferSize(), incomingFromPeer);
+                // the tasks of the step may have started, use the known size
+                incomingFromPeer = handleBufferUnderFlow(tasksPending ? packetSize : sslEngine.getSession().getPacketBufferSize(), incomingFromPeer);
                 break;
             }
         }
@@ -987,26 +1193,38 @@ public class SecureConnection {
     private static ByteBuffer handleBufferUnderFlow(final int size, final ByteBuffer underflowed) {
         ByteBuffer b = underflowed;
         if (size > underflowed.capacity()) {
-            b = ByteBuffer.allocate(size);
+            b = EngineBuffers.grow(size);
             underflowed.flip();
             b.put(underflowed);
+            EngineBuffers.release(underflowed);
         }
         return b;
     }
 
     private static ByteBuffer handleBufferOverFlow(final int size, final ByteBuffer overflowed) {
-        final ByteBuffer b = ByteBuffer.allocate(size + overflowed.position());
+        final ByteBuffer b = EngineBuffers.grow(size + overflowed.position());
         overflowed.flip();
         b.put(overflowed);
+        EngineBuffers.release(overflowed);
         return b;
     }
 
-    private static int fillBuffer(final ByteBuffer byteBuffer, final Buffer buffer) {
+    private static int fillBuffer(final ByteBuffer byteBuffer, final Buffer buffer, final int offset, final int length) {
         byteBuffer.flip();
-        final byte[] content = new byte[Math.min(byteBuffer.limit(), buffer.remaining())];
-        byteBuffer.get(content);
-        buffer.put(content);
-        return content.length;
+        final ByteBuffer src = byteBuffer.duplicate();
+        src.limit(src.position() + Math.min(src.remaining(), length));
+        final int n = copy(src, buffer, offset);
+        byteBuffer.position(byteBuffer.position() + n);
+        byteBuffer.compact();
+        return n;
+    }
+
+    private static int copy(final ByteBuffer src, final Buffer buffer, final int offset) {
+        final int n = src.remaining();
+        buffer.toByteBuffer(offset, offset + n).put(src);
+        // as if written with a relative put
+        buffer.position(offset + n);
+        return n;
     }
 
     private ByteBuffer safeAllocation(ByteBuffer buffer, final Buffer data, final int offset, final int length) {
@@ -1015,12 +1233,25 @@ public class SecureConnection {
             buffer = handleBufferOverFlow(buffer.remaining() + length, buffer);
             LOG.log("Overflow, length " + length + ", new Buffer capacity " + buffer.capacity() +", buffer position " + buffer.position());
         }
-        buffer.put(data.array(), offset, length);
+        buffer.put(data.toByteBuffer(offset, offset + length));
         buffer.flip();
         return buffer;
     }
 
+    private void handshakeFinished() {
+        if (handshakeStart != 0) {
+            HandshakeTasks.recordHandshake(System.nanoTime() - handshakeStart);
+            handshakeStart = 0;
+        }
+        final String host = isServer ? null : context.getHost();
+        sessionResumed = SessionCache.finished(context.identity(), host, context.getPort(),
+                                               sslEngine.getSession(), handshakeStartMillis);
+    }
+
     private void otherStates() throws Exception {
+        if (tasksPending) {
+            return;
+        }
         if (sslEngine.getHandshakeStatus() == HandshakeStatus.NEED_TASK) {
             LOG.log("--HS-- NEED_TASK");
             doTasks();
@@ -1029,11 +1260,39 @@ public class SecureConnection {
     }
 
     private void doTasks() throws Exception {
+        // the SNI callback is called from the tasks, it must run on the loop
+        if (!HandshakeTasks.enabled() || context.hasSNICallback()) {
+            Runnable dtask;
+            while ((dtask = sslEngine.getDelegatedTask()) != null) {
+                // Certificate are checked during this phase
+                dtask.run();
+            }
+            tasksDone();
+            return;
+        }
+
+        // Certificate are checked and keys computed during this phase,
+        // run it on the thread pool and resume on the event loop.
+        final List<Runnable> tasks = new ArrayList<>(2);
         Runnable dtask;
         while ((dtask = sslEngine.getDelegatedTask()) != null) {
-            // Certificate are checked during this phase
-            dtask.run();
+            tasks.add(dtask);
         }
+        if (tasks.isEmpty()) {
+            tasksDone();
+            return;
+        }
+        tasksPending = true;
+        LOG.log("--HS-- " + tasks.size() + " tasks submitted");
+        HandshakeTasks.submit(eventLoop, tasks, new Callback() {
+            @Override
+            public void call(final String name, final Object[] args) throws Exception {
+                resume(args == null ? null : (Throwable) args[0]);
+            }
+        });
+    }
+
+    private void tasksDone() throws Exception {
         LOG.log("--HS-- tasks done, status " + sslEngine.getHandshakeStatus());
 
         /*
@@ -1045,7 +1304,45 @@ public class SecureConnection {
          * When SSL renegotiation
          */
         if(!isRenegotiating) {
-            wrap(null, 0, 0);
+            wrapEmpty();
+        }
+    }
+
+    /*
+     * Back on the event loop once the delegated tasks are done. Produces the
+     * next handshake messages, unwraps what the peer sent in the meantime and
+     * lets tls.js cycle the streams to move the data.
+     */
+    private void resume(final Throwable error) throws Exception {
+        tasksPending = false;
+        if (!started) {
+            return;
+        }
+        try {
+            if (shutingdown) {
+                // shut down while the tasks ran
+                sslEngine.closeOutbound();
+                return;
+            }
+            if (error != null) {
+                throw error instanceof Exception ? (Exception) error : new SSLException(error);
+            }
+            tasksDone();
+            otherStates();
+            if (!tasksPending && incomingFromPeer != null && incomingFromPeer.position() != 0) {
+                decryptedAppData = lease(decryptedAppData, sslEngine.getSession().getApplicationBufferSize());
+                unwrap(null, 0, 0);
+            }
+        } catch (final Exception ex) {
+            LOG.log("WARNING, delegated tasks Exception " + ex);
+            exception = ex;
+            if (LOG.enabled()) {
+                ex.printStackTrace();
+            }
+            shutdown();
+        } finally {
+            releaseIdle();
+            onResume.call("tls.resume", null);
         }
     }
 }
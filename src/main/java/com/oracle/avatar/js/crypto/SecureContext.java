@@ -25,23 +25,25 @@
 
 package com.oracle.avatar.js.crypto;
 
-import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
 import java.security.Key;
-import java.security.KeyFactory;
 import java.security.KeyStore;
+import java.security.MessageDigest;
 import java.security.cert.Certificate;
 import java.security.cert.CertificateException;
-import java.security.cert.CertificateFactory;
 import java.security.cert.X509CRL;
 import java.security.cert.X509Certificate;
 import java.security.spec.PKCS8EncodedKeySpec;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.net.Socket;
 import java.security.Principal;
 import java.security.PrivateKey;
@@ -61,6 +63,7 @@ import javax.net.ssl.X509TrustManager;
 
 import com.oracle.avatar.js.buffer.Base64Decoder;
 import com.oracle.avatar.js.buffer.Buffer;
+import com.oracle.avatar.js.buffer.HexUtils;
 import com.oracle.avatar.js.eventloop.Callback;
 import com.oracle.avatar.js.log.Logger;
 import java.util.Random;
@@ -83,7 +86,6 @@ public final class SecureContext {
     private static final Map<String, String> JAVA_CIPHER_SUITES = new HashMap<>();
 
     private Callback sniCallback;
-    private Random random = new Random();
     private static String[] toJavaProtocols(final String secureProtocol) {
         if (secureProtocol == null) {
             return null;
@@ -120,13 +122,16 @@ public final class SecureContext {
     }
 
     /**
-     * Wrapper required to handle SNI Certificate/hostname association
+     * Wrapper required to handle SNI Certificate/hostname association.
+     * The SSLContext, and this wrapper, can be shared by several contexts
+     * and loops, so it logs through the context bound to the engine.
      */
-    private class KeyManagerWrapper extends X509ExtendedKeyManager {
+    private static final class KeyManagerWrapper extends X509ExtendedKeyManager {
 
+        private final Random random = new Random();
         private X509ExtendedKeyManager wrapped;
-        private Map<String, PrivateKey> sniPrivateKeys = new HashMap<>();
-        private Map<String, X509Certificate[]> sniCertificates = new HashMap<>();
+        private Map<String, PrivateKey> sniPrivateKeys = new ConcurrentHashMap<>();
+        private Map<String, X509Certificate[]> sniCertificates = new ConcurrentHashMap<>();
 
         public KeyManagerWrapper(KeyManager[] keyManagers) {
             for (KeyManager km : keyManagers) {
@@ -143,33 +148,27 @@ public final class SecureContext {
 
         @Override
         public String[] getClientAliases(String alias, Principal[] prncpls) {
-            LOG.log("SNI getClientAliases " + alias);
             return wrapped.getClientAliases(alias, prncpls);
         }
 
         @Override
         public String chooseClientAlias(String[] strings, Principal[] prncpls, Socket socket) {
-            LOG.log("SNI chooseClientAlias ");
             return wrapped.chooseClientAlias(strings, prncpls, socket);
         }
 
         @Override
         public String[] getServerAliases(String alias, Principal[] prncpls) {
-            LOG.log("SNI getServerAliases " + alias);
             return wrapped.getServerAliases(alias, prncpls);
         }
 
         @Override
         public String chooseServerAlias(String alias, Principal[] prncpls, Socket socket) {
-            LOG.log("SNI chooseServerAlias " + alias);
             return wrapped.chooseServerAlias(alias, prncpls, socket);
         }
 
         @Override
         public X509Certificate[] getCertificateChain(String alias) {
             X509Certificate[] certs = sniCertificates.remove(alias);
-            LOG.log("SNI getCertificateChain " + alias + " certs " +
-                    (certs == null ? "0" : certs.length));
             if (certs != null) {
                 return certs;
             } else {
@@ -180,8 +179,6 @@ public final class SecureContext {
         @Override
         public PrivateKey getPrivateKey(String alias) {
             PrivateKey pk = sniPrivateKeys.remove(alias);
-            LOG.log("SNI getPrivateKey " + alias +
-                    ", pkey " + pk == null ? "null" : "pkey");
             if (pk != null) {
                 return pk;
             } else {
@@ -200,28 +197,33 @@ public final class SecureContext {
         public String chooseEngineServerAlias(String keyType,
                 Principal[] issuers,
                 SSLEngine engine) {
-            LOG.log("SNI, chooseEngineServerAlias for " +  keyType);
-            SSLSession session = engine.getHandshakeSession();
-            if (session instanceof ExtendedSSLSession) {
+            // only an engine bound to a context with an SNI callback runs
+            // one, and only that context's, on its event thread
+            final SecureContext owner = owner(engine);
+            SSLSession session = engine == null ? null : engine.getHandshakeSession();
+            if (owner != null && session instanceof ExtendedSSLSession) {
+                final Logger LOG = owner.LOG;
+                LOG.log("SNI, chooseEngineServerAlias for " +  keyType);
                 ExtendedSSLSession es = (ExtendedSSLSession) session;
                 for (SNIServerName sni : es.getRequestedServerNames()) {
                     SNIHostName hn = new SNIHostName(sni.getEncoded());
                     LOG.log("SNI, SNI host name " + hn.getAsciiName());
-                    SecureContext ctx = retrieveSNICallbackContext(hn);
+                    SecureContext ctx = retrieveSNICallbackContext(owner, hn);
                     if (ctx != null) {
-                        String alias = retrieveInSNICallback(ctx, keyType, hn);
+                        String alias = retrieveInSNICallback(LOG, ctx, keyType, hn);
                         LOG.log("SNI, SNI configuration returned alias " + alias);
                         return alias;
                     }
                 }
+                LOG.log("SNI, no SNI configuration, using the standard manager");
             }
-            String alias = wrapped.chooseEngineServerAlias(keyType, issuers, engine);
-            LOG.log("SNI, no SNI configuration, standard manager returned alias " + alias);
-            return alias;
+            return wrapped.chooseEngineServerAlias(keyType, issuers, engine);
 
         }
 
-        private SecureContext retrieveSNICallbackContext(SNIHostName hn) {
+        private SecureContext retrieveSNICallbackContext(SecureContext owner, SNIHostName hn) {
+            final Logger LOG = owner.LOG;
+            final Callback sniCallback = owner.sniCallback;
             if (sniCallback == null) {
                 return null;
             }
@@ -247,10 +249,10 @@ public final class SecureContext {
             return ctx;
         }
 
-        private String retrieveInSNICallback(SecureContext ctx, String keyType, SNIHostName hn) {
+        private String retrieveInSNICallback(Logger LOG, SecureContext ctx, String keyType, SNIHostName hn) {
             String alias = null;
             try {
-                alias = store(keyType, ctx.getKeyStore(), ctx.passPhrase);
+                alias = store(LOG, keyType, ctx.getKeyStore(), ctx.passPhrase);
                 LOG.log("SNI computed alias " + alias);
             } catch (Exception ex) {
                 LOG.log("SNI Exception when retrieving key/certificate, " + ex);
@@ -261,7 +263,7 @@ public final class SecureContext {
 
         // Returns non null if a PKey and a Certificate have been retrieved
         // for the given key type.
-        private String store(String keyType, KeyStore ks, String passphrase) throws Exception {
+        private String store(Logger LOG, String keyType, KeyStore ks, String passphrase) throws Exception {
             Enumeration<String> aliases = ks.aliases();
             while (aliases.hasMoreElements()) {
                 String alias = aliases.nextElement();
@@ -291,7 +293,7 @@ public final class SecureContext {
     /**
      *
      */
-    private class TrustManagerWrapper implements X509TrustManager {
+    private static final class TrustManagerWrapper implements X509TrustManager {
 
         private final TrustManager[] managers;
 
@@ -304,7 +306,8 @@ public final class SecureContext {
             // certificate check is delegated post HS.
         }
 
-        public void isClientTrusted(final X509Certificate[] chain, final String type) throws CertificateException {
+        // LOG is the checking context's, the wrapper can be shared
+        public void isClientTrusted(final Logger LOG, final X509Certificate[] chain, final String type) throws CertificateException {
             for (X509Certificate c : chain) {
                 LOG.log("Client certificate subject " + c.getSubjectDN() + ", issuer " + c.getIssuerDN());
             }
@@ -328,7 +331,7 @@ public final class SecureContext {
             // certificate check is delegated post HS.
         }
 
-        public void isServerTrusted(final X509Certificate[] chain, final String type) throws CertificateException {
+        public void isServerTrusted(final Logger LOG, final X509Certificate[] chain, final String type) throws CertificateException {
             for (X509Certificate c : chain) {
                 LOG.log("Server certificate subject " + c.getSubjectDN() + ", issuer " + c.getIssuerDN());
             }
@@ -372,10 +375,21 @@ public final class SecureContext {
     private EncryptedPrivateKeyInfo encryptedPK;
     private PKCS8EncodedKeySpec nonEncryptedPK;
     private SSLContext sslContext;
+    // the cache entry of sslContext, the cache only holds it weakly once
+    // evicted, so it stays shared for as long as this context lives
+    private SessionCache.Shared shared;
     private boolean sessionReused;
     private TrustManagerWrapper trustWrapper;
     private String host;
     private int port;
+    // digest of the configuration, see identity()
+    private final MessageDigest fingerprint;
+    private String identity;
+
+    // Shared SSLContexts serve several secure contexts, the key manager finds
+    // the SNI callback of a connection through its engine.
+    private static final Map<SSLEngine, SecureContext> SNI_OWNERS =
+            Collections.synchronizedMap(new WeakHashMap<SSLEngine, SecureContext>());
 
     private Logger LOG;
 
@@ -409,12 +423,46 @@ public final class SecureContext {
         JAVA_CIPHER_SUITES.put("NULL-SHA", "SSL_RSA_WITH_NULL_SHA");
         this.crypto = crypto;
         this.enabledProtocols = toJavaProtocols(secureProtocol);
+        this.fingerprint = MessageDigest.getInstance("SHA-256");
+        fingerprint("protocol", secureProtocol);
+    }
+
+    private void fingerprint(final String name, final String value) {
+        fingerprint(name, value == null ? null : value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void fingerprint(final String name, final byte[] value) {
+        if (identity != null) {
+            // as before, the SSLContext is built once and then kept
+            return;
+        }
+        fingerprint.update(name.getBytes(StandardCharsets.UTF_8));
+        if (value != null) {
+            fingerprint.update((byte) '=');
+            fingerprint.update(Integer.toString(value.length).getBytes(StandardCharsets.UTF_8));
+            fingerprint.update((byte) ':');
+            fingerprint.update(value);
+        }
+        fingerprint.update((byte) 0);
+    }
+
+    /**
+     * The identity of the configuration, a digest of everything set on this
+     * context. Contexts with the same identity share their SSLContext, and
+     * TLS sessions. Later changes are ignored, like for the SSLContext.
+     */
+    String identity() {
+        if (identity == null) {
+            identity = HexUtils.encode(fingerprint.digest());
+        }
+        return identity;
     }
 
     public void setCipherSuites(final String lst) {
         if (lst == null) {
             throw new IllegalArgumentException("Invalid null cipher suite");
         }
+        fingerprint("ciphers", lst);
         final String[] split = lst.split(":");
         for (final String cs : split) {
             ciphers.add(toJavaCipherSuite(cs));
@@ -440,12 +488,13 @@ public final class SecureContext {
     }
 
     public void setPemCertificate(final String pemCertificate) throws Exception {
-        final byte[] cert = Base64Decoder.decode(crypto.removePEMHeaderAndFooter(pemCertificate));
-        final CertificateFactory certFactory = CertificateFactory.getInstance("X.509");
-        certificate = certFactory.generateCertificate(new ByteArrayInputStream(cert));
+        fingerprint("cert", pemCertificate);
+        certificate = CredentialCache.certificate(crypto, pemCertificate);
     }
 
     public void setKey(final String key, final String passPhrase) throws Exception {
+        fingerprint("key", key);
+        fingerprint("passphrase", passPhrase);
         this.passPhrase = passPhrase;
         final byte[] bytes = Base64Decoder.decode(crypto.removePEMHeaderAndFooter(key));
         if (passPhrase == null) {
@@ -458,10 +507,8 @@ public final class SecureContext {
     }
 
     public void addTrustedPemCertificate(final String pemCertificate) throws Exception {
-        final byte[] cert = Base64Decoder.decode(crypto.removePEMHeaderAndFooter(pemCertificate));
-        final CertificateFactory certFactory = CertificateFactory.getInstance("X.509");
-        final Certificate certif = certFactory.generateCertificate(new ByteArrayInputStream(cert));
-        trustedCAList.add(certif);
+        fingerprint("ca", pemCertificate);
+        trustedCAList.add(CredentialCache.certificate(crypto, pemCertificate));
     }
 
     @SuppressWarnings("unchecked")
@@ -470,35 +517,21 @@ public final class SecureContext {
     }
 
     public void addPemCRL(final String pemCRL) throws Exception {
-        final byte[] bytes = Base64Decoder.decode(crypto.removePEMHeaderAndFooter(pemCRL));
-        final CertificateFactory cf = CertificateFactory.getInstance("X.509");
-        X509CRL crl;
-        try (ByteArrayInputStream stream = new ByteArrayInputStream(bytes)) {
-            crl = (X509CRL) cf.generateCRL(stream);
-        }
-        crlList.add(crl);
+        fingerprint("crl", pemCRL);
+        crlList.add(CredentialCache.crl(crypto, pemCRL));
     }
 
     public void setSessionId(final Object sessionId) {
+        fingerprint("sessionIdContext", sessionId == null ? null : sessionId.toString());
         this.sessionId = sessionId;
     }
 
     public void loadPKCS12(final Buffer pfx, final String passPhrase) throws Exception {
+        final byte[] bytes = pfx.array();
+        fingerprint("pfx", bytes);
+        fingerprint("passphrase", passPhrase);
         this.passPhrase = passPhrase;
-        try (ByteArrayInputStream stream = new ByteArrayInputStream(pfx.array())) {
-            pkcs12 = KeyStore.getInstance("PKCS12");
-            pkcs12.load(stream, passPhrase == null ? null : passPhrase.toCharArray());
-            // Check authentication because no Exception is thrown
-            // if the passphrase was wrong
-            final Enumeration<String> it = pkcs12.aliases();
-            while (it.hasMoreElements()) {
-                String alias = it.nextElement();
-                final Certificate cert = pkcs12.getCertificate(alias);
-                if (cert == null) {
-                    throw new Exception("Authentication failed");
-                }
-            }
-        }
+        pkcs12 = CredentialCache.pkcs12(bytes, passPhrase);
     }
 
     /**
@@ -518,8 +551,7 @@ public final class SecureContext {
                 ks.setKeyEntry(alias, encryptedPK.getEncoded(), chain);
             } else {
                 if (nonEncryptedPK != null) {
-                    final KeyFactory keyFactory = KeyFactory.getInstance(certificate.getPublicKey().getAlgorithm());
-                    final Key pk = keyFactory.generatePrivate(nonEncryptedPK);
+                    final Key pk = CredentialCache.privateKey(certificate.getPublicKey().getAlgorithm(), nonEncryptedPK);
                     ks.setKeyEntry(alias, pk, null, chain);
                 } else {
                     // no secure configuration, should not be called.
@@ -550,12 +582,39 @@ public final class SecureContext {
             return sslContext;
         }
 
-        sslContext = SSLContext.getInstance("TLS");
-        sslContext.init(getCustomKeyManagers(), getTrustManagers(), null);
+        final String id = identity();
+        shared = SessionCache.get(id);
+        if (shared == null) {
+            final SSLContext built = SSLContext.getInstance("TLS");
+            built.init(getCustomKeyManagers(), getTrustManagers(), null);
+            shared = SessionCache.share(id, built, trustWrapper);
+        } else {
+            LOG.log("Sharing SSLContext " + id);
+        }
+        sslContext = shared.sslContext;
+        trustWrapper = (TrustManagerWrapper) shared.trustManager;
 
         return sslContext;
     }
 
+    boolean hasSNICallback() {
+        return sniCallback != null;
+    }
+
+    /**
+     * Makes the SNI callback of this context the one used for the engine.
+     */
+    void bind(final SSLEngine engine) {
+        if (sniCallback != null) {
+            SNI_OWNERS.put(engine, this);
+        }
+    }
+
+    // the context bound to the engine, null if it has no SNI callback
+    private static SecureContext owner(final SSLEngine engine) {
+        return engine == null ? null : SNI_OWNERS.get(engine);
+    }
+
     private KeyManager[] getCustomKeyManagers() throws Exception {
         KeyManager[] managers = getKeyManagers();
         try {
@@ -625,7 +684,7 @@ public final class SecureContext {
 
     public void isServerTrusted(X509Certificate[] chain, String authType) throws Exception {
         assert trustWrapper != null;
-        trustWrapper.isServerTrusted(chain, authType);
+        trustWrapper.isServerTrusted(LOG, chain, authType);
     }
 
     public void isClientTrusted(X509Certificate[] chain, String authType) throws Exception {
@@ -639,7 +698,7 @@ public final class SecureContext {
         }
         // Then if the chain is trusted.
         assert trustWrapper != null;
-        trustWrapper.isClientTrusted(chain, authType);
+        trustWrapper.isClientTrusted(LOG, chain, authType);
     }
 
     public void setContext(final SSLContext sslContext) {
@@ -0,0 +1,296 @@
+/*
+ * Copyright (c) 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package com.oracle.avatar.js.crypto;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.X509TrustManager;
+
+/**
+ * The JVM wide TLS session cache.
+ *
+ * JSSE keeps sessions in the session contexts of an {@code SSLContext}, and
+ * a client only resumes a session of the same {@code SSLContext} for the
+ * same host and port. Secure contexts with the same configuration (see
+ * {@link SecureContext#identity()}) therefore share one {@code SSLContext},
+ * whatever the event loop or the number of {@code createCredentials} calls,
+ * so that their connections resume each other's sessions. The
+ * {@link #MAX_CONTEXTS} most recently used contexts are kept, older ones
+ * as long as a secure context still uses them.
+ *
+ * The server and client session contexts hold at most {@link #SIZE}
+ * sessions for {@link #TIMEOUT} seconds. Client sessions are also tracked
+ * by context and host:port, across all contexts: the JVM holds at most
+ * {@link #SIZE} of them, evicted ones are invalidated so that they are not
+ * resumed anymore.
+ *
+ * The limits are set with {@code com.oracle.avatar.js.crypto.sessionCacheSize},
+ * {@code com.oracle.avatar.js.crypto.sessionTimeout} and
+ * {@code com.oracle.avatar.js.crypto.sessionContexts}.
+ */
+public final class SessionCache {
+
+    private static final String PACKAGE = SessionCache.class.getPackage().getName() + ".";
+
+    /**
+     * The maximum number of sessions per session context, and of tracked
+     * client sessions.
+     */
+    public static final int SIZE = Integer.getInteger(PACKAGE + "sessionCacheSize", 20 * 1024);
+
+    /**
+     * The session lifetime in seconds.
+     */
+    public static final int TIMEOUT = Integer.getInteger(PACKAGE + "sessionTimeout", 300);
+
+    /**
+     * The maximum number of shared {@code SSLContext}s.
+     */
+    public static final int MAX_CONTEXTS = Integer.getInteger(PACKAGE + "sessionContexts", 64);
+
+    static final class Shared {
+        final SSLContext sslContext;
+        final X509TrustManager trustManager;
+
+        private Shared(final SSLContext sslContext, final X509TrustManager trustManager) {
+            this.sslContext = sslContext;
+            this.trustManager = trustManager;
+        }
+    }
+
+    private static final class ClientSession {
+        private final SSLSession session;
+        private final long expires;
+
+        private ClientSession(final SSLSession session, final long expires) {
+            this.session = session;
+            this.expires = expires;
+        }
+    }
+
+    private static final ContentCache<Shared> CONTEXTS = new ContentCache<>(MAX_CONTEXTS);
+
+    private static final Map<String, ClientSession> CLIENTS = new LinkedHashMap<>(16, 0.75f, true);
+
+    private static final AtomicLong HITS = new AtomicLong();
+    private static final AtomicLong MISSES = new AtomicLong();
+    private static final AtomicLong EVICTIONS = new AtomicLong();
+    private static final AtomicLong EXPIRATIONS = new AtomicLong();
+    private static final AtomicLong SERVER_HITS = new AtomicLong();
+    private static final AtomicLong SERVER_MISSES = new AtomicLong();
+
+    private SessionCache() {
+    }
+
+    /**
+     * Returns the shared context of a configuration, or {@code null}.
+     */
+    static Shared get(final String identity) {
+        return CONTEXTS.get(identity);
+    }
+
+    /**
+     * Shares a context built for a configuration. If another one was
+     * shared meanwhile, that one is returned.
+     */
+    static Shared share(final String identity, final SSLContext sslContext,
+                        final X509TrustManager trustManager) {
+        configure(sslContext.getServerSessionContext());
+        configure(sslContext.getClientSessionContext());
+        return CONTEXTS.put(identity, new Shared(sslContext, trustManager));
+    }
+
+    private static void configure(final SSLSessionContext sessions) {
+        if (sessions != null) {
+            sessions.setSessionCacheSize(SIZE);
+            sessions.setSessionTimeout(TIMEOUT);
+        }
+    }
+
+    /**
+     * Called before a client handshake, drops the expired session of the
+     * peer so that it is not resumed.
+     */
+    static synchronized void connecting(final String identity, final String host, final int port) {
+        final String key = key(identity, host, port);
+        final ClientSession client = CLIENTS.get(key);
+        if (client != null && client.expires <= System.currentTimeMillis()) {
+            CLIENTS.remove(key);
+            client.session.invalidate();
+            EXPIRATIONS.incrementAndGet();
+        }
+    }
+
+    /**
+     * Called once a handshake is finished.
+     *
+     * @param identity The configuration.
+     * @param host The peer host of a client, {@code null} on the server side.
+     * @param port The peer port of a client.
+     * @param session The negotiated session.
+     * @param started When the handshake started, in milliseconds.
+     * @return {@code true} if the session was resumed.
+     */
+    static boolean finished(final String identity, final String host, final int port,
+                            final SSLSession session, final long started) {
+        // a resumed session was created by an earlier handshake
+        final boolean resumed = session.getCreationTime() < started;
+        if (host == null) {
+            (resumed ? SERVER_HITS : SERVER_MISSES).incrementAndGet();
+            return resumed;
+        }
+        (resumed ? HITS : MISSES).incrementAndGet();
+        final ClientSession client = new ClientSession(session,
+                session.getCreationTime() + TimeUnit.SECONDS.toMillis(TIMEOUT));
+        synchronized (SessionCache.class) {
+            CLIENTS.put(key(identity, host, port), client);
+            final Iterator<ClientSession> it = CLIENTS.values().iterator();
+            while (CLIENTS.size() > SIZE && it.hasNext()) {
+                final ClientSession eldest = it.next();
+                it.remove();
+                if (eldest.session != session) {
+                    eldest.session.invalidate();
+                }
+                EVICTIONS.incrementAndGet();
+            }
+        }
+        return resumed;
+    }
+
+    private static String key(final String identity, final String host, final int port) {
+        return identity + '|' + host + ':' + port;
+    }
+
+    /**
+     * Returns the number of client handshakes that resumed a session.
+     *
+     * @return The count.
+     */
+    public static long hits() {
+        return HITS.get();
+    }
+
+    /**
+     * Returns the number of full client handshakes.
+     *
+     * @return The count.
+     */
+    public static long misses() {
+        return MISSES.get();
+    }
+
+    /**
+     * Returns the number of client sessions dropped because the cache was
+     * full.
+     *
+     * @return The count.
+     */
+    public static long evictions() {
+        return EVICTIONS.get();
+    }
+
+    /**
+     * Returns the number of client sessions dropped because they were too
+     * old.
+     *
+     * @return The count.
+     */
+    public static long expirations() {
+        return EXPIRATIONS.get();
+    }
+
+    /**
+     * Returns the number of server handshakes that resumed a session.
+     *
+     * @return The count.
+     */
+    public static long serverHits() {
+        return SERVER_HITS.get();
+    }
+
+    /**
+     * Returns the number of full server handshakes.
+     *
+     * @return The count.
+     */
+    public static long serverMisses() {
+        return SERVER_MISSES.get();
+    }
+
+    /**
+     * Returns the number of tracked client sessions.
+     *
+     * @return The count.
+     */
+    public static synchronized int size() {
+        return CLIENTS.size();
+    }
+
+    /**
+     * Returns the number of shared contexts.
+     *
+     * @return The count.
+     */
+    public static int contexts() {
+        return CONTEXTS.size();
+    }
+
+    /**
+     * Returns the number of secure contexts that found their SSLContext
+     * already initialized.
+     *
+     * @return The count.
+     */
+    public static long contextHits() {
+        return CONTEXTS.hits();
+    }
+
+    /**
+     * Returns the number of SSLContexts initialized.
+     *
+     * @return The count.
+     */
+    public static long contextMisses() {
+        return CONTEXTS.misses();
+    }
+
+    /**
+     * Returns the number of shared contexts no longer held strongly, they
+     * are dropped once no secure context uses them.
+     *
+     * @return The count.
+     */
+    public static long contextEvictions() {
+        return CONTEXTS.evictions();
+    }
+}
@@ -27,10 +27,11 @@ package com.oracle.avatar.js.dns;
 
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.util.concurrent.RejectedExecutionException;
 
 import com.oracle.avatar.js.eventloop.Callback;
-import com.oracle.avatar.js.eventloop.Event;
 import com.oracle.avatar.js.eventloop.EventLoop;
+import com.oracle.avatar.js.eventloop.ThreadPool;
 
 public final class DNS {
 
@@ -43,45 +44,55 @@ public final class DNS {
     public void getHostByAddress(final String address,
                                  final Callback callback) {
         final EventLoop.Handle handle = eventLoop.acquire();
-        eventLoop.submit(new Runnable() {
-            @Override
-            public void run() {
-                try {
-                    final InetAddress[] hostAddresses = InetAddress.getAllByName(address);
-                    final String[] hostNames = new String[hostAddresses.length];
-                    for (int i = 0; i < hostAddresses.length; i++) {
-                        hostNames[i] = hostAddresses[i].getHostName();
+        try {
+            eventLoop.submit(ThreadPool.Category.DNS, new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        final InetAddress[] hostAddresses = InetAddress.getAllByName(address);
+                        final String[] hostNames = new String[hostAddresses.length];
+                        for (int i = 0; i < hostAddresses.length; i++) {
+                            hostNames[i] = hostAddresses[i].getHostName();
+                        }
+                        eventLoop.post("dns.host", callback, null, hostNames);
+                    } catch (final UnknownHostException e) {
+                        eventLoop.post("dns.host.error", callback, e, null);
+                    } finally {
+                        handle.close();
                     }
-                    eventLoop.post(new Event("dns.host", callback, null, hostNames));
-                } catch (final UnknownHostException e) {
-                    eventLoop.post(new Event("dns.host.error", callback, e, null));
-                } finally {
-                    handle.close();
                 }
-            }
-        });
+            });
+        } catch (final RejectedExecutionException e) {
+            eventLoop.post("dns.host.error", callback, e, null);
+            handle.close();
+        }
     }
 
     public void getAddressByHost(final String hostname,
                                  final Callback callback) {
         final EventLoop.Handle handle = eventLoop.acquire();
-        eventLoop.submit(new Runnable() {
-            @Override
-            public void run() {
-                try {
-                    final InetAddress[] hostAddresses = InetAddress.getAllByName(hostname);
-                    final String[] addresses = new String[hostAddresses.length];
-                    for (int i = 0; i < hostAddresses.length; i++) {
-                        addresses[i] = hostAddresses[i].getHostAddress();
+        try {
+            eventLoop.submit(ThreadPool.Category.DNS, new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        final InetAddress[] hostAddresses = InetAddress.getAllByName(hostname);
+                        final String[] addresses = new String[hostAddresses.length];
+                        for (int i = 0; i < hostAddresses.length; i++) {
+                            addresses[i] = hostAddresses[i].getHostAddress();
+                        }
+                        eventLoop.post("dns.address", callback, null, addresses);
+                    } catch (final UnknownHostException e) {
+                        eventLoop.post("dns.address.error", callback, e, null);
+                    } finally {
+                        handle.close();
                     }
-                    eventLoop.post(new Event("dns.address", callback, null, addresses));
-                } catch (final UnknownHostException e) {
-                    eventLoop.post(new Event("dns.address.error", callback, e, null));
-                } finally {
-                    handle.close();
                 }
-            }
-        });
+            });
+        } catch (final RejectedExecutionException e) {
+            eventLoop.post("dns.address.error", callback, e, null);
+            handle.close();
+        }
     }
 
 }
@@ -0,0 +1,381 @@
+/*
+ * Copyright (c) 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package com.oracle.avatar.js.eventloop;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.net.InetSocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A group of event loops serving the same listening sockets in one process.
+ *
+ * The first loop that listens on an address opens the socket; further loops
+ * listening on the same address join it. One acceptor thread per socket
+ * accepts connections and hands them round-robin to the member loops, each of
+ * which adopts the accepted descriptor with a TCP handle of its own.
+ *
+ * The JDK has no public accessor for the descriptor of a socket channel, so
+ * it is read from the channel implementation. That needs a JDK 8 style
+ * runtime ({@code --add-opens java.base/sun.nio.ch} on later releases) and a
+ * platform where libuv adopts the same descriptor, which excludes Windows.
+ * {@link #isSupported()} reports whether both hold.
+ */
+public final class Cluster {
+
+    private static final Field FD_FIELD = fdField();
+    private static final boolean WINDOWS = System.getProperty("os.name").startsWith("Windows");
+
+    private final int size;
+    private final Map<String, Listener> listeners = new HashMap<>();
+
+    /**
+     * Creates a cluster.
+     *
+     * @param size The number of loops in the cluster.
+     */
+    public Cluster(final int size) {
+        this.size = size;
+    }
+
+    /**
+     * Returns {@code true} if accepted sockets can be handed to a loop on
+     * this platform and runtime.
+     *
+     * @return {@code true} if clusters are supported.
+     */
+    public static boolean isSupported() {
+        return FD_FIELD != null && !WINDOWS;
+    }
+
+    /**
+     * Returns the number of loops in the cluster.
+     *
+     * @return The size.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Listens on an address on behalf of a loop. Accepted connections are
+     * posted to the loop as {@code "cluster.connection"} events carrying the
+     * socket file descriptor and the {@link SocketChannel} it came from. A
+     * loop that cannot adopt the descriptor must {@link #discard} the channel.
+     *
+     * @param address      The address.
+     * @param port         The port, 0 for an ephemeral port that is not shared.
+     * @param backlog      The backlog, used by the loop that opens the socket.
+     * @param loop         The loop.
+     * @param onConnection The connection callback.
+     * @return The listener.
+     * @throws IOException if the socket cannot be opened.
+     */
+    public synchronized Listener listen(final String address,
+                                        final int port,
+                                        final int backlog,
+                                        final EventLoop loop,
+                                        final Callback onConnection) throws IOException {
+        if (!isSupported()) {
+            throw new IOException("accepted sockets cannot be handed to a loop on this platform");
+        }
+        final String key = address + ":" + port;
+        Listener listener = port == 0 ? null : listeners.get(key);
+        if (listener == null) {
+            listener = new Listener(key, new InetSocketAddress(address, port), backlog);
+            if (port != 0) {
+                listeners.put(key, listener);
+            }
+        }
+        listener.join(loop, onConnection);
+        return listener;
+    }
+
+    /**
+     * Closes all listening sockets.
+     */
+    public void close() {
+        final List<Listener> all;
+        synchronized (this) {
+            all = new ArrayList<>(listeners.values());
+        }
+        for (final Listener listener : all) {
+            listener.close();
+        }
+    }
+
+    private synchronized void remove(final Listener listener) {
+        if (listeners.get(listener.key) == listener) {
+            listeners.remove(listener.key);
+        }
+    }
+
+    private static final class Member {
+        private final EventLoop loop;
+        private final Callback onConnection;
+        private EventLoop.Handle handle;
+
+        Member(final EventLoop loop, final Callback onConnection) {
+            this.loop = loop;
+            this.onConnection = onConnection;
+            this.handle = loop.acquire();
+        }
+
+        synchronized void ref() {
+            if (handle == null) {
+                handle = loop.acquire();
+            }
+        }
+
+        synchronized void unref() {
+            if (handle != null) {
+                handle.close();
+                handle = null;
+            }
+        }
+    }
+
+    /**
+     * A listening socket shared by the loops of the cluster.
+     */
+    public final class Listener implements Runnable {
+
+        private final String key;
+        private final ServerSocketChannel channel;
+        private final InetSocketAddress localAddress;
+        private final List<Member> members = new CopyOnWriteArrayList<>();
+        private final Thread acceptor;
+        private int next;
+
+        private Listener(final String key, final InetSocketAddress address, final int backlog) throws IOException {
+            this.key = key;
+            this.channel = ServerSocketChannel.open();
+            try {
+                channel.bind(address, backlog);
+            } catch (final IOException | RuntimeException ex) {
+                channel.close();
+                throw ex;
+            }
+            this.localAddress = (InetSocketAddress) channel.getLocalAddress();
+            this.acceptor = new Thread(this, "avatar-js.acceptor." + localAddress.getPort());
+            acceptor.setDaemon(true);
+            acceptor.start();
+        }
+
+        private void join(final EventLoop loop, final Callback onConnection) {
+            members.add(new Member(loop, onConnection));
+        }
+
+        /**
+         * Returns the bound address.
+         *
+         * @return The address.
+         */
+        public InetSocketAddress localAddress() {
+            return localAddress;
+        }
+
+        /**
+         * Stops handing connections to a loop. The socket is closed when the
+         * last loop leaves.
+         *
+         * @param loop The loop.
+         */
+        public void leave(final EventLoop loop) {
+            // under the cluster lock so that listen() cannot join a loop
+            // to a listener that is being closed
+            synchronized (Cluster.this) {
+                final Member member = find(loop);
+                if (member != null) {
+                    members.remove(member);
+                    member.unref();
+                }
+                if (members.isEmpty()) {
+                    close();
+                }
+            }
+        }
+
+        /**
+         * Keeps the loop alive while it is a member of this listener.
+         *
+         * @param loop The loop.
+         */
+        public void ref(final EventLoop loop) {
+            final Member member = find(loop);
+            if (member != null) {
+                member.ref();
+            }
+        }
+
+        /**
+         * Lets the loop exit even though it is a member of this listener.
+         *
+         * @param loop The loop.
+         */
+        public void unref(final EventLoop loop) {
+            final Member member = find(loop);
+            if (member != null) {
+                member.unref();
+            }
+        }
+
+        private Member find(final EventLoop loop) {
+            for (final Member member : members) {
+                if (member.loop == loop) {
+                    return member;
+                }
+            }
+            return null;
+        }
+
+        private void close() {
+            synchronized (Cluster.this) {
+                remove(this);
+                try {
+                    channel.close();
+                } catch (final IOException ignore) {
+                }
+                for (final Member member : members) {
+                    member.unref();
+                }
+                members.clear();
+            }
+        }
+
+        @Override
+        public void run() {
+            while (channel.isOpen()) {
+                final SocketChannel socket;
+                try {
+                    socket = channel.accept();
+                } catch (final ClosedChannelException ex) {
+                    return;
+                } catch (final IOException ex) {
+                    // most likely out of descriptors, back off and retry
+                    try {
+                        Thread.sleep(10);
+                    } catch (final InterruptedException ie) {
+                        return;
+                    }
+                    continue;
+                }
+                dispatch(socket);
+            }
+        }
+
+        private void dispatch(final SocketChannel socket) {
+            final Member member = pick();
+            final int fd = member == null ? -1 : fd(socket);
+            if (fd < 0) {
+                discard(socket);
+                return;
+            }
+            // the loop's handle polls the descriptor, a blocking socket
+            // would stall the loop on its first short read
+            try {
+                socket.configureBlocking(false);
+            } catch (final IOException ex) {
+                discard(socket);
+                return;
+            }
+            // once adopted the descriptor belongs to the loop's handle and
+            // the channel is dropped without being closed
+            try {
+                member.loop.post("cluster.connection", member.onConnection, fd, socket);
+            } catch (final RuntimeException ex) {
+                discard(socket);
+            }
+        }
+
+        private Member pick() {
+            while (true) {
+                final int count = members.size();
+                if (count == 0) {
+                    return null;
+                }
+                try {
+                    return members.get(next++ % count);
+                } catch (final IndexOutOfBoundsException ex) {
+                    // a loop left concurrently, retry
+                    next = 0;
+                }
+            }
+        }
+    }
+
+    /**
+     * Closes an accepted socket that a loop could not adopt.
+     *
+     * @param socket The channel posted with the connection.
+     */
+    public static void discard(final SocketChannel socket) {
+        close(socket);
+    }
+
+    private static void close(final SocketChannel socket) {
+        try {
+            socket.close();
+        } catch (final IOException ignore) {
+        }
+    }
+
+    private static int fd(final SocketChannel socket) {
+        try {
+            return FD_FIELD.getInt(socket);
+        } catch (final IllegalAccessException ex) {
+            return -1;
+        }
+    }
+
+    private static Field fdField() {
+        try {
+            final SocketChannel probe = SocketChannel.open();
+            try {
+                for (Class<?> c = probe.getClass(); c != null; c = c.getSuperclass()) {
+                    try {
+                        final Field field = c.getDeclaredField("fdVal");
+                        field.setAccessible(true);
+                        return field;
+                    } catch (final NoSuchFieldException ignore) {
+                    }
+                }
+            } finally {
+                probe.close();
+            }
+        } catch (final IOException | RuntimeException ex) {
+            // unsupported platform, listen() reports it
+        }
+        return null;
+    }
+}
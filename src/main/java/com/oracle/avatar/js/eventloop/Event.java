@@ -33,39 +33,93 @@ import com.oracle.avatar.js.Server;
 
 public final class Event {
 
-    private final String name;
-    private final Callback callback;
-    private final Object[] args;
-    private final AccessControlContext ctx;
-    private final ScriptObjectMirror domain;
+    private String name;
+    private Callback callback;
+    private Object[] args;
+    private AccessControlContext ctx;
+    private ScriptObjectMirror domain;
+
+    // link to the next event while queued in an EventQueue or free in an EventPool
+    volatile Event next;
+
+    // set on events owned by an EventPool, which are recycled after dispatch
+    final boolean pooled;
 
     public Event(final String name, final ScriptObjectMirror domain, final Callback callback) {
         this(name, domain, callback, (Object[]) null);
     }
 
     public Event(final String name, final ScriptObjectMirror domain, final Callback callback, final Object arg) {
+        this.pooled = false;
         this.name = name;
         this.domain = domain;
         this.callback = callback;
         this.args = new Object[1];
         this.args[0] = arg;
-        if (System.getSecurityManager() != null) {
-           this.ctx = AccessController.getContext();
-        } else {
-            this.ctx = null;
-        }
+        this.ctx = snapshot();
     }
 
     public Event(final String name, final Callback callback, final Object... args) {
+        this.pooled = false;
         this.name = name;
         this.domain = null;
         this.callback = callback;
         this.args = args == null ? null : args.clone();
-        if (System.getSecurityManager() != null) {
-           this.ctx = AccessController.getContext();
-        } else {
-            this.ctx = null;
-        }
+        this.ctx = snapshot();
+    }
+
+    Event() {
+        this.pooled = true;
+    }
+
+    private static AccessControlContext snapshot() {
+        return System.getSecurityManager() != null ? AccessController.getContext() : null;
+    }
+
+    /*
+     * The init and set methods (re)initialize a pooled event. Only the event
+     * is recycled: every dispatch gets its own args array, since script
+     * callbacks receive that array and may keep it after they return.
+     */
+
+    Event init(final String name, final ScriptObjectMirror domain, final Callback callback) {
+        assert pooled;
+        this.name = name;
+        this.domain = domain;
+        this.callback = callback;
+        this.args = null;
+        this.ctx = snapshot();
+        return this;
+    }
+
+    Event set(final String name, final Callback callback, final Object arg) {
+        init(name, null, callback);
+        args = new Object[] {arg};
+        return this;
+    }
+
+    Event set(final String name, final Callback callback, final Object arg1, final Object arg2) {
+        init(name, null, callback);
+        args = new Object[] {arg1, arg2};
+        return this;
+    }
+
+    Event set(final String name, final Callback callback, final Object[] args) {
+        init(name, null, callback);
+        this.args = args == null ? null : args.clone();
+        return this;
+    }
+
+    /**
+     * Drops all references held by a pooled event once it has been dispatched.
+     */
+    void clear() {
+        assert pooled;
+        name = null;
+        domain = null;
+        callback = null;
+        ctx = null;
+        args = null;
     }
 
     AccessControlContext getContext() {
@@ -27,6 +27,7 @@
 package com.oracle.avatar.js.eventloop;
 
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.security.AccessControlContext;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
@@ -34,11 +35,12 @@ import java.security.PrivilegedExceptionAction;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Future;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import javax.management.JMException;
+import javax.management.ObjectName;
 import javax.script.ScriptException;
 
 import com.oracle.avatar.js.dns.DNS;
@@ -50,11 +52,13 @@ import com.oracle.libuv.cb.CallbackExceptionHandler;
 import com.oracle.libuv.cb.CallbackHandler;
 import com.oracle.libuv.cb.CallbackHandlerFactory;
 import com.oracle.libuv.cb.ContextProvider;
+import com.oracle.libuv.cb.TimerCallback;
 import com.oracle.libuv.handles.AsyncHandle;
 import com.oracle.libuv.handles.CheckHandle;
 import com.oracle.libuv.handles.DefaultHandleFactory;
 import com.oracle.libuv.handles.HandleFactory;
 import com.oracle.libuv.handles.LoopHandle;
+import com.oracle.libuv.handles.TimerHandle;
 
 import jdk.nashorn.api.scripting.NashornException;
 import jdk.nashorn.api.scripting.ScriptObjectMirror;
@@ -71,7 +75,8 @@ public final class EventLoop {
     private final int instanceNumber;
     private final ThreadPool executor;
     private final Logger LOG;
-    private final BlockingQueue<Event> eventQueue = new LinkedBlockingQueue<>();
+    private final EventQueue eventQueue = new EventQueue();
+    private final EventPool eventPool;
     private final AtomicInteger hooks = new AtomicInteger(0);
     private final HandleFactory handleFactory;
     private final CheckHandle checkHandle;
@@ -80,9 +85,15 @@ public final class EventLoop {
     private final AsyncHandle interruptMainLoopHandle;
     private final Thread mainThread;
     private final AtomicBoolean stopped = new AtomicBoolean(false);
+    private final LoopStats stats;
+    private int depthSampleIn;
+    private final TimerHandle lagTimer;
+    private final ObjectName statsName;
 
     private Callback isHandlerRegistered = null;
     private Callback uncaughtExceptionHandler = null;
+    private volatile Callback backpressureCallback = null;
+    private volatile Cluster cluster = null;
     private Throwable pendingException = null;
     private boolean syncEventsProcessing = true;
     private ScriptObjectMirror domain;
@@ -131,21 +142,56 @@ public final class EventLoop {
         uncaughtExceptionHandler = handler;
     }
 
+    /**
+     * Sets the callback notified when the thread pool rejects a task. The
+     * callback is called with the task category and the number of queued tasks.
+     *
+     * @param callback The callback, or {@code null}.
+     */
+    public void setBackpressureCallback(final Callback callback) {
+        backpressureCallback = callback;
+    }
+
     public void nextTick(final Callback cb) {
-        eventQueue.add(new Event("nextTick", cb));
+        enqueue(eventPool.acquire().init("nextTick", null, cb));
     }
 
     public void nextTickWithDomain(final Callback cb, ScriptObjectMirror evtDomain) {
         assert Thread.currentThread() == mainThread : "called from non-event thread " + Thread.currentThread().getName();
-        eventQueue.add(new Event("nextTickWithDomain", evtDomain, cb));
+        eventQueue.addLocal(eventPool.acquire().init("nextTickWithDomain", evtDomain, cb));
+    }
+
+    public void post(final Callback cb) {
+        enqueue(eventPool.acquire().init(null, null, cb));
+    }
+
+    public void post(final Callback cb, final Object arg) {
+        enqueue(eventPool.acquire().set(null, cb, arg));
+    }
+
+    public void post(final Callback cb, final Object arg1, final Object arg2) {
+        enqueue(eventPool.acquire().set(null, cb, arg1, arg2));
     }
 
     public void post(final Callback cb, Object... args) {
-        eventQueue.add(new Event(null, cb, args));
+        enqueue(eventPool.acquire().set(null, cb, args));
+    }
+
+    public void post(final String name, final Callback cb, final Object arg1, final Object arg2) {
+        enqueue(eventPool.acquire().set(name, cb, arg1, arg2));
     }
 
     public void post(final Event event) {
-        eventQueue.add(event);
+        enqueue(event);
+    }
+
+    private void enqueue(final Event event) {
+        // events from the main thread bypass the lock-free queue
+        if (Thread.currentThread() == mainThread) {
+            eventQueue.addLocal(event);
+        } else {
+            eventQueue.add(event);
+        }
     }
 
     public void run() throws Throwable {
@@ -162,7 +208,7 @@ public final class EventLoop {
                 throw pex;
             }
         } while (hooks.get() > 0 ||
-                eventQueue.peek() != null ||
+                !eventQueue.isEmpty() ||
                 executor.hasActiveTasks() ||
                 executor.hasQueuedTasks());
     }
@@ -172,7 +218,14 @@ public final class EventLoop {
      * when background threads have posted events.
      */
     public void processQueuedEvents() throws Exception {
-        if (eventQueue.peek() != null) {
+        if (!eventQueue.isEmpty()) {
+            if (stats != null && --depthSampleIn <= 0) {
+                // size() walks the queue, so sample again only once the
+                // events seen by the last sample have been processed
+                final int depth = eventQueue.size();
+                stats.recordQueueDepth(depth);
+                depthSampleIn = syncEventsProcessing ? 1 : depth;
+            }
             // process current events and all events added by processed events
             for (Event event = eventQueue.poll();
                  event != null;
@@ -180,6 +233,7 @@ public final class EventLoop {
                 ScriptObjectMirror evtDomain = event.getDomain();
                 if (evtDomain != null) {
                     if (isDisposed(evtDomain)) {
+                        eventPool.release(event);
                         continue;
                     }
                     enterDomain(evtDomain);
@@ -188,6 +242,7 @@ public final class EventLoop {
                 } else {
                     processEvent(event);
                 }
+                eventPool.release(event);
 
                 if (!syncEventsProcessing) {
                     // Will be handled in an IdleHandle
@@ -209,6 +264,7 @@ public final class EventLoop {
             final AccessControlContext context, final Object... args) throws Exception {
         assert Thread.currentThread() == mainThread : "called from non-event thread " + Thread.currentThread().getName();
         assert callback != null : "callback is null for event " + name;
+        final long start = stats != null ? System.nanoTime() : 0;
         try {
             if (LOG.enabled()) { LOG.log(Event.toString(name, args)); }
             if (context != null) {
@@ -228,6 +284,10 @@ public final class EventLoop {
                 stop();
                 throw ex;
             }
+        } finally {
+            if (stats != null) {
+                stats.record(name, System.nanoTime() - start);
+            }
         }
     }
 
@@ -239,6 +299,16 @@ public final class EventLoop {
             checkHandle.close();
             refHandle.close();
             unrefHandle.close();
+            if (lagTimer != null) {
+                lagTimer.close();
+            }
+            if (statsName != null) {
+                try {
+                    ManagementFactory.getPlatformMBeanServer().unregisterMBean(statsName);
+                } catch (final JMException ex) {
+                    if (LOG.enabled()) { LOG.log("failed to unregister %s: %s", statsName, ex); }
+                }
+            }
             uvLoop.stop();
         }
     }
@@ -258,6 +328,15 @@ public final class EventLoop {
         return stopped.get();
     }
 
+    /**
+     * Returns the statistics of this loop.
+     *
+     * @return The statistics, or {@code null} if they are not enabled.
+     */
+    public LoopStats stats() {
+        return stats;
+    }
+
     // filename, line, column, name, message
     public static final String EXCEPTION_FILE = "filename";
     public static final String EXCEPTION_LINE = "line";
@@ -355,6 +434,19 @@ public final class EventLoop {
     }
 
     public Future<?> submit(final Runnable runnable) {
+        return submit(ThreadPool.Category.DEFAULT, runnable);
+    }
+
+    /**
+     * Submits a task to the thread pool.
+     *
+     * @param category The kind of work.
+     * @param runnable The task.
+     * @return A future for the task.
+     * @throws RejectedExecutionException if the pool is saturated, in which
+     *         case the backpressure callback, if any, has been notified.
+     */
+    public Future<?> submit(final ThreadPool.Category category, final Runnable runnable) {
         Runnable toSubmit = runnable;
         if (System.getSecurityManager() != null) {
             // snapshot to be reused at execution time.
@@ -372,7 +464,16 @@ public final class EventLoop {
                 }
             };
         }
-        return executor.submit(toSubmit);
+        try {
+            return executor.submit(category, toSubmit);
+        } catch (final RejectedExecutionException ex) {
+            if (LOG.enabled()) { LOG.log("%s task rejected: %s", category, ex.getMessage()); }
+            final Callback callback = backpressureCallback;
+            if (callback != null) {
+                post("backpressure", callback, category.toString(), executor.queuedTasksCount());
+            }
+            throw ex;
+        }
     }
 
     @Override
@@ -400,6 +501,8 @@ public final class EventLoop {
                      final ThreadPool executor,
                      final HandleFactory handleFactory) throws IOException {
         mainThread = Thread.currentThread();
+        eventPool = new EventPool(mainThread);
+        stats = LoopStats.enabled() ? new LoopStats() : null;
 
         this.version = Objects.requireNonNull(version);
         this.uvVersion = Objects.requireNonNull(uvVersion);
@@ -484,6 +587,39 @@ public final class EventLoop {
             }
         });
         interruptMainLoopHandle.unref();
+
+        if (stats != null) {
+            statsName = registerStats(stats, instanceNumber);
+            lagTimer = this.handleFactory.newTimerHandle();
+            final long interval = stats.lagInterval();
+            lagTimer.setTimerFiredCallback(new TimerCallback() {
+                private long due = System.nanoTime() + interval * 1_000_000;
+
+                @Override
+                public void onTimer(int status) throws Exception {
+                    final long now = System.nanoTime();
+                    stats.recordLag(Math.max(0, now - due));
+                    due = now + interval * 1_000_000;
+                }
+            });
+            lagTimer.unref();
+            lagTimer.start(interval, interval);
+        } else {
+            statsName = null;
+            lagTimer = null;
+        }
+    }
+
+    private ObjectName registerStats(final LoopStats loopStats, final int instance) {
+        try {
+            final ObjectName name = new ObjectName("com.oracle.avatar.js:type=EventLoop,instance=" + instance);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(loopStats, name);
+            return name;
+        } catch (final JMException | SecurityException ex) {
+            // statistics remain available through process.loopStats()
+            if (LOG.enabled()) { LOG.log("failed to register loop statistics: %s", ex); }
+            return null;
+        }
     }
 
     public String version() {
@@ -506,6 +642,25 @@ public final class EventLoop {
         return dns;
     }
 
+    /**
+     * Returns the cluster this loop serves listening sockets with.
+     *
+     * @return The cluster, or {@code null} if the loop runs alone.
+     */
+    public Cluster cluster() {
+        return cluster;
+    }
+
+    /**
+     * Makes this loop a member of a cluster. Must be called before any
+     * script runs on the loop.
+     *
+     * @param cluster The cluster.
+     */
+    public void setCluster(final Cluster cluster) {
+        this.cluster = cluster;
+    }
+
     public String getWorkDir() {
         return LibUV.cwd();
     }
@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package com.oracle.avatar.js.eventloop;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A per loop pool of recycled events.
+ *
+ * The pool is owned by the event loop thread, which is the only thread that
+ * releases events (after dispatching them). The owner keeps released events
+ * on an unsynchronized free list. To hand events over to background threads
+ * the owner also pushes some of them onto a shared stack; a background thread
+ * detaches the whole stack with one atomic exchange into a thread local cache
+ * and takes events from that cache without further synchronization.
+ */
+final class EventPool {
+
+    private static final int MAX_FREE = 1024;
+    private static final int MAX_SHARED = 256;
+
+    private final Thread owner;
+
+    // owner state
+    private Event free;
+    private int freeCount;
+    private int sharedCount;
+
+    private final AtomicReference<Event> shared = new AtomicReference<>();
+    private final ThreadLocal<Cache> caches = new ThreadLocal<Cache>() {
+        @Override
+        protected Cache initialValue() {
+            return new Cache();
+        }
+    };
+
+    private static final class Cache {
+        private Event free;
+    }
+
+    EventPool(final Thread owner) {
+        this.owner = owner;
+    }
+
+    /**
+     * Returns a cleared event. May be called from any thread.
+     *
+     * @return The event.
+     */
+    Event acquire() {
+        Event event;
+        if (Thread.currentThread() == owner) {
+            event = free;
+            if (event != null) {
+                free = event.next;
+                freeCount--;
+            }
+        } else {
+            final Cache cache = caches.get();
+            event = cache.free;
+            if (event == null) {
+                event = shared.getAndSet(null);
+            }
+            if (event != null) {
+                cache.free = event.next;
+            }
+        }
+        if (event == null) {
+            return new Event();
+        }
+        event.next = null;
+        return event;
+    }
+
+    /**
+     * Returns a dispatched event to the pool. Must only be called from the
+     * owner thread. Events that are not pooled are left to the garbage collector.
+     *
+     * @param event The event.
+     */
+    void release(final Event event) {
+        assert Thread.currentThread() == owner : "called from non-event thread " + Thread.currentThread().getName();
+        if (!event.pooled) {
+            return;
+        }
+        event.clear();
+
+        // refill the shared stack once background threads have emptied it
+        Event head = shared.get();
+        if (head == null) {
+            sharedCount = 0;
+        }
+        if (sharedCount < MAX_SHARED) {
+            do {
+                event.next = head;
+                if (shared.compareAndSet(head, event)) {
+                    sharedCount++;
+                    return;
+                }
+                head = shared.get();
+            } while (true);
+        }
+
+        if (freeCount < MAX_FREE) {
+            event.next = free;
+            free = event;
+            freeCount++;
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package com.oracle.avatar.js.eventloop;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A multi-producer, single-consumer event queue.
+ *
+ * Producers (background threads) append with a single atomic exchange on the
+ * tail and never retry or block. The consumer (the event loop thread) follows
+ * the links from the head with plain volatile reads, so draining a batch of
+ * queued events takes no lock and no atomic operation per event. Events added
+ * by the consumer thread itself go to an unsynchronized local list.
+ *
+ * Events from the same source are returned in the order they were added.
+ * While both lists hold events, {@link #poll} takes from them in turn, so a
+ * consumer that keeps adding local events cannot starve the producers. There
+ * is no total order across the two lists: a local event may run before a
+ * remote event that was added slightly earlier, and vice versa.
+ *
+ * The queue is intrusive: events are linked through {@link Event#next}, so
+ * an event must not be added again while it is still queued.
+ */
+public final class EventQueue {
+
+    // sentinel that keeps the remote list non-empty
+    private final Event stub = new Event(null, null, (Object[]) null);
+    private final AtomicReference<Event> tail = new AtomicReference<>(stub);
+
+    // consumer-owned state, only touched by the event loop thread
+    private Event head = stub;
+    private Event localHead;
+    private Event localTail;
+    private int localSize;
+    private boolean localTurn = true;
+
+    /**
+     * Adds an event. May be called from any thread.
+     *
+     * @param event The event.
+     */
+    public void add(final Event event) {
+        event.next = null;
+        final Event prev = tail.getAndSet(event);
+        // between the exchange and this store the consumer sees a gap and
+        // stops early; the event is picked up by the next poll
+        prev.next = event;
+    }
+
+    /**
+     * Adds an event without synchronization. Must only be called from the
+     * consumer thread.
+     *
+     * @param event The event.
+     */
+    public void addLocal(final Event event) {
+        event.next = null;
+        if (localTail == null) {
+            localHead = event;
+        } else {
+            localTail.next = event;
+        }
+        localTail = event;
+        localSize++;
+    }
+
+    /**
+     * Removes the next event, or returns {@code null} if there is none.
+     * Must only be called from the consumer thread.
+     *
+     * Local and remote events alternate while both are available.
+     *
+     * @return The event, or {@code null}.
+     */
+    public Event poll() {
+        if (localHead != null && localTurn) {
+            localTurn = false;
+            return pollLocal();
+        }
+        final Event event = pollRemote();
+        if (event != null) {
+            localTurn = true;
+            return event;
+        }
+        return localHead != null ? pollLocal() : null;
+    }
+
+    private Event pollLocal() {
+        final Event event = localHead;
+        localHead = event.next;
+        if (localHead == null) {
+            localTail = null;
+        }
+        localSize--;
+        event.next = null;
+        return event;
+    }
+
+    private Event pollRemote() {
+        Event first = head;
+        Event next = first.next;
+        if (first == stub) {
+            if (next == null) {
+                return null;
+            }
+            head = next;
+            first = next;
+            next = next.next;
+        }
+        if (next != null) {
+            head = next;
+            return first;
+        }
+        if (first != tail.get()) {
+            // a producer is between its exchange and its link
+            return null;
+        }
+        // first is the last event, put the stub back behind it
+        add(stub);
+        next = first.next;
+        if (next != null) {
+            head = next;
+            return first;
+        }
+        return null;
+    }
+
+    /**
+     * Returns {@code true} if no event is queued. Must only be called from
+     * the consumer thread, the local list is not visible to other threads.
+     *
+     * @return {@code true} if the queue is empty.
+     */
+    public boolean isEmpty() {
+        return localHead == null && head == stub && tail.get() == stub;
+    }
+
+    /**
+     * Returns the number of queued events. This walks the queue and must
+     * only be called from the consumer thread, elsewhere the result is only
+     * an estimate.
+     *
+     * @return The size.
+     */
+    public int size() {
+        int size = localSize;
+        for (Event event = head; event != null; event = event.next) {
+            if (event != stub) {
+                size++;
+            }
+        }
+        return size;
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package com.oracle.avatar.js.eventloop;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The executor behind a default {@link ThreadPool}, a {@link ThreadPoolExecutor}
+ * that runs rejected tasks on the caller thread and counts running tasks.
+ */
+final class ExecutorThreadPool extends ThreadPoolExecutor {
+
+    private final int taskQueueSize;
+    private final AtomicInteger activeTasks;
+
+    ExecutorThreadPool(final int corePoolSize,
+                       final int maximumPoolSize,
+                       final long keepAliveTime,
+                       final int taskQueueSize,
+                       final BlockingQueue<Runnable> taskQueue) {
+        super(corePoolSize,
+              maximumPoolSize,
+              keepAliveTime,
+              TimeUnit.SECONDS,
+              taskQueue,
+              new DaemonThreadFactory("avatar-js.task"),
+              new ThreadPoolExecutor.CallerRunsPolicy());
+        this.taskQueueSize = taskQueueSize;
+        this.activeTasks = new AtomicInteger(0);
+    }
+
+    int taskQueueSize() {
+        return taskQueueSize;
+    }
+
+    int activeTaskCount() {
+        return activeTasks.get();
+    }
+
+    @Override
+    protected void beforeExecute(final Thread t, final Runnable r) {
+        activeTasks.incrementAndGet();
+        super.beforeExecute(t, r);
+    }
+
+    @Override
+    protected void afterExecute(final Runnable r, final Throwable t) {
+        super.afterExecute(r, t);
+        activeTasks.decrementAndGet();
+    }
+}
@@ -65,6 +65,7 @@ final class LoopCallbackHandler implements CallbackHandler {
 
     private final EventLoop eventLoop;
     private final Object domain;
+    private final LoopStats stats;
 
     public LoopCallbackHandler(EventLoop eventLoop) {
         this(eventLoop, null);
@@ -73,6 +74,7 @@ final class LoopCallbackHandler implements CallbackHandler {
     public LoopCallbackHandler(EventLoop eventLoop, Object domain) {
         this.eventLoop = eventLoop;
         this.domain = domain;
+        this.stats = eventLoop.stats();
     }
 
     private boolean shouldCall() {
@@ -86,7 +88,14 @@ final class LoopCallbackHandler implements CallbackHandler {
         return true;
     }
 
-    private void post() throws Exception {
+    private long start() {
+        return stats != null ? System.nanoTime() : 0;
+    }
+
+    private void post(final String name, final long start) throws Exception {
+        if (stats != null) {
+            stats.record(name, System.nanoTime() - start);
+        }
         if (domain != null) {
             eventLoop.exitDomain(domain);
         }
@@ -96,9 +105,10 @@ final class LoopCallbackHandler implements CallbackHandler {
     @Override
     public void handleAsyncCallback(final AsyncCallback cb, final int status) {
         try {
+            final long start = start();
             if (shouldCall()) {
                 cb.onSend(status);
-                post();
+                post("uv.async", start);
             }
         } catch (Exception ex) {
             eventLoop.loop().getExceptionHandler().handle(ex);
@@ -108,9 +118,10 @@ final class LoopCallbackHandler implements CallbackHandler {
     @Override
     public void handleCheckCallback(final CheckCallback cb, final int status) {
         try {
+            final long start = start();
             if (shouldCall()) {
                 cb.onCheck(status);
-                post();
+                post("uv.check", start);
             }
         } catch (Exception ex) {
             eventLoop.loop().getExceptionHandler().handle(ex);
@@ -120,9 +131,10 @@ final class LoopCallbackHandler implements CallbackHandler {
     @Override
     public void handlePollCallback(final PollCallback cb, final int status, final int events) {
         try {
+            final long start = start();
             if (shouldCall()) {
                 cb.onPoll(status, events);
-                post();
+                post("uv.poll", start);
             }
         } catch (Exception ex) {
             eventLoop.loop().getExceptionHandler().handle(ex);
@@ -132,9 +144,10 @@ final class LoopCallbackHandler implements CallbackHandler {
     @Override
     public void handleSignalCallback(final SignalCallback cb, final int signum) {
         try {
+            final long start = start();
             if (shouldCall()) {
                 cb.onSignal(signum);
-                post();
+                post("uv.signal", start);
             }
         } catch (Exception ex) {
             eventLoop.loop().getExceptionHandler().handle(ex);
@@ -144,9 +157,10 @@ final class LoopCallbackHandler implements CallbackHandler {
     @Override
     public void handleStreamReadCallback(final StreamReadCallback cb, final ByteBuffer data) {
         try {
+            final long start = start();
             if (shouldCall()) {
                 cb.onRead(data);
-                post();
+                post("uv.streamRead", start);
             }
         } catch (Exception ex) {
             eventLoop.loop().getExceptionHandler().handle(ex);
@@ -156,9 +170,10 @@ final class LoopCallbackHandler implements CallbackHandler {
     @Override
     public void handleStreamRead2Callback(final StreamRead2Callback cb, final ByteBuffer data, final long handle, final int type) {
         try {
+            final long start = start();
             if (shouldCall()) {
                 cb.onRead2(data, handle, type);
-                post();
+                post("uv.streamRead2", start);
             }
         } catch (Exception ex) {
             eventLoop.loop().getExceptionHandler().handle(ex);
@@ -168,9 +183,10 @@ final class LoopCallbackHandler implements CallbackHandler {
     @Override
     public void handleStreamWriteCallback(final StreamWriteCallback cb, final int status, final Exception error) {
         try {
+            final long start = start();
             if (shouldCall()) {
                 cb.onWrite(status, error);
-                post();
+                post("uv.streamWrite", start);
             }
         } catch (Exception ex) {
             eventLoop.loop().getExceptionHandler().handle(ex);
@@ -180,9 +196,10 @@ final class LoopCallbackHandler implements CallbackHandler {
     @Override
     public void handleStreamConnectCallback(final StreamConnectCallback cb, final int status, final Exception error) {
         try {
+            final long start = start();
             if (shouldCall()) {
                 cb.onConnect(status, error);
-                post();
+                post("uv.streamConnect", start);
             }
         } catch (Exception ex) {
             eventLoop.loop().getExceptionHandler().handle(ex);
@@ -192,9 +209,10 @@ final class LoopCallbackHandler implements CallbackHandler {
     @Override
     public void handleStreamConnectionCallback(final StreamConnectionCallback cb, final int status, final Exception error) {
         try {
+            final long start = start();
             if (shouldCall()) {
                 cb.onConnection(status, error);
-                post();
+                post("uv.streamConnection", start);
             }
         } catch (Exception ex) {
             eventLoop.loop().getExceptionHandler().handle(ex);
@@ -204,9 +222,10 @@ final class LoopCallbackHandler implements CallbackHandler {
     @Override
     public void handleStreamCloseCallback(final StreamCloseCallback cb) {
         try {
+            final long start = start();
             if (shouldCall()) {
                 cb.onClose();
-                post();
+                post("uv.streamClose", start);
             }
         } catch (Exception ex) {
             eventLoop.loop().getExceptionHandler().handle(ex);
@@ -216,9 +235,10 @@ final class LoopCallbackHandler implements CallbackHandler {
     @Override
     public void handleStreamShutdownCallback(final StreamShutdownCallback cb, final int status, final Exception error) {
         try {
+            final long start = start();
             if (shouldCall()) {
                 cb.onShutdown(status, error);
-                post();
+                post("uv.streamShutdown", start);
             }
         } catch (Exception ex) {
             eventLoop.loop().getExceptionHandler().handle(ex);
@@ -228,9 +248,10 @@ final class LoopCallbackHandler implements CallbackHandler {
     @Override
     public void handleFileCallback(final FileCallback cb, final Object context, final Exception error) {
         try {
+            final long start = start();
             if (shouldCall()) {
                 cb.onDone(context, error);
-                post();
+                post("uv.file", start);
             }
         } catch (final Exception ex) {
             eventLoop.loop().getExceptionHandler().handle(ex);
@@ -241,9 +262,10 @@ final class LoopCallbackHandler implements CallbackHandler {
     @Override
     public void handleFileCloseCallback(final FileCloseCallback cb, final Object context, final int fd, final Exception error) {
         try {
+            final long start = start();
             if (shouldCall()) {
                 cb.onClose(context, fd, error);
-                post();
+                post("uv.fileClose", start);
             }
         } catch (final Exception ex) {
             eventLoop.loop().getExceptionHandler().handle(ex);
@@ -253,9 +275,10 @@ final class LoopCallbackHandler implements CallbackHandler {
     @Override
     public void handleFileOpenCallback(final FileOpenCallback cb, final Object context, final int fd, final Exception error) {
         try {
+            final long start = start();
             if (shouldCall()) {
                 cb.onOpen(context, fd, error);
-                post();
+                post("uv.fileOpen", start);
             }
         } catch (final Exception ex) {
             eventLoop.loop().getExceptionHandler().handle(ex);
@@ -265,9 +288,10 @@ final class LoopCallbackHandler implements CallbackHandler {
     @Override
     public void handleFileReadCallback(final FileReadCallback cb, final Object context, final int bytesRead, final ByteBuffer data, final Exception error) {
         try {
+            final long start = start();
             if (shouldCall()) {
                 cb.onRead(context, bytesRead, data, error);
-                post();
+                post("uv.fileRead", start);
             }
         } catch (final Exception ex) {
             eventLoop.loop().getExceptionHandler().handle(ex);
@@ -277,9 +301,10 @@ final class LoopCallbackHandler implements CallbackHandler {
     @Override
     public void handleFileReadDirCallback(final FileReadDirCallback cb, final Object context, final String[] names, final Exception error) {
         try {
+            final long start = start();
             if (shouldCall()) {
                 cb.onReadDir(context, names, error);
-                post();
+                post("uv.fileReadDir", start);
             }
         } catch (final Exception ex) {
             eventLoop.loop().getExceptionHandler().handle(ex);
@@ -289,9 +314,10 @@ final class LoopCallbackHandler implements CallbackHandler {
     @Override
     public void handleFileReadLinkCallback(final FileReadLinkCallback cb, final Object context, final String name, final Exception error) {
         try {
+            final long start = start();
             if (shouldCall()) {
                 cb.onReadLink(context, name, error);
-                post();
+                post("uv.fileReadLink", start);
             }
         } catch (final Exception ex) {
             eventLoop.loop().getExceptionHandler().handle(ex);
@@ -301,9 +327,10 @@ final class LoopCallbackHandler implements CallbackHandler {
     @Override
     public void handleFileStatsCallback(final FileStatsCallback cb, final Object context, final Stats stats, final Exception error) {
         try {
+            final long start = start();
             if (shouldCall()) {
                 cb.onStats(context, stats, error);
-                post();
+                post("uv.fileStats", start);
             }
         } catch (final Exception ex) {
             eventLoop.loop().getExceptionHandler().handle(ex);
@@ -313,9 +340,10 @@ final class LoopCallbackHandler implements CallbackHandler {
     @Override
     public void handleFileUTimeCallback(final FileUTimeCallback cb, final Object context, final long time, final Exception error) {
         try {
+            final long start = start();
             if (shouldCall()) {
                 cb.onUTime(context, time, error);
-                post();
+                post("uv.fileUTime", start);
             }
         } catch (final Exception ex) {
             eventLoop.loop().getExceptionHandler().handle(ex);
@@ -325,9 +353,10 @@ final class LoopCallbackHandler implements CallbackHandler {
     @Override
     public void handleFileWriteCallback(final FileWriteCallback cb, final Object context, final int bytesWritten, final Exception error) {
         try {
+            final long start = start();
             if (shouldCall()) {
                 cb.onWrite(context, bytesWritten, error);
-                post();
+                post("uv.fileWrite", start);
             }
         } catch (final Exception ex) {
             eventLoop.loop().getExceptionHandler().handle(ex);
@@ -337,9 +366,10 @@ final class LoopCallbackHandler implements CallbackHandler {
     @Override
     public void handleFileEventCallback(FileEventCallback cb, int status, String event, String filename) {
         try {
+            final long start = start();
             if (shouldCall()) {
                 cb.onEvent(status, event, filename);
-                post();
+                post("uv.fileEvent", start);
             }
         } catch (Exception ex) {
             eventLoop.loop().getExceptionHandler().handle(ex);
@@ -350,9 +380,10 @@ final class LoopCallbackHandler implements CallbackHandler {
     @Override
     public void handleFilePollCallback(FilePollCallback cb, int status, Stats previous, Stats current) {
         try {
+            final long start = start();
             if (shouldCall()) {
                 cb.onPoll(status, previous, current);
-                post();
+                post("uv.filePoll", start);
             }
         } catch (Exception ex) {
             eventLoop.loop().getExceptionHandler().handle(ex);
@@ -362,9 +393,10 @@ final class LoopCallbackHandler implements CallbackHandler {
     @Override
     public void handleFilePollStopCallback(FilePollStopCallback cb) {
         try {
+            final long start = start();
             if (shouldCall()) {
                 cb.onStop();
-                post();
+                post("uv.filePollStop", start);
             }
         } catch (Exception ex) {
             eventLoop.loop().getExceptionHandler().handle(ex);
@@ -374,9 +406,10 @@ final class LoopCallbackHandler implements CallbackHandler {
     @Override
     public void handleProcessCloseCallback(ProcessCloseCallback cb) {
         try {
+            final long start = start();
             if (shouldCall()) {
                 cb.onClose();
-                post();
+                post("uv.processClose", start);
             }
         } catch (Exception ex) {
             eventLoop.loop().getExceptionHandler().handle(ex);
@@ -386,9 +419,10 @@ final class LoopCallbackHandler implements CallbackHandler {
     @Override
     public void handleProcessExitCallback(ProcessExitCallback cb, int status, int signal, Exception error) {
         try {
+            final long start = start();
             if (shouldCall()) {
                 cb.onExit(status, signal, error);
-                post();
+                post("uv.processExit", start);
             }
         } catch (Exception ex) {
             eventLoop.loop().getExceptionHandler().handle(ex);
@@ -398,9 +432,10 @@ final class LoopCallbackHandler implements CallbackHandler {
     @Override
     public void handleTimerCallback(final TimerCallback cb, final int status) {
         try {
+            final long start = start();
             if (shouldCall()) {
                 cb.onTimer(status);
-                post();
+                post("uv.timer", start);
             }
         } catch (Exception ex) {
             eventLoop.loop().getExceptionHandler().handle(ex);
@@ -410,9 +445,10 @@ final class LoopCallbackHandler implements CallbackHandler {
     @Override
     public void handleUDPRecvCallback(final UDPRecvCallback cb, final int nread, final ByteBuffer data, final Address address) {
         try {
+            final long start = start();
             if (shouldCall()) {
                 cb.onRecv(nread, data, address);
-                post();
+                post("uv.udpRecv", start);
             }
         } catch (Exception ex) {
             eventLoop.loop().getExceptionHandler().handle(ex);
@@ -422,9 +458,10 @@ final class LoopCallbackHandler implements CallbackHandler {
     @Override
     public void handleUDPSendCallback(final UDPSendCallback cb, final int status, final Exception error) {
         try {
+            final long start = start();
             if (shouldCall()) {
                 cb.onSend(status, error);
-                post();
+                post("uv.udpSend", start);
             }
         } catch (Exception ex) {
             eventLoop.loop().getExceptionHandler().handle(ex);
@@ -434,9 +471,10 @@ final class LoopCallbackHandler implements CallbackHandler {
     @Override
     public void handleUDPCloseCallback(final UDPCloseCallback cb) {
         try {
+            final long start = start();
             if (shouldCall()) {
                 cb.onClose();
-                post();
+                post("uv.udpClose", start);
             }
         } catch (Exception ex) {
             eventLoop.loop().getExceptionHandler().handle(ex);
@@ -446,9 +484,10 @@ final class LoopCallbackHandler implements CallbackHandler {
     @Override
     public void handleIdleCallback(IdleCallback cb, int status) {
         try {
+            final long start = start();
             if (shouldCall()) {
                 cb.onIdle(status);
-                post();
+                post("uv.idle", start);
             }
         } catch (Exception ex) {
             eventLoop.loop().getExceptionHandler().handle(ex);
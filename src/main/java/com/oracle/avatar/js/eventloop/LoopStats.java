@@ -0,0 +1,222 @@
+/*
+ * Copyright (c) 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package com.oracle.avatar.js.eventloop;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Event loop statistics: dispatch counts and callback durations per event
+ * name, event queue depth and loop lag.
+ *
+ * Statistics are opt-in, they are collected when the
+ * {@code com.oracle.avatar.js.eventloop.stats} system property is
+ * {@code true}. Values are written by the event loop thread and may be read
+ * from any thread, either through JMX or {@code process.loopStats()}.
+ */
+public final class LoopStats implements LoopStatsMXBean {
+
+    private static final String PACKAGE = LoopStats.class.getPackage().getName() + ".";
+    private static final String ENABLED_PROPERTY = PACKAGE + "stats";
+    private static final String LAG_INTERVAL_PROPERTY = PACKAGE + "statsLagInterval";
+    private static final long DEFAULT_LAG_INTERVAL_MILLIS = 100;
+    private static final String UNNAMED = "post";
+
+    private final ConcurrentMap<String, LatencyHistogram> callbacksByName = new ConcurrentHashMap<>();
+    private final LatencyHistogram callbacks = new LatencyHistogram();
+    private final LatencyHistogram lag = new LatencyHistogram();
+    private final long lagInterval;
+    private volatile int queueDepthHighWaterMark;
+    private volatile long lastLag;
+
+    /**
+     * Returns {@code true} if statistics are enabled.
+     *
+     * @return {@code true} if statistics are enabled.
+     */
+    public static boolean enabled() {
+        return Boolean.getBoolean(ENABLED_PROPERTY);
+    }
+
+    LoopStats() {
+        this.lagInterval = Long.getLong(LAG_INTERVAL_PROPERTY, DEFAULT_LAG_INTERVAL_MILLIS);
+    }
+
+    /**
+     * Returns the period of the loop lag probe.
+     *
+     * @return The period in milliseconds.
+     */
+    public long lagInterval() {
+        return lagInterval;
+    }
+
+    void record(final String name, final long nanos) {
+        final String key = name == null ? UNNAMED : name;
+        LatencyHistogram histogram = callbacksByName.get(key);
+        if (histogram == null) {
+            final LatencyHistogram created = new LatencyHistogram();
+            histogram = callbacksByName.putIfAbsent(key, created);
+            if (histogram == null) {
+                histogram = created;
+            }
+        }
+        histogram.record(nanos);
+        callbacks.record(nanos);
+    }
+
+    void recordQueueDepth(final int depth) {
+        if (depth > queueDepthHighWaterMark) {
+            queueDepthHighWaterMark = depth;
+        }
+    }
+
+    void recordLag(final long nanos) {
+        lastLag = nanos;
+        lag.record(nanos);
+    }
+
+    /**
+     * Returns the names of the dispatched events and native callbacks.
+     *
+     * @return The names.
+     */
+    public String[] names() {
+        return callbacksByName.keySet().toArray(new String[0]);
+    }
+
+    /**
+     * Returns the callback durations of the named events.
+     *
+     * @param name The event name.
+     * @return The histogram, or {@code null}.
+     */
+    public LatencyHistogram callbacks(final String name) {
+        return callbacksByName.get(name);
+    }
+
+    /**
+     * Returns the durations of all callbacks.
+     *
+     * @return The histogram.
+     */
+    public LatencyHistogram callbacks() {
+        return callbacks;
+    }
+
+    /**
+     * Returns the loop lag, the delay between when the lag probe timer was
+     * due and when it actually ran.
+     *
+     * @return The histogram.
+     */
+    public LatencyHistogram lag() {
+        return lag;
+    }
+
+    @Override
+    public long getDispatchCount() {
+        return callbacks.count();
+    }
+
+    @Override
+    public Map<String, Long> getDispatchCounts() {
+        final Map<String, Long> counts = new TreeMap<>();
+        for (final Map.Entry<String, LatencyHistogram> entry : callbacksByName.entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().count());
+        }
+        return counts;
+    }
+
+    @Override
+    public long getCallbackMeanNanos() {
+        return callbacks.mean();
+    }
+
+    @Override
+    public long getCallback50thPercentileNanos() {
+        return callbacks.percentile(50);
+    }
+
+    @Override
+    public long getCallback99thPercentileNanos() {
+        return callbacks.percentile(99);
+    }
+
+    @Override
+    public long getCallbackMaxNanos() {
+        return callbacks.max();
+    }
+
+    @Override
+    public Map<String, Long> getCallback99thPercentileNanosByName() {
+        final Map<String, Long> values = new TreeMap<>();
+        for (final Map.Entry<String, LatencyHistogram> entry : callbacksByName.entrySet()) {
+            values.put(entry.getKey(), entry.getValue().percentile(99));
+        }
+        return values;
+    }
+
+    @Override
+    public Map<String, Long> getCallbackMaxNanosByName() {
+        final Map<String, Long> values = new TreeMap<>();
+        for (final Map.Entry<String, LatencyHistogram> entry : callbacksByName.entrySet()) {
+            values.put(entry.getKey(), entry.getValue().max());
+        }
+        return values;
+    }
+
+    @Override
+    public int getQueueDepthHighWaterMark() {
+        return queueDepthHighWaterMark;
+    }
+
+    @Override
+    public long getLoopLagNanos() {
+        return lastLag;
+    }
+
+    @Override
+    public long getLoopLagMaxNanos() {
+        return lag.max();
+    }
+
+    @Override
+    public long getLoopLag99thPercentileNanos() {
+        return lag.percentile(99);
+    }
+
+    @Override
+    public void reset() {
+        callbacksByName.clear();
+        callbacks.reset();
+        lag.reset();
+        queueDepthHighWaterMark = 0;
+        lastLag = 0;
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package com.oracle.avatar.js.eventloop;
+
+import java.util.Map;
+
+/**
+ * Management interface of the event loop statistics.
+ * All durations are in nanoseconds.
+ */
+public interface LoopStatsMXBean {
+
+    public long getDispatchCount();
+
+    public Map<String, Long> getDispatchCounts();
+
+    public long getCallbackMeanNanos();
+
+    public long getCallback50thPercentileNanos();
+
+    public long getCallback99thPercentileNanos();
+
+    public long getCallbackMaxNanos();
+
+    public Map<String, Long> getCallback99thPercentileNanosByName();
+
+    public Map<String, Long> getCallbackMaxNanosByName();
+
+    public int getQueueDepthHighWaterMark();
+
+    public long getLoopLagNanos();
+
+    public long getLoopLagMaxNanos();
+
+    public long getLoopLag99thPercentileNanos();
+
+    public void reset();
+}
@@ -25,30 +25,51 @@
 
 package com.oracle.avatar.js.eventloop;
 
-import java.util.concurrent.BlockingQueue;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A thread pool executor.
+ *
+ * An instance created with the public constructor, or by the default
+ * {@link #newInstance()} factories, runs its tasks on a {@link java.util.concurrent.ThreadPoolExecutor}
+ * that runs rejected tasks on the caller thread. Setting {@code com.oracle.avatar.js.eventloop.pool}
+ * to {@code workstealing} makes {@link #newInstance(boolean)} return a
+ * {@link WorkStealingThreadPool} with one bounded queue per task {@link Category} instead.
  */
-public final class ThreadPool extends ThreadPoolExecutor {
+public class ThreadPool extends AbstractExecutorService {
+
+    /**
+     * The kind of work submitted to the pool.
+     */
+    public enum Category {
+        DEFAULT, FS, DNS, ZLIB, CRYPTO;
+
+        private final String lowerCaseName = name().toLowerCase();
+
+        @Override
+        public String toString() {
+            return lowerCaseName;
+        }
+    }
+
     private static final int DEFAULT_QUEUE_SIZE = Integer.MAX_VALUE;
-    private static final int DEFAULT_CORE_THREADS = Runtime.getRuntime().availableProcessors() * 2;
+    static final int DEFAULT_CORE_THREADS = Runtime.getRuntime().availableProcessors() * 2;
     private static final int DEFAULT_MAX_THREADS = Integer.MAX_VALUE;
     private static final long DEFAULT_THREAD_TIMEOUT_SECONDS = 15;
 
-    private static final String PACKAGE = ThreadPool.class.getPackage().getName() + ".";
-    private static final String QUEUE_SIZE_PROPERTY = PACKAGE + "queueSize";
-    private static final String CORE_THREAD_PROPERTY = PACKAGE + "coreThreads";
-    private static final String MAX_THREADS_PROPERTY = PACKAGE + "maxThreads";
-    private static final String THREAD_TIMEOUT_PROPERTY = PACKAGE + "threadTimeout";
+    static final String PACKAGE = ThreadPool.class.getPackage().getName() + ".";
+    static final String POOL_PROPERTY = PACKAGE + "pool";
+    static final String WORK_STEALING = "workstealing";
+    static final String QUEUE_SIZE_PROPERTY = PACKAGE + "queueSize";
+    static final String CORE_THREAD_PROPERTY = PACKAGE + "coreThreads";
+    static final String MAX_THREADS_PROPERTY = PACKAGE + "maxThreads";
+    static final String THREAD_TIMEOUT_PROPERTY = PACKAGE + "threadTimeout";
 
-    private final int taskQueueSize;
-    private final BlockingQueue<Runnable> taskQueue;
-    private final AtomicInteger activeTasks;
+    private final ExecutorThreadPool executor;
     private final boolean shared;
 
     /**
@@ -61,11 +82,15 @@ public final class ThreadPool extends ThreadPoolExecutor {
     }
 
     /**
-     * Returns a new default instance.
+     * Returns a new default instance, or a work-stealing instance if selected
+     * by the {@code com.oracle.avatar.js.eventloop.pool} property.
      *
      * @return The instance.
      */
     public static ThreadPool newInstance(final boolean shared) {
+        if (WORK_STEALING.equals(System.getProperty(POOL_PROPERTY))) {
+            return WorkStealingThreadPool.newInstance(shared);
+        }
         final int corePoolSize = Integer.getInteger(CORE_THREAD_PROPERTY, DEFAULT_CORE_THREADS);
         final int maximumPoolSize = Integer.getInteger(MAX_THREADS_PROPERTY, DEFAULT_MAX_THREADS);
         final long keepAliveTime = Long.getLong(THREAD_TIMEOUT_PROPERTY, DEFAULT_THREAD_TIMEOUT_SECONDS);
@@ -88,26 +113,31 @@ public final class ThreadPool extends ThreadPoolExecutor {
                                          final long keepAliveTime,
                                          final int taskQueueSize,
                                          final boolean shared) {
-        final BlockingQueue<Runnable> taskQueue = new LinkedBlockingQueue<>(taskQueueSize);
-        return new ThreadPool(poolSize, maximumPoolSize, keepAliveTime, taskQueueSize, taskQueue, shared);
-    }
-
-    private ThreadPool(final int corePoolSize,
-                       final int maximumPoolSize,
-                       final long keepAliveTime,
-                       final int taskQueueSize,
-                       final BlockingQueue<Runnable> taskQueue,
-                       final boolean shared) {
-        super(corePoolSize,
-              maximumPoolSize,
-              keepAliveTime,
-              TimeUnit.SECONDS,
-              taskQueue,
-              new DaemonThreadFactory("avatar-js.task"),
-              new ThreadPoolExecutor.CallerRunsPolicy());
-        this.taskQueueSize = taskQueueSize;
-        this.taskQueue = taskQueue;
-        this.activeTasks = new AtomicInteger(0);
+        return new ThreadPool(poolSize, maximumPoolSize, keepAliveTime, taskQueueSize, shared);
+    }
+
+    /**
+     * Creates a default pool.
+     *
+     * @param corePoolSize    The initial number of threads in the pool.
+     * @param maximumPoolSize The maximum number of threads in the pool.
+     * @param keepAliveTime   How long to keep threads beyond the initial threads alive, in seconds.
+     * @param taskQueueSize   The size of the task queue.
+     * @param shared          {@code true} if this pool is shared.
+     */
+    public ThreadPool(final int corePoolSize,
+                      final int maximumPoolSize,
+                      final long keepAliveTime,
+                      final int taskQueueSize,
+                      final boolean shared) {
+        this.executor = new ExecutorThreadPool(corePoolSize, maximumPoolSize, keepAliveTime,
+                                               taskQueueSize, new LinkedBlockingQueue<Runnable>(taskQueueSize));
+        this.shared = shared;
+    }
+
+    // for pools that schedule their own tasks and override every method below
+    ThreadPool(final boolean shared) {
+        this.executor = null;
         this.shared = shared;
     }
 
@@ -119,13 +149,42 @@ public final class ThreadPool extends ThreadPoolExecutor {
         return shared;
     }
 
+    /**
+     * Submits a task of the given category. The default pool ignores the
+     * category and runs the task on the caller thread when saturated.
+     *
+     * @param category The category.
+     * @param task     The task.
+     * @return A future for the task.
+     * @throws java.util.concurrent.RejectedExecutionException if the task
+     *         cannot be accepted.
+     */
+    public Future<?> submit(final Category category, final Runnable task) {
+        return submit(task);
+    }
+
+    @Override
+    public void execute(final Runnable task) {
+        executor.execute(task);
+    }
+
+    /**
+     * Lets idle threads time out even if that shrinks the pool below its
+     * core size, where the pool supports it.
+     *
+     * @param value {@code true} to let core threads time out.
+     */
+    public void allowCoreThreadTimeOut(final boolean value) {
+        executor.allowCoreThreadTimeOut(value);
+    }
+
     /**
      * Returns {@code true} if there are active tasks.
      *
      * @return {@code true} if there are active tasks.
      */
     public boolean hasActiveTasks() {
-        return activeTasks.get() != 0;
+        return executor.activeTaskCount() != 0;
     }
 
     /**
@@ -134,7 +193,7 @@ public final class ThreadPool extends ThreadPoolExecutor {
      * @return The count.
      */
     public int activeTaskCount() {
-        return activeTasks.get();
+        return executor.activeTaskCount();
     }
 
     /**
@@ -143,7 +202,7 @@ public final class ThreadPool extends ThreadPoolExecutor {
      * @return The size.
      */
     public int taskQueueSize() {
-        return taskQueueSize;
+        return executor.taskQueueSize();
     }
 
     /**
@@ -152,7 +211,7 @@ public final class ThreadPool extends ThreadPoolExecutor {
      * @return {@code true} if there are queued tasks.
      */
     public boolean hasQueuedTasks() {
-        return taskQueue.peek() != null;
+        return executor.getQueue().peek() != null;
     }
 
     /**
@@ -161,7 +220,7 @@ public final class ThreadPool extends ThreadPoolExecutor {
      * @return The count.
      */
     public int queuedTasksCount() {
-        return taskQueue.size();
+        return executor.getQueue().size();
     }
 
     /**
@@ -170,14 +229,50 @@ public final class ThreadPool extends ThreadPoolExecutor {
      * @return The remaining capacity.
      */
     public int queuedTasksRemainingCapacity() {
-        return taskQueue.remainingCapacity();
+        return executor.getQueue().remainingCapacity();
     }
 
     /**
      * Clears all queued tasks.
      */
     public void clearQueuedTasks() {
-        taskQueue.clear();
+        executor.getQueue().clear();
+    }
+
+    /**
+     * Returns the number of threads in the pool.
+     *
+     * @return The count.
+     */
+    public int getPoolSize() {
+        return executor.getPoolSize();
+    }
+
+    /**
+     * Returns the approximate number of threads running tasks.
+     *
+     * @return The count.
+     */
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    /**
+     * Returns the core number of threads.
+     *
+     * @return The count.
+     */
+    public int getCorePoolSize() {
+        return executor.getCorePoolSize();
+    }
+
+    /**
+     * Returns the maximum number of threads.
+     *
+     * @return The count.
+     */
+    public int getMaximumPoolSize() {
+        return executor.getMaximumPoolSize();
     }
 
     /**
@@ -192,14 +287,33 @@ public final class ThreadPool extends ThreadPoolExecutor {
     }
 
     @Override
-    protected void beforeExecute(final Thread t, final Runnable r) {
-        activeTasks.incrementAndGet();
-        super.beforeExecute(t, r);
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        return executor.shutdownNow();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return executor.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return executor.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(final long timeout, final TimeUnit unit) throws InterruptedException {
+        return executor.awaitTermination(timeout, unit);
     }
 
     @Override
-    protected void afterExecute(final Runnable r, final Throwable t) {
-        super.afterExecute(r, t);
-        activeTasks.decrementAndGet();
+    public String toString() {
+        final String state = executor.toString();
+        return getClass().getName() + "@" + Integer.toHexString(hashCode()) + state.substring(state.indexOf('['));
     }
 }
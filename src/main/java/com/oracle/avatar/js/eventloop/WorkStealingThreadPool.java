@@ -0,0 +1,382 @@
+/*
+ * Copyright (c) 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package com.oracle.avatar.js.eventloop;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A work-stealing thread pool with bounded per category queues.
+ *
+ * Tasks run on a {@link ForkJoinPool} in async (FIFO) mode. Each
+ * {@link ThreadPool.Category} has its own limit on the number of tasks
+ * waiting to run; a submission beyond that limit is rejected with a
+ * {@link RejectedExecutionException} rather than run on the caller, which is
+ * usually the event loop thread. The event loop turns the rejection into a
+ * backpressure notification to the script.
+ *
+ * Blocking categories (fs and dns) run as managed blockers so that the pool
+ * can add compensating threads while they wait.
+ *
+ * The limits are read from {@code com.oracle.avatar.js.eventloop.queueSize.<category>},
+ * defaulting to {@code com.oracle.avatar.js.eventloop.queueSize} or 1024.
+ *
+ * {@code com.oracle.avatar.js.eventloop.threadTimeout} is not supported: the
+ * {@link ForkJoinPool} of this JDK retires idle workers on its own schedule
+ * and has no keep alive setting.
+ */
+public final class WorkStealingThreadPool extends ThreadPool {
+
+    private static final int DEFAULT_CATEGORY_QUEUE_SIZE = 1024;
+    private static final Category[] CATEGORIES = Category.values();
+
+    private final ForkJoinPool pool;
+    private final int[] limits;
+    private final AtomicInteger[] queued;
+    private final AtomicInteger active = new AtomicInteger(0);
+    private final AtomicLong rejected = new AtomicLong(0);
+    private final AtomicInteger generation = new AtomicInteger(0);
+
+    /**
+     * Returns a new instance configured from system properties.
+     *
+     * @param shared {@code true} if this pool is shared.
+     * @return The instance.
+     */
+    public static WorkStealingThreadPool newInstance(final boolean shared) {
+        final int parallelism = Integer.getInteger(CORE_THREAD_PROPERTY, DEFAULT_CORE_THREADS);
+        final int queueSize = Integer.getInteger(QUEUE_SIZE_PROPERTY, DEFAULT_CATEGORY_QUEUE_SIZE);
+        final int[] limits = new int[CATEGORIES.length];
+        for (final Category category : CATEGORIES) {
+            limits[category.ordinal()] = Integer.getInteger(QUEUE_SIZE_PROPERTY + "." + category, queueSize);
+        }
+        return new WorkStealingThreadPool(parallelism, limits, shared);
+    }
+
+    /**
+     * Returns a new instance with the same queue limit for every category.
+     *
+     * @param parallelism The target number of active threads.
+     * @param queueSize   The maximum number of waiting tasks per category.
+     * @param shared      {@code true} if this pool is shared.
+     * @return The instance.
+     */
+    public static WorkStealingThreadPool newInstance(final int parallelism,
+                                                     final int queueSize,
+                                                     final boolean shared) {
+        final int[] limits = new int[CATEGORIES.length];
+        for (int i = 0; i < limits.length; i++) {
+            limits[i] = queueSize;
+        }
+        return new WorkStealingThreadPool(parallelism, limits, shared);
+    }
+
+    private WorkStealingThreadPool(final int parallelism,
+                                   final int[] limits,
+                                   final boolean shared) {
+        super(shared);
+        this.pool = new ForkJoinPool(parallelism, new WorkerThreadFactory(), null, true);
+        this.limits = limits;
+        this.queued = new AtomicInteger[CATEGORIES.length];
+        for (int i = 0; i < queued.length; i++) {
+            queued[i] = new AtomicInteger(0);
+        }
+    }
+
+    private static final class WorkerThreadFactory implements ForkJoinPool.ForkJoinWorkerThreadFactory {
+        private final AtomicInteger id = new AtomicInteger(0);
+
+        @Override
+        public ForkJoinWorkerThread newThread(final ForkJoinPool pool) {
+            final ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("avatar-js.task." + id.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    private final class Task implements Runnable, ForkJoinPool.ManagedBlocker {
+        private final Category category;
+        private final Runnable task;
+        private final int submitted;
+        private boolean done;
+
+        Task(final Category category, final Runnable task) {
+            this.category = category;
+            this.task = task;
+            this.submitted = generation.get();
+        }
+
+        @Override
+        public void run() {
+            // count as active before leaving the queue so that the pool
+            // never looks idle while a task is being handed over
+            active.incrementAndGet();
+            queued[category.ordinal()].decrementAndGet();
+            try {
+                if (submitted != generation.get()) {
+                    // cleared while waiting
+                    if (task instanceof Future) {
+                        ((Future<?>) task).cancel(false);
+                    }
+                    return;
+                }
+                if (category == Category.FS || category == Category.DNS) {
+                    try {
+                        ForkJoinPool.managedBlock(this);
+                    } catch (final InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                } else {
+                    task.run();
+                }
+            } finally {
+                active.decrementAndGet();
+            }
+        }
+
+        @Override
+        public boolean block() {
+            try {
+                task.run();
+            } finally {
+                done = true;
+            }
+            return true;
+        }
+
+        @Override
+        public boolean isReleasable() {
+            return done;
+        }
+    }
+
+    /**
+     * Submits a task of the given category.
+     *
+     * @param category The category.
+     * @param task     The task.
+     * @return A future for the task.
+     * @throws RejectedExecutionException if the queue of the category is full
+     *         or the pool is shut down.
+     */
+    @Override
+    public Future<?> submit(final Category category, final Runnable task) {
+        final FutureTask<Void> future = new FutureTask<>(task, null);
+        execute(category, future);
+        return future;
+    }
+
+    @Override
+    public void execute(final Runnable task) {
+        execute(Category.DEFAULT, task);
+    }
+
+    private void execute(final Category category, final Runnable task) {
+        if (task == null) {
+            throw new NullPointerException();
+        }
+        final AtomicInteger count = queued[category.ordinal()];
+        if (count.incrementAndGet() > limits[category.ordinal()]) {
+            count.decrementAndGet();
+            rejected.incrementAndGet();
+            throw new RejectedExecutionException(category + " task queue is full (" +
+                    limits[category.ordinal()] + ")");
+        }
+        try {
+            pool.execute(new Task(category, task));
+        } catch (final RejectedExecutionException ex) {
+            count.decrementAndGet();
+            rejected.incrementAndGet();
+            throw ex;
+        }
+    }
+
+    /**
+     * Returns the number of queued tasks of the given category.
+     *
+     * @param category The category.
+     * @return The count.
+     */
+    public int queuedTasksCount(final Category category) {
+        return queued[category.ordinal()].get();
+    }
+
+    /**
+     * Returns the queue limit of the given category.
+     *
+     * @param category The category.
+     * @return The limit.
+     */
+    public int taskQueueSize(final Category category) {
+        return limits[category.ordinal()];
+    }
+
+    /**
+     * Returns the number of tasks rejected since this pool was created.
+     *
+     * @return The count.
+     */
+    public long rejectedTasksCount() {
+        return rejected.get();
+    }
+
+    @Override
+    public boolean hasActiveTasks() {
+        return active.get() != 0;
+    }
+
+    @Override
+    public int activeTaskCount() {
+        return active.get();
+    }
+
+    @Override
+    public int taskQueueSize() {
+        long size = 0;
+        for (final int limit : limits) {
+            size += limit;
+        }
+        return (int) Math.min(size, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public boolean hasQueuedTasks() {
+        for (final AtomicInteger count : queued) {
+            if (count.get() > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public int queuedTasksCount() {
+        int count = 0;
+        for (final AtomicInteger c : queued) {
+            count += c.get();
+        }
+        return count;
+    }
+
+    @Override
+    public int queuedTasksRemainingCapacity() {
+        long remaining = 0;
+        for (int i = 0; i < limits.length; i++) {
+            remaining += Math.max(0, limits[i] - queued[i].get());
+        }
+        return (int) Math.min(remaining, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Discards all queued tasks. Tasks already handed to the pool are
+     * cancelled when they reach a worker instead of being run.
+     */
+    @Override
+    public void clearQueuedTasks() {
+        generation.incrementAndGet();
+    }
+
+    @Override
+    public String describeConfig() {
+        final StringBuilder sb = new StringBuilder();
+        sb.append(POOL_PROPERTY).append('=').append(WORK_STEALING).append(", ");
+        sb.append(CORE_THREAD_PROPERTY).append('=').append(pool.getParallelism());
+        for (final Category category : CATEGORIES) {
+            sb.append(", ").append(QUEUE_SIZE_PROPERTY).append('.').append(category)
+              .append('=').append(limits[category.ordinal()]);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Has no effect, idle workers are retired by the {@link ForkJoinPool}.
+     */
+    @Override
+    public void allowCoreThreadTimeOut(final boolean value) {
+    }
+
+    @Override
+    public int getCorePoolSize() {
+        return pool.getParallelism();
+    }
+
+    @Override
+    public int getMaximumPoolSize() {
+        return pool.getParallelism();
+    }
+
+    @Override
+    public int getActiveCount() {
+        return pool.getActiveThreadCount();
+    }
+
+    @Override
+    public int getPoolSize() {
+        return pool.getPoolSize();
+    }
+
+    @Override
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        clearQueuedTasks();
+        pool.shutdownNow();
+        return Collections.emptyList();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return pool.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return pool.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(final long timeout, final TimeUnit unit) throws InterruptedException {
+        return pool.awaitTermination(timeout, unit);
+    }
+
+    @Override
+    public String toString() {
+        final String state = pool.toString();
+        return getClass().getName() + "@" + Integer.toHexString(hashCode()) + state.substring(state.indexOf('['));
+    }
+}
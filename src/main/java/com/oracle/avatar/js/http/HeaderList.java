@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package com.oracle.avatar.js.http;
+
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import jdk.nashorn.api.scripting.AbstractJSObject;
+import jdk.nashorn.api.scripting.JSObject;
+
+/**
+ * The name and value pairs of a parsed message, handed to http.js without
+ * copying the array the parser built. Indexing and {@code length} read that
+ * array directly and {@code Array.isArray} is {@code true}. Any other member,
+ * such as {@code concat} or {@code slice}, and any write go to a script array
+ * made from the headers on first use.
+ */
+public final class HeaderList extends AbstractJSObject {
+
+    private final String[] headers;
+    private final JSObject toArray;
+    private JSObject array;
+
+    /**
+     * Creates a view.
+     *
+     * @param headers Alternating names and values.
+     * @param toArray A script function turning {@code headers} into a script array.
+     */
+    public HeaderList(final String[] headers, final JSObject toArray) {
+        this.headers = headers;
+        this.toArray = toArray;
+    }
+
+    private JSObject array() {
+        if (array == null) {
+            array = (JSObject) toArray.call(null, (Object) headers);
+        }
+        return array;
+    }
+
+    @Override
+    public boolean isArray() {
+        return true;
+    }
+
+    @Override
+    public String getClassName() {
+        return "Array";
+    }
+
+    @Override
+    public Object getSlot(final int index) {
+        if (array == null && index >= 0 && index < headers.length) {
+            return headers[index];
+        }
+        return array().getSlot(index);
+    }
+
+    @Override
+    public boolean hasSlot(final int index) {
+        if (array == null) {
+            return index >= 0 && index < headers.length;
+        }
+        return array.hasSlot(index);
+    }
+
+    @Override
+    public void setSlot(final int index, final Object value) {
+        array().setSlot(index, value);
+    }
+
+    @Override
+    public Object getMember(final String name) {
+        if (array == null && "length".equals(name)) {
+            return headers.length;
+        }
+        final Object member = array().getMember(name);
+        if (member instanceof JSObject && ((JSObject) member).isFunction()) {
+            // called on this view, applied to the array
+            return new Bound((JSObject) member, array);
+        }
+        return member;
+    }
+
+    @Override
+    public boolean hasMember(final String name) {
+        if (array == null && "length".equals(name)) {
+            return true;
+        }
+        return array().hasMember(name);
+    }
+
+    @Override
+    public void setMember(final String name, final Object value) {
+        array().setMember(name, value);
+    }
+
+    @Override
+    public Set<String> keySet() {
+        if (array != null) {
+            return array.keySet();
+        }
+        final Set<String> keys = new LinkedHashSet<>();
+        for (int i = 0; i < headers.length; i++) {
+            keys.add(Integer.toString(i));
+        }
+        return keys;
+    }
+
+    @Override
+    public Collection<Object> values() {
+        if (array != null) {
+            return array.values();
+        }
+        return new AbstractList<Object>() {
+            @Override
+            public Object get(final int index) {
+                return headers[index];
+            }
+
+            @Override
+            public int size() {
+                return headers.length;
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        if (array != null) {
+            return array.toString();
+        }
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < headers.length; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(headers[i]);
+        }
+        return sb.toString();
+    }
+
+    private static final class Bound extends AbstractJSObject {
+        private final JSObject function;
+        private final JSObject thiz;
+
+        Bound(final JSObject function, final JSObject thiz) {
+            this.function = function;
+            this.thiz = thiz;
+        }
+
+        @Override
+        public boolean isFunction() {
+            return true;
+        }
+
+        @Override
+        public Object call(final Object ignored, final Object... args) {
+            return function.call(thiz, args);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package com.oracle.avatar.js.http;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * A pool of {@link ParserSettings} shared by all the parsers of a runtime.
+ *
+ * The parser only calls its settings while {@code execute} runs, so a
+ * settings instance is bound to a parser for the duration of one call and
+ * then returned. The callbacks are created once per pool instead of once
+ * per parser. A callback that runs another parser synchronously takes a
+ * second instance, so the pool never holds more instances than the deepest
+ * nesting of {@code execute} calls. Must only be used from the event thread.
+ */
+public final class ParserPool {
+
+    private final ParserSettings.ParserHeadersCompleteFunction onHeadersComplete;
+    private final ParserSettings.ParserDataFunction onBody;
+    private final ParserSettings.ParserFunction onMessageComplete;
+    private final ParserSettings.ParserHeadersFunction onHeaders;
+
+    private final Deque<ParserSettings> idle = new ArrayDeque<>();
+
+    public ParserPool(final ParserSettings.ParserHeadersCompleteFunction onHeadersComplete,
+                      final ParserSettings.ParserDataFunction onBody,
+                      final ParserSettings.ParserFunction onMessageComplete,
+                      final ParserSettings.ParserHeadersFunction onHeaders) {
+        this.onHeadersComplete = onHeadersComplete;
+        this.onBody = onBody;
+        this.onMessageComplete = onMessageComplete;
+        this.onHeaders = onHeaders;
+    }
+
+    /**
+     * Returns settings that pass the given parser to the callbacks.
+     *
+     * @param parser The parser object handed to the callbacks.
+     * @return The settings.
+     */
+    public ParserSettings acquire(final Object parser) {
+        ParserSettings settings = idle.poll();
+        if (settings == null) {
+            settings = new ParserSettings(onHeadersComplete, onBody, onMessageComplete, onHeaders);
+        }
+        return settings.bind(parser);
+    }
+
+    /**
+     * Returns settings to the pool once {@code execute} has returned.
+     *
+     * @param settings The settings.
+     */
+    public void release(final ParserSettings settings) {
+        idle.push(settings.bind(null));
+    }
+}
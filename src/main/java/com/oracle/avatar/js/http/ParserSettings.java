@@ -27,24 +27,32 @@ package com.oracle.avatar.js.http;
 
 import com.oracle.httpparser.HttpParserSettings;
 
+/**
+ * The callbacks of an {@link com.oracle.httpparser.HttpParser}, forwarded
+ * to script functions along with the parser object the settings are bound
+ * to. Instances are shared through a {@link ParserPool}.
+ */
 public final class ParserSettings extends HttpParserSettings {
 
     public interface ParserDataFunction {
-        public int call(int offset,
+        public int call(Object parser,
+                        int offset,
                         int length);
     }
 
     public interface ParserFunction {
-        public int call();
+        public int call(Object parser);
     }
 
     public interface ParserHeadersFunction {
-        public int call(String url,
+        public int call(Object parser,
+                        String url,
                         String[] headers);
     }
 
     public interface ParserHeadersCompleteFunction {
-        public int call(String url,
+        public int call(Object parser,
+                        String url,
                         String[] headers,
                         String method,
                         int status,
@@ -59,6 +67,8 @@ public final class ParserSettings extends HttpParserSettings {
     final ParserFunction onMessageComplete;
     final ParserHeadersFunction onHeaders;
 
+    private Object parser;
+
     public ParserSettings(final ParserHeadersCompleteFunction onHeadersComplete,
                           final ParserDataFunction onBody,
                           final ParserFunction onMessageComplete,
@@ -69,6 +79,11 @@ public final class ParserSettings extends HttpParserSettings {
         this.onHeaders = onHeaders;
     }
 
+    ParserSettings bind(final Object parser) {
+        this.parser = parser;
+        return this;
+    }
+
     @Override
     public int onHeadersComplete(String url,
                                  String[] headers,
@@ -78,22 +93,22 @@ public final class ParserSettings extends HttpParserSettings {
                                  int httpVersionMinor,
                                  boolean shouldKeepAlive,
                                  boolean upgrade) {
-        return onHeadersComplete.call(url, headers, method, status, httpVersionMajor, httpVersionMinor, shouldKeepAlive, upgrade);
+        return onHeadersComplete.call(parser, url, headers, method, status, httpVersionMajor, httpVersionMinor, shouldKeepAlive, upgrade);
     }
     @Override
     public int onHeaders(String url,
                          String[] headers) {
-        return onHeaders.call(url, headers);
+        return onHeaders.call(parser, url, headers);
     }
 
     @Override
     public int onBody(int offset,
                       int length) {
-        return onBody.call(offset, length);
+        return onBody.call(parser, offset, length);
     }
 
     @Override
     public int onMessageComplete() {
-        return onMessageComplete.call();
+        return onMessageComplete.call(parser);
     }
 }
@@ -0,0 +1,256 @@
+/*
+ * Copyright (c) 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package com.oracle.avatar.js.http;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Fixed responses served by a {@link ResponseFastPath} without running any
+ * script.
+ *
+ * Each response is encoded once, status line, headers and body, into a
+ * direct buffer that is written as is for every matching GET; HEAD requests
+ * get a view of the header part. With a Date header, the response is
+ * re-encoded when the date changes, once a second. Entries expire after their time to live
+ * and the least recently used entries are evicted when the entry count or
+ * the total size of the encoded responses exceeds its limit.
+ */
+public final class ResponseCache {
+
+    private static final class Entry {
+        private final ByteBuffer response;
+        private final int statusLength;
+        private final int headLength;
+        private final long expires;
+
+        // the response with the Date header of the current second
+        private ByteBuffer dated;
+        private ByteBuffer datedHead;
+        private ByteBuffer date;
+
+        Entry(final ByteBuffer response, final int statusLength, final int headLength, final long expires) {
+            this.response = response;
+            this.statusLength = statusLength;
+            this.headLength = headLength;
+            this.expires = expires;
+        }
+
+        int size() {
+            return response.capacity();
+        }
+
+        ByteBuffer get(final boolean head, final ByteBuffer date) {
+            if (date == null) {
+                return head ? slice(response, 0, headLength) : response;
+            }
+            // loops sharing the cache have their own date buffers
+            if (this.date != date && !date.equals(this.date)) {
+                // once a second, splice the new Date header after the status line
+                final ByteBuffer out = ByteBuffer.allocateDirect(response.capacity() + date.capacity());
+                out.put(slice(response, 0, statusLength));
+                out.put(date.duplicate());
+                out.put(slice(response, statusLength, response.capacity()));
+                out.clear();
+                dated = out;
+                datedHead = slice(out, 0, headLength + date.capacity());
+                this.date = date;
+            }
+            return head ? datedHead : dated;
+        }
+    }
+
+    private static ByteBuffer slice(final ByteBuffer buffer, final int from, final int to) {
+        final ByteBuffer window = buffer.duplicate();
+        window.limit(to).position(from);
+        return window.slice();
+    }
+
+    private final int maxEntries;
+    private final long maxBytes;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long bytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long expirations;
+
+    /**
+     * Creates a cache.
+     *
+     * @param maxEntries The maximum number of responses.
+     * @param maxBytes The maximum total size of the encoded responses.
+     */
+    public ResponseCache(final int maxEntries, final long maxBytes) {
+        if (maxEntries <= 0 || maxBytes <= 0) {
+            throw new IllegalArgumentException("maxEntries and maxBytes must be positive");
+        }
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Adds or replaces the response for a request target. Content-Length
+     * and Connection are set by the cache, so these headers as well as
+     * Transfer-Encoding are ignored if given.
+     *
+     * @param path The request target, matched exactly, query included.
+     * @param status The status code.
+     * @param headers Alternating header names and values.
+     * @param body The body, from its position to its limit.
+     * @param ttl The time to live in milliseconds, 0 or less never expires.
+     * @return {@code false} if the response is larger than the cache, in
+     * which case the cache is left unchanged.
+     */
+    public synchronized boolean put(final String path,
+                                    final int status,
+                                    final String[] headers,
+                                    final ByteBuffer body,
+                                    final long ttl) {
+        byte[] statusLine = ResponseHeaderWriter.statusLine(status);
+        if (statusLine == null) {
+            statusLine = ("HTTP/1.1 " + status + " unknown\r\n").getBytes(StandardCharsets.ISO_8859_1);
+        }
+        final StringBuilder head = new StringBuilder(256);
+        for (int i = 0; i + 1 < headers.length; i += 2) {
+            final String name = headers[i];
+            if (name.equalsIgnoreCase("Content-Length")
+                    || name.equalsIgnoreCase("Connection")
+                    || name.equalsIgnoreCase("Transfer-Encoding")
+                    || name.equalsIgnoreCase("Date")) {
+                continue;
+            }
+            head.append(name).append(": ").append(headers[i + 1]).append("\r\n");
+        }
+        head.append("Connection: keep-alive\r\n");
+        head.append("Content-Length: ").append(body.remaining()).append("\r\n\r\n");
+
+        final byte[] headBytes = head.toString().getBytes(StandardCharsets.UTF_8);
+        final int headLength = statusLine.length + headBytes.length;
+        final int size = headLength + body.remaining();
+        if (size > maxBytes) {
+            // the response already cached for the path stays
+            return false;
+        }
+        remove(path);
+        final ByteBuffer response = ByteBuffer.allocateDirect(size);
+        response.put(statusLine).put(headBytes).put(body.duplicate());
+        response.clear();
+
+        final long expires = ttl > 0 ? System.currentTimeMillis() + ttl : 0;
+        entries.put(path, new Entry(response, statusLine.length, headLength, expires));
+        bytes += size;
+        evict();
+        return true;
+    }
+
+    /**
+     * Returns the encoded response for a request target. The buffer is
+     * shared and must not be repositioned.
+     *
+     * @param path The request target.
+     * @param head {@code true} for a HEAD request.
+     * @param date The Date header line to include, {@code null} for none.
+     * The response is re-encoded only when a different line is given.
+     * @return The response, or {@code null} if none is cached or it expired.
+     */
+    public synchronized ByteBuffer get(final String path, final boolean head, final ByteBuffer date) {
+        final Entry entry = entries.get(path);
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        if (entry.expires != 0 && entry.expires <= System.currentTimeMillis()) {
+            entries.remove(path);
+            bytes -= entry.size();
+            expirations++;
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.get(head, date);
+    }
+
+    /**
+     * Removes the response for a request target.
+     *
+     * @param path The request target.
+     * @return {@code true} if a response was removed.
+     */
+    public synchronized boolean remove(final String path) {
+        final Entry entry = entries.remove(path);
+        if (entry == null) {
+            return false;
+        }
+        bytes -= entry.size();
+        return true;
+    }
+
+    /**
+     * Removes all responses.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    private void evict() {
+        final Iterator<Entry> it = entries.values().iterator();
+        while ((entries.size() > maxEntries || bytes > maxBytes) && it.hasNext()) {
+            final Entry eldest = it.next();
+            it.remove();
+            bytes -= eldest.size();
+            evictions++;
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long bytes() {
+        return bytes;
+    }
+
+    public synchronized long hits() {
+        return hits;
+    }
+
+    public synchronized long misses() {
+        return misses;
+    }
+
+    public synchronized long evictions() {
+        return evictions;
+    }
+
+    public synchronized long expirations() {
+        return expirations;
+    }
+}
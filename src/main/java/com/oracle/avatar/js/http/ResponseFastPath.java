@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package com.oracle.avatar.js.http;
+
+import java.nio.ByteBuffer;
+
+import com.oracle.httpparser.HttpParser;
+import com.oracle.httpparser.HttpParserSettings;
+import com.oracle.libuv.cb.StreamReadCallback;
+import com.oracle.libuv.cb.StreamWriteCallback;
+import com.oracle.libuv.handles.StreamHandle;
+
+/**
+ * Answers requests from a {@link ResponseCache} on the event thread,
+ * without running any script.
+ *
+ * The fast path sits in front of the read and write callbacks of an
+ * accepted connection. Reads are parsed in Java one message at a time; a
+ * complete keep-alive GET or HEAD request without a body whose target is
+ * cached is answered by writing the cached response, dated by the loop's
+ * {@link ResponseHeaderWriter}. At the first request
+ * that cannot be answered, incomplete or not cached, the bytes from the
+ * start of that request on are passed to the script read callback and the
+ * connection stays with the script from then on, which keeps pipelined
+ * responses in order. Completions of the writes made here are not passed
+ * to the script write callback; this relies on the server not writing
+ * before it has seen a request.
+ *
+ * Script socket timeouts only see reads that reach the script, so reads
+ * answered here call the activity callback, at most once a second.
+ */
+public final class ResponseFastPath implements StreamReadCallback, StreamWriteCallback {
+
+    private static final long ACTIVITY_INTERVAL = 1000;
+
+    private final StreamHandle handle;
+    private final ResponseCache cache;
+    private final ResponseHeaderWriter headers;
+    private final StreamReadCallback onRead;
+    private final StreamWriteCallback onWrite;
+    private final Runnable onActive;
+
+    private final HttpParser parser = new HttpParser();
+    private final Request request = new Request();
+
+    private boolean handedOff;
+    private int pendingWrites;
+    private long lastActive;
+
+    // the last message parsed, the parser pauses after each one
+    private final class Request extends HttpParserSettings {
+        private String url;
+        private String method;
+        private boolean keepAlive;
+        private boolean upgrade;
+        private boolean body;
+        private boolean complete;
+
+        void reset() {
+            url = null;
+            method = null;
+            keepAlive = false;
+            upgrade = false;
+            body = false;
+            complete = false;
+        }
+
+        @Override
+        public int onHeadersComplete(final String url,
+                                     final String[] headers,
+                                     final String method,
+                                     final int status,
+                                     final int httpVersionMajor,
+                                     final int httpVersionMinor,
+                                     final boolean shouldKeepAlive,
+                                     final boolean upgrade) {
+            this.url = url;
+            this.method = method;
+            this.keepAlive = shouldKeepAlive;
+            this.upgrade = upgrade;
+            return 0;
+        }
+
+        @Override
+        public int onBody(final int offset, final int length) {
+            body = true;
+            return 0;
+        }
+
+        @Override
+        public int onMessageComplete() {
+            complete = true;
+            parser.pause();
+            return 0;
+        }
+    }
+
+    public ResponseFastPath(final StreamHandle handle,
+                            final ResponseCache cache,
+                            final ResponseHeaderWriter headers,
+                            final StreamReadCallback onRead,
+                            final StreamWriteCallback onWrite,
+                            final Runnable onActive) {
+        this.handle = handle;
+        this.cache = cache;
+        this.headers = headers;
+        this.onRead = onRead;
+        this.onWrite = onWrite;
+        this.onActive = onActive;
+        parser.init(HttpParser.Type.REQUEST);
+    }
+
+    @Override
+    public void onRead(final ByteBuffer data) throws Exception {
+        if (handedOff || data == null) {
+            handOff(data, 0);
+            return;
+        }
+        final int length = data.capacity();
+        int offset = 0;
+        while (offset < length) {
+            request.reset();
+            final int parsed = parser.execute(request, data, offset, length - offset);
+            if (!request.complete || !respond()) {
+                handOff(data, offset);
+                return;
+            }
+            parser.resume();
+            offset += parsed;
+        }
+        final long now = System.currentTimeMillis();
+        if (now - lastActive >= ACTIVITY_INTERVAL) {
+            lastActive = now;
+            onActive.run();
+        }
+    }
+
+    private boolean respond() {
+        if (request.upgrade || !request.keepAlive || request.body) {
+            return false;
+        }
+        final boolean head = "HEAD".equals(request.method);
+        if (!head && !"GET".equals(request.method)) {
+            return false;
+        }
+        final ByteBuffer response = cache.get(request.url, head, headers == null ? null : headers.dateHeader());
+        if (response == null) {
+            return false;
+        }
+        pendingWrites++;
+        handle.write(response);
+        return true;
+    }
+
+    private void handOff(final ByteBuffer data, final int offset) throws Exception {
+        if (!handedOff) {
+            handedOff = true;
+            parser.free();
+        }
+        if (data == null || offset == 0) {
+            onRead.onRead(data);
+            return;
+        }
+        final ByteBuffer rest = data.duplicate();
+        rest.position(offset);
+        onRead.onRead(rest.slice());
+    }
+
+    @Override
+    public void onWrite(final int status, final Exception error) throws Exception {
+        if (pendingWrites > 0) {
+            // a failed write shows up as a read error, which reaches the script
+            pendingWrites--;
+            return;
+        }
+        onWrite.onWrite(status, error);
+    }
+}
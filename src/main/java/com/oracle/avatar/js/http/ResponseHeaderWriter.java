@@ -0,0 +1,279 @@
+/*
+ * Copyright (c) 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package com.oracle.avatar.js.http;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+
+import com.oracle.avatar.js.buffer.BufferPool;
+import com.oracle.libuv.cb.TimerCallback;
+import com.oracle.libuv.handles.HandleFactory;
+import com.oracle.libuv.handles.TimerHandle;
+
+/**
+ * Serializes HTTP response headers straight into pooled direct buffers.
+ *
+ * Status lines and common header names come pre-encoded from static
+ * tables, other names and values are copied a char at a time, and the
+ * Date header is formatted once a second by an unreferenced loop timer
+ * instead of once per response. The returned buffers are slices of
+ * pooled buffers which go back to the pool through
+ * {@link #release(ByteBuffer)} once written, or, for header blocks kept
+ * by script, exact copies from {@link #encode}.
+ *
+ * A writer is not thread safe, there is one per event loop.
+ */
+public final class ResponseHeaderWriter implements AutoCloseable {
+
+    private static final int BUFFER_SIZE = 4 * 1024;
+    private static final int MAX_POOLED = 32;
+
+    private static final byte[] CRLF = { '\r', '\n' };
+    private static final byte[] SEPARATOR = { ':', ' ' };
+
+    private static final Map<Integer, String> REASONS = new HashMap<>();
+    private static final Map<Integer, byte[]> STATUS_LINES = new HashMap<>();
+
+    static {
+        REASONS.put(100, "Continue");
+        REASONS.put(101, "Switching Protocols");
+        REASONS.put(200, "OK");
+        REASONS.put(201, "Created");
+        REASONS.put(202, "Accepted");
+        REASONS.put(204, "No Content");
+        REASONS.put(206, "Partial Content");
+        REASONS.put(301, "Moved Permanently");
+        REASONS.put(302, "Moved Temporarily");
+        REASONS.put(303, "See Other");
+        REASONS.put(304, "Not Modified");
+        REASONS.put(307, "Temporary Redirect");
+        REASONS.put(400, "Bad Request");
+        REASONS.put(401, "Unauthorized");
+        REASONS.put(403, "Forbidden");
+        REASONS.put(404, "Not Found");
+        REASONS.put(405, "Method Not Allowed");
+        REASONS.put(408, "Request Time-out");
+        REASONS.put(409, "Conflict");
+        REASONS.put(410, "Gone");
+        REASONS.put(411, "Length Required");
+        REASONS.put(412, "Precondition Failed");
+        REASONS.put(413, "Request Entity Too Large");
+        REASONS.put(416, "Requested Range Not Satisfiable");
+        REASONS.put(429, "Too Many Requests");
+        REASONS.put(500, "Internal Server Error");
+        REASONS.put(501, "Not Implemented");
+        REASONS.put(502, "Bad Gateway");
+        REASONS.put(503, "Service Unavailable");
+        REASONS.put(504, "Gateway Time-out");
+        for (final Map.Entry<Integer, String> reason : REASONS.entrySet()) {
+            STATUS_LINES.put(reason.getKey(), encodeStatusLine(reason.getKey(), reason.getValue()));
+        }
+    }
+
+    private final TimerHandle timer;
+    private final SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US);
+    private String date;
+    private ByteBuffer dateHeader;
+
+    private final ArrayDeque<ByteBuffer> pool = new ArrayDeque<>();
+    private final Map<ByteBuffer, ByteBuffer> outstanding = new IdentityHashMap<>();
+
+    /**
+     * Creates a writer whose Date header is refreshed by a timer of the
+     * given loop.
+     *
+     * @param factory The handle factory of the event loop.
+     */
+    public ResponseHeaderWriter(final HandleFactory factory) {
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        refresh();
+        timer = factory.newTimerHandle();
+        timer.setTimerFiredCallback(new TimerCallback() {
+            @Override
+            public void onTimer(int status) throws Exception {
+                refresh();
+            }
+        });
+        timer.unref();
+        // on the next second boundary, then every second
+        timer.start(1000 - System.currentTimeMillis() % 1000, 1000);
+    }
+
+    private void refresh() {
+        date = format.format(new Date());
+        final byte[] line = ("Date: " + date + "\r\n").getBytes(StandardCharsets.ISO_8859_1);
+        final ByteBuffer header = ByteBuffer.allocateDirect(line.length);
+        header.put(line).clear();
+        dateHeader = header;
+    }
+
+    /**
+     * Returns the current date as sent in the Date header.
+     *
+     * @return The date.
+     */
+    public String date() {
+        return date;
+    }
+
+    // the encoded Date header line, replaced every second, never repositioned
+    ByteBuffer dateHeader() {
+        return dateHeader;
+    }
+
+    // the encoded status line, or null if the status code is not a common one
+    static byte[] statusLine(final int status) {
+        return STATUS_LINES.get(status);
+    }
+
+    // the reason phrase of a status code, or null
+    static String reason(final int status) {
+        return REASONS.get(status);
+    }
+
+    private static byte[] encodeStatusLine(final int status, final String reason) {
+        return ("HTTP/1.1 " + status + " " + reason + "\r\n").getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Writes a response header block: status line, headers, Date unless
+     * already given or not wanted, and the final empty line. Names and
+     * values are written as is, characters outside of ASCII as UTF-8.
+     *
+     * @param status The status code.
+     * @param reason The reason phrase, {@code null} for the standard one.
+     * @param headers Alternating header names and values.
+     * @param sendDate {@code true} to add a Date header.
+     * @return The header block.
+     */
+    public ByteBuffer write(final int status, final String reason, final String[] headers, final boolean sendDate) {
+        byte[] statusLine = reason == null || reason.equals(REASONS.get(status)) ? STATUS_LINES.get(status) : null;
+        if (statusLine == null) {
+            statusLine = encodeStatusLine(status, reason == null ? "unknown" : reason);
+        }
+
+        boolean date = sendDate;
+        long size = statusLine.length + dateHeader.capacity() + CRLF.length;
+        for (int i = 0; i + 1 < headers.length; i += 2) {
+            size += 3L * (headers[i].length() + headers[i + 1].length()) + SEPARATOR.length + CRLF.length;
+            if (date && headers[i].equalsIgnoreCase("Date")) {
+                date = false;
+            }
+        }
+
+        final boolean pooled = size <= BUFFER_SIZE;
+        final ByteBuffer out = pooled ? acquire() : ByteBuffer.allocateDirect((int) size);
+        out.put(statusLine);
+        for (int i = 0; i + 1 < headers.length; i += 2) {
+            final byte[] name = HeaderNames.encoded(headers[i]);
+            if (name != null) {
+                out.put(name);
+            } else {
+                put(out, headers[i]);
+                out.put(SEPARATOR);
+            }
+            put(out, headers[i + 1]);
+            out.put(CRLF);
+        }
+        if (date) {
+            out.put(dateHeader.duplicate());
+        }
+        out.put(CRLF);
+
+        out.flip();
+        final ByteBuffer slice = out.slice();
+        if (pooled) {
+            outstanding.put(slice, out);
+        }
+        return slice;
+    }
+
+    /**
+     * Writes a response header block as {@link #write} does, into a buffer
+     * of its own which is not released. Used for the header blocks kept by
+     * http.js until the first body chunk, which can outlive the write.
+     *
+     * @param status The status code.
+     * @param reason The reason phrase, {@code null} for the standard one.
+     * @param headers Alternating header names and values.
+     * @param sendDate {@code true} to add a Date header.
+     * @return The header block, position 0 and limit at capacity.
+     */
+    public ByteBuffer encode(final int status, final String reason, final String[] headers, final boolean sendDate) {
+        final ByteBuffer header = write(status, reason, headers, sendDate);
+        final ByteBuffer copy = BufferPool.allocate(header.remaining());
+        copy.put(header.duplicate()).clear();
+        release(header);
+        return copy;
+    }
+
+    private static void put(final ByteBuffer out, final String str) {
+        final int length = str.length();
+        for (int i = 0; i < length; i++) {
+            final char c = str.charAt(i);
+            if (c >= 0x80) {
+                out.put(str.substring(i).getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            out.put((byte) c);
+        }
+    }
+
+    /**
+     * Returns a written header block to the pool. Buffers not returned by
+     * this writer are ignored.
+     *
+     * @param buffer A buffer returned by {@link #write}.
+     */
+    public void release(final ByteBuffer buffer) {
+        final ByteBuffer pooled = outstanding.remove(buffer);
+        if (pooled != null && pool.size() < MAX_POOLED) {
+            pooled.clear();
+            pool.push(pooled);
+        }
+    }
+
+    private ByteBuffer acquire() {
+        final ByteBuffer pooled = pool.poll();
+        return pooled != null ? pooled : ByteBuffer.allocateDirect(BUFFER_SIZE);
+    }
+
+    /**
+     * Stops refreshing the Date header.
+     */
+    @Override
+    public void close() {
+        timer.close();
+    }
+}
@@ -32,7 +32,6 @@ import java.util.concurrent.Callable;
 
 import com.oracle.avatar.js.buffer.Buffer;
 import com.oracle.avatar.js.eventloop.Callback;
-import com.oracle.avatar.js.eventloop.Event;
 import com.oracle.avatar.js.eventloop.EventLoop;
 
 public abstract class CompressWriter extends Writer {
@@ -81,8 +80,8 @@ public abstract class CompressWriter extends Writer {
             // Mapping IOException in this case is not perfect.
             // No IOException should be thrown BUT the Java API can... for undocumented reason
             // (eg: GZIPOutputStream constructor).
-            eventLoop.post(new Event("zlib.error", getErrorCallback(),
-                    ex.getMessage(), ZlibConstants.Z_STREAM_ERROR));
+            eventLoop.post("zlib.error", getErrorCallback(),
+                    ex.getMessage(), ZlibConstants.Z_STREAM_ERROR);
         }
         if (LOG.enabled()) {
             LOG.log("New Compression stream " + compressStream);
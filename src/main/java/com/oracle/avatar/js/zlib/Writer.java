@@ -26,11 +26,12 @@
 package com.oracle.avatar.js.zlib;
 
 import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
 
 import com.oracle.avatar.js.buffer.Buffer;
 import com.oracle.avatar.js.eventloop.Callback;
-import com.oracle.avatar.js.eventloop.Event;
 import com.oracle.avatar.js.eventloop.EventLoop;
+import com.oracle.avatar.js.eventloop.ThreadPool;
 
 /**
  * Base class for compress and uncompress.
@@ -114,8 +115,8 @@ public abstract class Writer {
                 LOG.log("Invalid paremeters " + exception);
                 //exception.printStackTrace();
             }
-            eventLoop.post(new Event("zlib.error", getErrorCallback(),
-                    exception.getMessage(), ZlibConstants.Z_STREAM_ERROR));
+            eventLoop.post("zlib.error", getErrorCallback(),
+                    exception.getMessage(), ZlibConstants.Z_STREAM_ERROR);
         }
     }
 
@@ -189,21 +190,26 @@ public abstract class Writer {
 
     public void submitToLoop(final Callable<?> callable, final Callback cb) {
         final EventLoop.Handle handle = eventLoop.acquire();
-        eventLoop.submit(new Runnable() {
-            @Override
-            public void run() {
-                try {
-                    callable.call();
-                } catch (final Exception e) {
-                    if (LOG.enabled()) {
-                        LOG.log(e);
+        try {
+            eventLoop.submit(ThreadPool.Category.ZLIB, new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        callable.call();
+                    } catch (final Exception e) {
+                        if (LOG.enabled()) {
+                            LOG.log(e);
+                        }
+                        eventLoop.post("zlib.error", cb, e.toString(), ZlibConstants.Z_STREAM_ERROR);
+                    } finally {
+                        handle.close();
                     }
-                    eventLoop.post(new Event("zlib.error", cb, e.toString(), ZlibConstants.Z_STREAM_ERROR));
-                } finally {
-                    handle.close();
                 }
-            }
-        });
+            });
+        } catch (final RejectedExecutionException e) {
+            eventLoop.post("zlib.error", cb, e.toString(), ZlibConstants.Z_STREAM_ERROR);
+            handle.close();
+        }
     }
 
     public void callback(final Callback callback, final int availInAfter,
@@ -212,8 +218,7 @@ public abstract class Writer {
             LOG.log("DONE, Remaining input "
                     + availInAfter + " remainingOutput " + availOutAfter);
         }
-        final Object[] args = {availInAfter, availOutAfter};
-        eventLoop.post(new Event("zlib.callback", callback, args));
+        eventLoop.post("zlib.callback", callback, availInAfter, availOutAfter);
     }
 
     void checkWriteParameters(final int flush,
@@ -41,6 +41,9 @@
         if (e instanceof java.net.UnknownHostException) {
             code = 'ENOTFOUND';
             message = 'domain name not found.';
+        } else if (e instanceof java.util.concurrent.RejectedExecutionException) {
+            code = 'EAGAIN';
+            message = 'too many pending lookups.';
         } else {
             code = 'ENODATA';
             message = 'domain has no data.'
@@ -438,8 +438,14 @@
                 that.onhandshakestart();
             }
         }
+        // delegated handshake tasks are done, the pair has to cycle again
+        var resume = function() {
+            if (that.onresume) {
+                that.onresume();
+            }
+        }
         this.peer = new connection(__avatar.eventloop,
-                    secureContext.peer, reqCertOrServerName, rejectUnauthorized, renegoStart);
+                    secureContext.peer, reqCertOrServerName, rejectUnauthorized, renegoStart, resume);
         Object.defineProperty(this, 'peer',  { writable: false,  enumerable: false });
         this.setSNICallback = function(SNICallback) {
             var cb = function(name, args) {
@@ -587,4 +593,76 @@
         }
     }
     exports.Connection = Connection;
+
+    // durations in nanoseconds, see HandshakeTasks
+    function handshakeStats() {
+        var tasks = Packages.com.oracle.avatar.js.crypto.HandshakeTasks;
+        var summary = function(histogram) {
+            return {
+                count: histogram.count(),
+                mean: histogram.mean(),
+                p50: histogram.percentile(50),
+                p99: histogram.percentile(99),
+                max: histogram.max()
+            };
+        };
+        return {
+            maxConcurrent: tasks.MAX_CONCURRENT,
+            running: tasks.running(),
+            waiting: tasks.waiting(),
+            handshakes: summary(tasks.handshakes()),
+            tasks: summary(tasks.tasks()),
+            waits: summary(tasks.waits())
+        };
+    }
+    exports.handshakeStats = handshakeStats;
+
+    // SSLEngine buffers held by connections and waiting in the shared pool
+    function engineBufferStats() {
+        var buffers = Packages.com.oracle.avatar.js.crypto.EngineBuffers;
+        return {
+            leased: buffers.leased(),
+            idle: buffers.idle(),
+            idleBytes: buffers.idleBytes(),
+            allocations: buffers.allocations(),
+            maxIdle: buffers.MAX_IDLE
+        };
+    }
+    exports.engineBufferStats = engineBufferStats;
+
+    // TLS session resumption, see SessionCache
+    function sessionCacheStats() {
+        var cache = Packages.com.oracle.avatar.js.crypto.SessionCache;
+        return {
+            size: cache.size(),
+            maxSize: cache.SIZE,
+            timeout: cache.TIMEOUT,
+            hits: cache.hits(),
+            misses: cache.misses(),
+            evictions: cache.evictions(),
+            expirations: cache.expirations(),
+            serverHits: cache.serverHits(),
+            serverMisses: cache.serverMisses(),
+            contexts: cache.contexts(),
+            contextEvictions: cache.contextEvictions()
+        };
+    }
+    exports.sessionCacheStats = sessionCacheStats;
+
+    // parsed credentials and initialized SSLContexts, see CredentialCache
+    function credentialCacheStats() {
+        var credentials = Packages.com.oracle.avatar.js.crypto.CredentialCache;
+        var sessions = Packages.com.oracle.avatar.js.crypto.SessionCache;
+        return {
+            size: credentials.size(),
+            hits: credentials.hits(),
+            misses: credentials.misses(),
+            evictions: credentials.evictions(),
+            contexts: sessions.contexts(),
+            contextHits: sessions.contextHits(),
+            contextMisses: sessions.contextMisses(),
+            contextEvictions: sessions.contextEvictions()
+        };
+    }
+    exports.credentialCacheStats = credentialCacheStats;
 });
@@ -27,7 +27,6 @@
 
     var Files = Packages.com.oracle.libuv.Files;
     var FilePollHandle = Packages.com.oracle.libuv.handles.FilePollHandle;
-    var JavaBuffer = Packages.com.oracle.avatar.js.buffer.Buffer;
     var loop = __avatar.eventloop.loop();
     var factory = __avatar.eventloop.handleFactory();
     var fs = factory.newFiles();
@@ -76,7 +75,7 @@
         if (nativeException) {
             cb(newError(nativeException), bytesRead, data);
         } else {
-            cb(undefined, bytesRead, new Buffer(new JavaBuffer(data)));
+            cb(undefined, bytesRead, Buffer._fromByteBuffer(data));
         }
     });
 
@@ -26,7 +26,10 @@
 (function(exports) {
 
     var Parser = Packages.com.oracle.httpparser.HttpParser;
-    var ParserSettings = Packages.com.oracle.avatar.js.http.ParserSettings;
+    var ParserPool = Packages.com.oracle.avatar.js.http.ParserPool;
+    var JavaResponseCache = Packages.com.oracle.avatar.js.http.ResponseCache;
+    var ResponseHeaderWriter = Packages.com.oracle.avatar.js.http.ResponseHeaderWriter;
+    var HeaderList = Packages.com.oracle.avatar.js.http.HeaderList;
 
     var debug;
     if (process.env.NODE_DEBUG && /http/.test(process.env.NODE_DEBUG)) {
@@ -37,66 +40,80 @@
 
     function HTTPParser(type) {
         this.reinitialize(type);
-        var that = this;
-        Object.defineProperty(this, '_settings', {
-            value : new ParserSettings(
-            // on_headers_complete
-            function(url, jheaders, method, status, httpVersionMajor, httpVersionMinor, shouldKeepAlive, upgrade) {
-                var headers = Java.from(jheaders);
-                var info = {
-                    headers : headers,
-                    versionMinor : httpVersionMinor,
-                    versionMajor : httpVersionMajor,
-                    shouldKeepAlive : shouldKeepAlive,
-                    upgrade : upgrade
-                };
-
-                if (that._type === HTTPParser.REQUEST) {
-                    info.url = url;
-                    info.method = method;
-                }
-                if (that._type === HTTPParser.RESPONSE) {
-                    info.statusCode = status;
-                }
+    }
 
-                var response;
-                try {
-                    response = that.onHeadersComplete(info);
-                } catch (e) {
-                    debug(e.stack);
-                    that._got_exception = e;
-                    return -1;
-                }
-                return response ? 1 : 0;
-            },
-            // on_body
-            function(offset, length) {
-                try {
-                    var bodyOffset = that._dataStart + offset;
-                    that.onBody(that._data, bodyOffset, length);
-                } catch (e) {
-                    debug(e.stack);
-                    that._got_exception = e;
-                    return -1;
-                }
-                return 0;
-            },
-            // on_message_complete
-            function() {
-                try {
-                    that.onMessageComplete();
-                } catch (e) {
-                    debug(e.stack);
-                    that._got_exception = e;
-                    return -1;
-                }
-                return 0;
-            },
-            // on_headers
-            function(url, jheaders) {
-               that.onHeaders(Java.from(jheaders), url);
-            })
+    function toArray(headers) {
+        return Java.from(headers);
+    }
+
+    // the callbacks are shared by all parsers, the parser being executed is
+    // passed as the first argument
+    var settingsPool = new ParserPool(
+        // on_headers_complete
+        function(that, url, headers, method, status, httpVersionMajor, httpVersionMinor, shouldKeepAlive, upgrade) {
+            var info = {
+                headers : new HeaderList(headers, toArray),
+                versionMinor : httpVersionMinor,
+                versionMajor : httpVersionMajor,
+                shouldKeepAlive : shouldKeepAlive,
+                upgrade : upgrade
+            };
+
+            if (that._type === HTTPParser.REQUEST) {
+                info.url = url;
+                info.method = method;
+            }
+            if (that._type === HTTPParser.RESPONSE) {
+                info.statusCode = status;
+            }
+
+            var response;
+            try {
+                response = that.onHeadersComplete(info);
+            } catch (e) {
+                debug(e.stack);
+                that._got_exception = e;
+                return -1;
+            }
+            return response ? 1 : 0;
+        },
+        // on_body
+        function(that, offset, length) {
+            try {
+                var bodyOffset = that._dataStart + offset;
+                that.onBody(that._data, bodyOffset, length);
+            } catch (e) {
+                debug(e.stack);
+                that._got_exception = e;
+                return -1;
+            }
+            return 0;
+        },
+        // on_message_complete
+        function(that) {
+            try {
+                that.onMessageComplete();
+            } catch (e) {
+                debug(e.stack);
+                that._got_exception = e;
+                return -1;
+            }
+            return 0;
+        },
+        // on_headers
+        function(that, url, headers) {
+           // http.js appends these with [].concat(headers), which only
+           // spreads script arrays
+           that.onHeaders(Java.from(headers), url);
         });
+
+    function execute(parser, buffer, start, length) {
+        var settings = settingsPool.acquire(parser);
+        try {
+            return parser._parser.execute(settings, buffer, start, length);
+        } finally {
+            settingsPool.release(settings);
+        }
     }
 
     exports.HTTPParser = HTTPParser;
@@ -138,7 +155,7 @@
         this._got_exception = null;
         this._data = data;
         this._dataStart = start;
-        var nparsed = this._parser.execute(this._settings, data._impl.underlying(), start, length);
+        var nparsed = execute(this, Buffer._underlying(data), start, length);
         this._data = null;
         this._dataStart = -1;
         if (this._got_exception)
@@ -161,7 +178,7 @@
     var FINISH_BUFFER = new Buffer(0)._impl.toByteBuffer()
     HTTPParser.prototype.finish = function() {
         this._got_exception = null;
-        var nparsed = this._parser.execute(this._settings, FINISH_BUFFER, 0, 0);
+        var nparsed = execute(this, FINISH_BUFFER, 0, 0);
         if (this._got_exception) {
             throw this._got_exception;
         }
@@ -178,4 +195,100 @@
     HTTPParser.prototype.resume = function() {
        this._parser.resume();
     }
+
+    // { name: value or [values] } to a String[] of alternating names and values
+    function headerList(headers) {
+        var list = [];
+        for (var name in headers) {
+            var value = headers[name];
+            if (Array.isArray(value)) {
+                for (var i = 0; i < value.length; i++) {
+                    list.push(name, String(value[i]));
+                }
+            } else {
+                list.push(name, String(value));
+            }
+        }
+        return Java.to(list, "java.lang.String[]");
+    }
+
+    var headerWriter;
+    // one per loop, created on first use so that its Date timer only runs
+    // in processes that serve HTTP
+    function responseHeaderWriter() {
+        if (!headerWriter) {
+            headerWriter = new ResponseHeaderWriter(__avatar.eventloop.handleFactory());
+        }
+        return headerWriter;
+    }
+
+    exports.responseHeaderWriter = responseHeaderWriter;
+
+    // the encoded header block of a response, a pooled ByteBuffer to hand
+    // back to releaseResponseHeader once written
+    exports.responseHeader = function(statusCode, reason, headers, sendDate) {
+        return responseHeaderWriter().write(statusCode, reason === undefined ? null : reason,
+                                            headerList(headers), sendDate !== false);
+    }
+
+    exports.releaseResponseHeader = function(header) {
+        responseHeaderWriter().release(header);
+    }
+
+    // the header block of a ServerResponse, as a Buffer of its own; fields
+    // alternate names and values, in the order they are written
+    exports.encodeResponseHeader = function(statusCode, reason, fields, sendDate) {
+        var header = responseHeaderWriter().encode(statusCode, reason === undefined ? null : reason,
+                                                   Java.to(fields, "java.lang.String[]"), sendDate);
+        return Buffer._fromByteBuffer(header);
+    }
+
+    // the Date header value, refreshed once a second
+    exports.utcDate = function() {
+        return responseHeaderWriter().date();
+    }
+
+    // Responses answered in Java, before the request reaches http.js.
+    // Set on a server before it listens:
+    //   var cache = new (process.binding('http_parser').ResponseCache)();
+    //   cache.set('/health', { statusCode: 200, body: 'ok', ttl: 5000 });
+    //   server.responseCache = cache;
+    // Keep-alive GET and HEAD requests for a cached target are answered
+    // without emitting 'request', everything else goes through http.js.
+    function ResponseCache(options) {
+        options = options || {};
+        Object.defineProperty(this, '_cache', {
+            value: new JavaResponseCache(options.maxEntries || 1024, options.maxBytes || 16 * 1024 * 1024) });
+    }
+
+    exports.ResponseCache = ResponseCache;
+
+    // response is { statusCode, headers, body, encoding, ttl }, ttl in ms,
+    // returns false if the response does not fit in the cache
+    ResponseCache.prototype.set = function(path, response) {
+        var body = response.body === undefined ? new Buffer(0) :
+            Buffer.isBuffer(response.body) ? response.body : new Buffer(String(response.body), response.encoding);
+        return this._cache.put(path, response.statusCode || 200, headerList(response.headers),
+                               body._impl.toByteBuffer(0, body.length), response.ttl || 0);
+    }
+
+    ResponseCache.prototype.delete = function(path) {
+        return this._cache.remove(path);
+    }
+
+    ResponseCache.prototype.clear = function() {
+        this._cache.clear();
+    }
+
+    ResponseCache.prototype.stats = function() {
+        var cache = this._cache;
+        return {
+            entries: cache.size(),
+            bytes: cache.bytes(),
+            hits: cache.hits(),
+            misses: cache.misses(),
+            evictions: cache.evictions(),
+            expirations: cache.expirations()
+        };
+    }
 });
@@ -274,6 +274,14 @@ var gc = global.gc;
         }
     );
 
+    // emitted when the thread pool is saturated and rejects fs, dns, zlib
+    // or crypto work instead of running it on the event loop thread
+    __avatar.eventloop.setBackpressureCallback(
+        function(name, args) {
+            process.emit('backpressure', { category: args[0], queued: args[1] });
+        }
+    );
+
     // If we were spawned with env NODE_CHANNEL_FD then load that up and
     // start parsing data from that stream.
     if (process.env.NODE_CHANNEL_FD) {
@@ -33,6 +33,9 @@
     var UDP = process.binding('udp_wrap').UDP;
 
     var JavaBuffer = Packages.com.oracle.avatar.js.buffer.Buffer;
+    var StringEncoder = Packages.com.oracle.avatar.js.buffer.StringEncoder;
+    // encodes strings straight into pooled direct buffers, one per loop
+    var encoder = new StringEncoder();
     var PipeHandle = Packages.com.oracle.libuv.handles.PipeHandle;
     var TCPHandle = Packages.com.oracle.libuv.handles.TCPHandle;
     var UDPHandle = Packages.com.oracle.libuv.handles.UDPHandle;
@@ -64,7 +67,7 @@
         this._pipe.readCallback = function(byteBuffer) {
             if (byteBuffer) {
                process._errno = undefined;
-               var data = new Buffer(new JavaBuffer(byteBuffer));
+               var data = Buffer._fromByteBuffer(byteBuffer);
                that.onread(data, 0, data.length);
             } else {
                 var errno = 'EOF';
@@ -76,7 +79,7 @@
         this._pipe.read2Callback = function(byteBuffer, handle, type) {
             if (byteBuffer) {
                process._errno = undefined;
-               var data = new Buffer(new JavaBuffer(byteBuffer));
+               var data = Buffer._fromByteBuffer(byteBuffer);
                // Defined in uv.h
                var UV_NAMED_PIPE = 7
                var UV_TCP = 12;
@@ -122,6 +125,9 @@
                 process._errno = errno;
             }
             var wrapper = that._writeWrappers.shift();
+            if (wrapper && wrapper._pooled) {
+                encoder.release(wrapper._pooled);
+            }
             if (wrapper && wrapper.oncomplete) {
                 wrapper.oncomplete(status, that, wrapper);
             }
@@ -238,12 +244,12 @@
                 send_handle = handle._udp;
             }
             var buffer  = new JavaBuffer(message, 'utf8');
-            var wrapper = {bytes: buffer.array().length};
+            var wrapper = {bytes: buffer.capacity()};
             this._writeWrappers.push(wrapper);
             this._pipe.write2(buffer.toStringContent(), send_handle);
             return wrapper;
         }
-        return this._writeString(message, 'utf8');
+        return this._writeBuffers(encoder.encodeUtf8(String(message)), true);
      }
 
     Pipe.prototype.writeBuffer = function(message) {
@@ -254,12 +260,58 @@
         return wrapper;
     }
 
+    // Writes chunks given as [chunk, encoding, chunk, encoding, ...] as one
+    // gathered write, one native write of a single buffer.
+    Pipe.prototype.writev = function(chunks) {
+        var parts = new Array(chunks.length);
+        for (var i = 0; i + 1 < chunks.length; i += 2) {
+            var chunk = chunks[i];
+            if (Buffer.isBuffer(chunk)) {
+                parts[i] = chunk._impl;
+                parts[i + 1] = null;
+            } else {
+                parts[i] = String(chunk);
+                parts[i + 1] = Buffer._javaEncoding(chunks[i + 1]);
+            }
+        }
+        return this._writeBuffers([JavaBuffer.gather(parts)], false);
+    }
+
+    // Writes encoded or gathered buffers with one native write. Several
+    // buffers are joined first, pooled ones are released once copied.
+    Pipe.prototype._writeBuffers = function(buffers, pooled) {
+        var wrapper = {bytes: 0};
+        if (buffers.length === 0) {
+            var that = this;
+            process.nextTick(function() {
+                if (wrapper.oncomplete) {
+                    wrapper.oncomplete(0, that, wrapper);
+                }
+            });
+            return wrapper;
+        }
+        var buffer = JavaBuffer.join(buffers);
+        if (pooled) {
+            if (buffer === buffers[0]) {
+                Object.defineProperty(wrapper, '_pooled', { value: buffer });
+            } else {
+                for (var j = 0; j < buffers.length; j++) {
+                    encoder.release(buffers[j]);
+                }
+            }
+        }
+        wrapper.bytes = buffer.remaining();
+        this._writeWrappers.push(wrapper);
+        this._pipe.write(buffer);
+        return wrapper;
+    }
+
     Pipe.prototype._writeString = function(string, encoding) {
         return this.writeBuffer(new JavaBuffer(string, encoding));
     }
 
     Pipe.prototype.writeAsciiString = function(data) {
-        return this._writeString(data, 'ascii');
+        return this._writeBuffers(encoder.encodeAscii(String(data)), true);
     }
 
     Pipe.prototype.writeUcs2String = function(data) {
@@ -27,11 +27,21 @@
 
     var util = require("util");
     var events = require("events");
+    var timers = require("timers");
+    // what net.js calls on every read to push back the socket timeout
+    var touch = timers._unrefActive || timers.active;
 
     var JavaBuffer = Packages.com.oracle.avatar.js.buffer.Buffer;
+    var StringEncoder = Packages.com.oracle.avatar.js.buffer.StringEncoder;
+    // encodes strings straight into pooled direct buffers, one per loop
+    var encoder = new StringEncoder();
     var TCPHandle = Packages.com.oracle.libuv.handles.TCPHandle;
+    var ResponseFastPath = Packages.com.oracle.avatar.js.http.ResponseFastPath;
     var loop = __avatar.eventloop.loop();
     var factory = __avatar.eventloop.handleFactory();
+    // non-null when this loop shares its listening sockets with other loops
+    var cluster = __avatar.eventloop.cluster();
+    var Cluster = Packages.com.oracle.avatar.js.eventloop.Cluster;
 
     var AccessController = java.security.AccessController;
     var PrivilegedAction = java.security.PrivilegedAction;
@@ -41,7 +51,9 @@
 
     exports.TCP = TCP;
 
-    function TCP(socket) {
+    // responseCache is set on accepted connections of http servers that
+    // have one, see http_parser_wrap.js
+    function TCP(socket, responseCache) {
 
         Object.defineProperty(this, '_writeWrappers', { value: [] });
 
@@ -63,7 +75,7 @@
                 var errno = nativeException.errnoString();
                 process._errno = errno;
             }
-            var clientHandle = new TCP();
+            var clientHandle = new TCP(undefined, serverResponseCache(that));
             AccessController.doPrivileged(new PrivilegedAction() {
                 run: function() {
                     that._connection.accept(clientHandle._connection);
@@ -86,9 +98,9 @@
             that._connectWrapper.oncomplete(status, that, that._connectWrapper, true, true);
         }
 
-        this._connection.readCallback = function(byteBuffer) {
+        var readCallback = function(byteBuffer) {
             if (byteBuffer) {
-                var buffer = new Buffer(new JavaBuffer(byteBuffer));
+                var buffer = Buffer._fromByteBuffer(byteBuffer);
                 that.onread(buffer, 0, buffer.length);
             } else {
                 var errno = loop.getLastError().errnoString();
@@ -97,17 +109,39 @@
             }
         }
 
-        this._connection.writeCallback = function(status, nativeException) {
+        var writeCallback = function(status, nativeException) {
             if (status == -1) {
                 var errno = nativeException.errnoString();
                 process._errno = errno;
             }
             var wrapper = that._writeWrappers.shift();
+            if (wrapper && wrapper._pooled) {
+                encoder.release(wrapper._pooled);
+            }
+            if (wrapper && wrapper._responseHeader) {
+                process.binding('http_parser').releaseResponseHeader(wrapper._responseHeader);
+            }
             if (wrapper && wrapper.oncomplete) {
                 wrapper.oncomplete(status, that, wrapper);
             }
         }
 
+        if (responseCache) {
+            var fastPath = new ResponseFastPath(this._connection, responseCache,
+                process.binding('http_parser').responseHeaderWriter(), readCallback, writeCallback,
+                function() {
+                    // reads answered in Java still count as socket activity
+                    if (that.owner) {
+                        touch(that.owner);
+                    }
+                });
+            this._connection.readCallback = fastPath;
+            this._connection.writeCallback = fastPath;
+        } else {
+            this._connection.readCallback = readCallback;
+            this._connection.writeCallback = writeCallback;
+        }
+
         this._connection.closeCallback = function() {
             if (that._closeCallback) {
                 // net.js, line 422, fireErrorCallbacks uses nextTick to do
@@ -130,7 +164,23 @@
 
     util.inherits(TCP, events.EventEmitter);
 
+    // the Java response cache of the http server listening on handle, if any
+    function serverResponseCache(handle) {
+        var server = handle.owner;
+        var cache = server && server.responseCache;
+        return cache && cache._cache;
+    }
+
     TCP.prototype.bind = function(address, port) {
+        if (cluster) {
+            // deferred until we know whether this is a listening socket
+            Object.defineProperty(this, '_bindAddress', { value: {address: address, port: port}, configurable: true });
+            return 0;
+        }
+        return this._bind(address, port);
+    }
+
+    TCP.prototype._bind = function(address, port) {
         try {
             this._connection.bind(address, port);
         } catch (err) {
@@ -149,6 +199,9 @@
     }
 
     TCP.prototype.listen = function(backlog) {
+        if (this._bindAddress) {
+            return this._clusterListen(backlog);
+        }
         try {
             this._connection.listen(backlog);
         } catch (err) {
@@ -166,7 +219,51 @@
         return this.connect(address, port);
     }
 
+    TCP.prototype._clusterListen = function(backlog) {
+        var that = this;
+        var bound = this._bindAddress;
+        try {
+            var listener = cluster.listen(bound.address, bound.port, backlog, __avatar.eventloop,
+                function(name, args) {
+                    that._onClusterConnection(args[0], args[1]);
+                });
+            Object.defineProperty(this, '_listener', { value: listener, configurable: true });
+        } catch (err) {
+            if (!(err instanceof java.io.IOException)) {
+                throw err;
+            }
+            process._errno = err instanceof java.net.BindException ? 'EADDRINUSE' : 'EINVAL';
+            return -1;
+        }
+        return 0;
+    }
+
+    TCP.prototype._onClusterConnection = function(fd, channel) {
+        var clientHandle = new TCP(undefined, serverResponseCache(this));
+        if (clientHandle.open(fd) === -1) {
+            // not adopted, the descriptor still belongs to the channel
+            Cluster.discard(channel);
+            this.onconnection(undefined);
+            return;
+        }
+        if (!this._listener) {
+            // closed while the connection was in flight
+            clientHandle.close();
+            return;
+        }
+        Object.defineProperty(clientHandle, '_connected', {value: true});
+        clientHandle._connection.readStart();
+        this.onconnection(clientHandle);
+    }
+
     TCP.prototype.connect = function(address, port) {
+        if (this._bindAddress) {
+            var bound = this._bindAddress;
+            delete this._bindAddress;
+            if (this._bind(bound.address, bound.port) === -1) {
+                return null;
+            }
+        }
         var wrapper = {address: address, port: port};
         Object.defineProperty(this, '_connectWrapper', {value: wrapper});
         try {
@@ -214,16 +311,72 @@
         return wrapper;
     }
 
+    // Writes chunks given as [chunk, encoding, chunk, encoding, ...] as one
+    // gathered write, one native write of a single buffer.
+    TCP.prototype.writev = function(chunks) {
+        var parts = new Array(chunks.length);
+        for (var i = 0; i + 1 < chunks.length; i += 2) {
+            var chunk = chunks[i];
+            if (Buffer.isBuffer(chunk)) {
+                parts[i] = chunk._impl;
+                parts[i + 1] = null;
+            } else {
+                parts[i] = String(chunk);
+                parts[i + 1] = Buffer._javaEncoding(chunks[i + 1]);
+            }
+        }
+        return this._writeBuffers([JavaBuffer.gather(parts)], false);
+    }
+
+    // Writes encoded or gathered buffers with one native write. Several
+    // buffers are joined first, pooled ones are released once copied.
+    TCP.prototype._writeBuffers = function(buffers, pooled) {
+        var wrapper = {bytes: 0};
+        Object.defineProperty(wrapper, '_socketHandle', { value: this.owner });
+        if (buffers.length === 0) {
+            var that = this;
+            process.nextTick(function() {
+                if (wrapper.oncomplete) {
+                    wrapper.oncomplete(0, that, wrapper);
+                }
+            });
+            return wrapper;
+        }
+        var buffer = JavaBuffer.join(buffers);
+        if (pooled) {
+            if (buffer === buffers[0]) {
+                Object.defineProperty(wrapper, '_pooled', { value: buffer });
+            } else {
+                for (var j = 0; j < buffers.length; j++) {
+                    encoder.release(buffers[j]);
+                }
+            }
+        }
+        wrapper.bytes = buffer.remaining();
+        this._writeWrappers.push(wrapper);
+        this._connection.write(buffer);
+        return wrapper;
+    }
+
     TCP.prototype._writeString = function(string, encoding) {
         return this.writeBuffer(new JavaBuffer(string, encoding));
     }
 
     TCP.prototype.writeUtf8String = function(string) {
-        return this._writeString(string, 'utf8');
+        return this._writeBuffers(encoder.encodeUtf8(String(string)), true);
     }
 
     TCP.prototype.writeAsciiString = function(data) {
-        return this._writeString(data, 'ascii');
+        return this._writeBuffers(encoder.encodeAscii(String(data)), true);
+    }
+
+    // Writes the status line and headers of an http response, serialized in
+    // Java into a pooled buffer, with a Date header unless sendDate is false.
+    TCP.prototype.writeResponseHeader = function(statusCode, reason, headers, sendDate) {
+        var header = process.binding('http_parser').responseHeader(statusCode, reason, headers, sendDate);
+        var wrapper = this._writeBuffers([header], false);
+        Object.defineProperty(wrapper, '_responseHeader', { value: header });
+        return wrapper;
     }
 
     TCP.prototype.writeUcs2String = function(data) {
@@ -247,6 +400,14 @@
     }
 
     TCP.prototype.getsockname = function() {
+        if (this._listener) {
+            var local = this._listener.localAddress();
+            return {
+                port: local.getPort(),
+                address: local.getAddress().getHostAddress(),
+                family: local.getAddress() instanceof java.net.Inet6Address ? 'IPv6' : 'IPv4'
+            };
+        }
         return this._addressToJS(this._connection.getSocketName());
     }
 
@@ -259,6 +420,10 @@
     }
 
     TCP.prototype.close = function(cb) {
+        if (this._listener) {
+            this._listener.leave(__avatar.eventloop);
+            delete this._listener;
+        }
         if (this._connection) {
             this._connection.readStop();
             this._connection.close();
@@ -277,10 +442,16 @@
     }
 
     TCP.prototype.ref = function() {
+        if (this._listener) {
+            this._listener.ref(__avatar.eventloop);
+        }
         this._connection.ref();
     }
 
     TCP.prototype.unref = function() {
+        if (this._listener) {
+            this._listener.unref(__avatar.eventloop);
+        }
         this._connection.unref();
     }
 
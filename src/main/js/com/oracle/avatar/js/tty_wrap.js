@@ -59,7 +59,7 @@
 
         this._tty.readCallback = function(byteBuffer) {
             if (byteBuffer) {
-                var buffer = new Buffer(new JavaBuffer(byteBuffer));
+                var buffer = Buffer._fromByteBuffer(byteBuffer);
                 that.onread(buffer, 0, buffer.length);
             } else {
                 var errno = loop.getLastError().errnoString();
@@ -25,7 +25,6 @@
 
 (function(exports) {
 
-    var JavaBuffer = Packages.com.oracle.avatar.js.buffer.Buffer;
     var UDPHandle = Packages.com.oracle.libuv.handles.UDPHandle;
     var loop = __avatar.eventloop.loop();
     var factory = __avatar.eventloop.handleFactory();
@@ -50,7 +49,7 @@
 
 
         this._udp.recvCallback = function(nread, data, rinfo) {
-            var buffer = new Buffer(new JavaBuffer(data));
+            var buffer = Buffer._fromByteBuffer(data);
             that.onmessage(that, buffer, 0, buffer.length, { address: rinfo.getIp(), port: rinfo.getPort() })
         }
 
@@ -153,9 +153,9 @@
 
         var res = new Object();
         var localCallback = function(name, args) {
+            var availInAfter = args[0];
+            var availOutAfter = args[1];
             process.nextTick(function() {
-                var availInAfter = args[0];
-                var availOutAfter = args[1];
                 res.callback(availInAfter, availOutAfter);
             });
         }
@@ -46,6 +46,8 @@
 
 var assert = require('assert');
 var JavaBuffer = Packages.com.oracle.avatar.js.buffer.Buffer;
+var JavaNeedle = Packages.com.oracle.avatar.js.buffer.Needle;
+var JavaCompositeBuffer = Packages.com.oracle.avatar.js.buffer.CompositeBuffer;
 var setIndexedPropertiesToExternalArrayData = Object.setIndexedPropertiesToExternalArrayData;
 
 function Buffer(subject, encoding, offset) {
@@ -127,8 +129,51 @@ if (setIndexedPropertiesToExternalArrayData) {
     require('util').inherits(Buffer, Array);
 }
 
+// Wraps a ByteBuffer handed over by a native read. This skips the argument
+// checks of the Buffer constructor, and the Java Buffer is only created when
+// _impl is first used: stream reads are sliced and pushed, or handed to the
+// http parser, which both work on the ByteBuffer directly.
+function ReadBuffer(byteBuffer) {
+    this._byteBuffer = byteBuffer;
+    setIndexedPropertiesToExternalArrayData(this, byteBuffer);
+    this.length = byteBuffer.capacity();
+}
+ReadBuffer.prototype = Object.create(Buffer.prototype, {
+    constructor: { value: Buffer, writable: true, configurable: true },
+    _impl: {
+        get: function() {
+            var impl = new JavaBuffer(this._byteBuffer);
+            Object.defineProperty(this, '_impl', { value: impl, writable: true, enumerable: true, configurable: true });
+            return impl;
+        },
+        set: function(impl) {
+            Object.defineProperty(this, '_impl', { value: impl, writable: true, enumerable: true, configurable: true });
+        },
+        configurable: true
+    }
+});
+ReadBuffer.prototype._slice = function(start, end) {
+    return new ReadBuffer(JavaBuffer.slice(this._byteBuffer, start, end));
+}
+
+Buffer._fromByteBuffer = setIndexedPropertiesToExternalArrayData ?
+    function(byteBuffer) {
+        return new ReadBuffer(byteBuffer);
+    } :
+    function(byteBuffer) {
+        return new Buffer(new JavaBuffer(byteBuffer));
+    };
+
+// the ByteBuffer of a buffer, without creating the Java Buffer of a read
+Buffer._underlying = function(buffer) {
+    return buffer._byteBuffer || buffer._impl.underlying();
+}
+
 exports.Buffer = Buffer;
 
+// buffers smaller than half of this are carved out of a shared slab
+Buffer.poolSize = Packages.com.oracle.avatar.js.buffer.BufferPool.POOL_SIZE;
+
 exports.SlowBuffer = function(str, encoding) {
     var sb = Buffer(str, encoding);
     sb._slow = true;
@@ -275,11 +320,17 @@ Buffer.prototype.write = function(string, offset, length, encoding) {
         throw new RangeError('attempt to write beyond buffer bounds');
     }
 
+    var javaEncoding = Buffer._javaEncoding(encoding);
+    if (javaEncoding === 'hex' && string.length % 2 !== 0) {
+        // checked up front, whether or not the string fits
+        throw new TypeError('Invalid hex string');
+    }
+
     if (off >= capacity) {
         return 0;
     }
 
-    var writtenBytes = this._impl.write(string, off, len, Buffer._javaEncoding(encoding));
+    var writtenBytes = this._impl.write(string, off, len, javaEncoding);
     _writtenChars = this._impl.getCharsWritten();
     return writtenBytes;
 }
@@ -346,7 +397,7 @@ Buffer.prototype.toString = function(encoding, start, end) {
 }
 
 Buffer.prototype.slice = function(start, end) {
-    var capacity = this._impl.capacity();
+    var capacity = this.length;
     if (start < 0 && end == undefined) { // in this case, the negative value is the offset from end
         end = capacity
         start = capacity + start;
@@ -364,7 +415,11 @@ Buffer.prototype.slice = function(start, end) {
     if (off >= capacity || len <= 0 || len > capacity) {
         return new Buffer(0);
     }
-    return new Buffer(this._impl.slice(off, endpos));
+    return this._slice(off, endpos);
+}
+
+Buffer.prototype._slice = function(start, end) {
+    return new Buffer(this._impl.slice(start, end));
 }
 
 Buffer.prototype.fill = function(value, start, end) {
@@ -379,6 +434,41 @@ Buffer.prototype.fill = function(value, start, end) {
     this._impl.fill(value, off, endpos);
 }
 
+// Precompiles a search pattern for repeated indexOf calls, such as a
+// multipart boundary.
+Buffer.needle = function(value, encoding) {
+    if (value instanceof JavaNeedle) {
+        return value;
+    }
+    if (Buffer.isBuffer(value)) {
+        return new JavaNeedle(value._impl);
+    }
+    if (typeof value === 'string') {
+        return new JavaNeedle(JavaBuffer.toBytes(value, Buffer._javaEncoding(encoding)));
+    }
+    throw new TypeError('needle must be a string or Buffer');
+};
+
+// value is a byte, a string, a Buffer or a precompiled needle
+Buffer.prototype.indexOf = function(value, byteOffset, encoding) {
+    if (typeof byteOffset === 'string') {
+        encoding = byteOffset;
+        byteOffset = 0;
+    }
+    var length = this.length;
+    byteOffset = +byteOffset || 0;
+    if (byteOffset < 0) {
+        byteOffset = Math.max(length + byteOffset, 0);
+    }
+    if (byteOffset >= length) {
+        return -1;
+    }
+    if (typeof value === 'number') {
+        return this._impl.indexOf(value & 0xff, byteOffset);
+    }
+    return this._impl.indexOf(Buffer.needle(value, encoding), byteOffset);
+};
+
 Buffer.concat = function(list, length) {
   if (!Array.isArray(list)) {
     throw new Error('Usage: Buffer.concat(list, [length])');
@@ -390,24 +480,89 @@ Buffer.concat = function(list, length) {
     return list[0];
   }
 
-  if (typeof length !== 'number') {
-    length = 0;
-    for (var i = 0; i < list.length; i++) {
-      var buf = list[i];
-      length += buf.length;
-    }
+  // sizes are summed and pieces copied in one pass on the Java side
+  return new Buffer(JavaBuffer.concat(javaBuffers(list), typeof length === 'number' ? length : -1));
+};
+
+// Presents a list of Buffers as one read-only buffer, without copying, for
+// code that only reads or scans the content. The Buffers are shared, later
+// changes to them are visible.
+Buffer.composite = function(list) {
+  if (!Array.isArray(list)) {
+    throw new Error('Usage: Buffer.composite(list)');
   }
+  return new CompositeBuffer(javaBuffers(list));
+};
 
-  var buffer = new Buffer(length);
-  var pos = 0;
-  for (var i = 0; i < list.length; i++) {
-    var buf = list[i];
-    buf.copy(buffer, pos);
-    pos += buf.length;
+function CompositeBuffer(impls) {
+  this._impl = new JavaCompositeBuffer(impls);
+  this.length = this._impl.length();
+}
+
+CompositeBuffer.prototype.get = function(offset) {
+  checkOffset(offset, 1, this.length);
+  return this._impl.getByteAt(offset);
+};
+
+// same arguments as Buffer.prototype.indexOf
+CompositeBuffer.prototype.indexOf = Buffer.prototype.indexOf;
+
+CompositeBuffer.prototype.copy = function(targetBuffer, targetStart, sourceStart, sourceEnd) {
+  if (!Buffer.isBuffer(targetBuffer)) {
+    throw new TypeError('targetBuffer must be a Buffer');
+  }
+  var ts = targetStart || 0;
+  var range = compositeRange(this, sourceStart, sourceEnd);
+  if (range.end === range.start) {
+    return 0;
+  }
+  if (ts < 0 || ts >= targetBuffer.length) {
+    throw new RangeError('targetStart out of bounds');
   }
-  return buffer;
+  return this._impl.copy(targetBuffer._impl, ts, range.start, range.end);
+};
+
+CompositeBuffer.prototype.slice = function(start, end) {
+  var range = compositeRange(this, start, end);
+  return new Buffer(this._impl.slice(range.start, range.end));
 };
 
+CompositeBuffer.prototype.toString = function(encoding, start, end) {
+  var range = compositeRange(this, start, end);
+  return this._impl.toString(Buffer._javaEncoding(encoding), range.start, range.end);
+};
+
+CompositeBuffer.prototype.toBuffer = function() {
+  return new Buffer(this._impl.toBuffer());
+};
+
+// clamps start and end like Buffer.prototype.slice
+function compositeRange(composite, start, end) {
+  var length = composite.length;
+  var s = +start || 0;
+  var e = end === undefined ? length : +end || 0;
+  if (s < 0) {
+    s = Math.max(length + s, 0);
+  }
+  if (e < 0) {
+    e = Math.max(length + e, 0);
+  }
+  s = Math.min(s, length);
+  e = Math.min(Math.max(e, s), length);
+  return { start: s, end: e };
+}
+
+function javaBuffers(list) {
+  var impls = java.lang.reflect.Array.newInstance(JavaBuffer.class, list.length);
+  for (var i = 0; i < list.length; i++) {
+    if (!Buffer.isBuffer(list[i])) {
+      throw new TypeError('list must contain only Buffers');
+    }
+    impls[i] = list[i]._impl;
+  }
+  return impls;
+}
+
 Buffer.prototype.readInt8 = function(offset, noAssert) {
     if (!noAssert) {
         checkOffset(offset, 1, this._impl.capacity());
@@ -609,6 +764,64 @@ Buffer.prototype.writeDoubleBE = function(value, offset, noAssert) {
     this._impl.writeDoubleBE(value, offset);
 }
 
+// Bulk accessors, reading or writing count consecutive values with a single
+// call into the Java buffer instead of one call per value.
+function readArray(buffer, method, size, offset, count, littleEndian, noAssert) {
+    if (!noAssert) {
+        if ((count % 1) !== 0 || count < 0)
+            throw new RangeError('count is not uint');
+        checkOffset(offset, size * count, buffer._impl.capacity());
+    }
+    return Java.from(buffer._impl[method](offset, count, littleEndian));
+}
+
+function writeArray(buffer, method, size, type, values, offset, littleEndian, noAssert) {
+    if (!noAssert) {
+        checkOffset(offset, size * values.length, buffer._impl.capacity());
+    }
+    buffer._impl[method](Java.to(values, type), offset, littleEndian);
+}
+
+Buffer.prototype.readInt32LEArray = function(offset, count, noAssert) {
+    return readArray(this, 'readInt32s', 4, offset, count, true, noAssert);
+}
+
+Buffer.prototype.readInt32BEArray = function(offset, count, noAssert) {
+    return readArray(this, 'readInt32s', 4, offset, count, false, noAssert);
+}
+
+Buffer.prototype.readUInt32LEArray = function(offset, count, noAssert) {
+    return readArray(this, 'readUInt32s', 4, offset, count, true, noAssert);
+}
+
+Buffer.prototype.readUInt32BEArray = function(offset, count, noAssert) {
+    return readArray(this, 'readUInt32s', 4, offset, count, false, noAssert);
+}
+
+Buffer.prototype.readDoubleLEArray = function(offset, count, noAssert) {
+    return readArray(this, 'readDoubles', 8, offset, count, true, noAssert);
+}
+
+Buffer.prototype.readDoubleBEArray = function(offset, count, noAssert) {
+    return readArray(this, 'readDoubles', 8, offset, count, false, noAssert);
+}
+
+Buffer.prototype.writeInt32LEArray = function(values, offset, noAssert) {
+    writeArray(this, 'writeInt32s', 4, 'int[]', values, offset, true, noAssert);
+}
+
+Buffer.prototype.writeInt32BEArray = function(values, offset, noAssert) {
+    writeArray(this, 'writeInt32s', 4, 'int[]', values, offset, false, noAssert);
+}
+
+Buffer.prototype.writeDoubleLEArray = function(values, offset, noAssert) {
+    writeArray(this, 'writeDoubles', 8, 'double[]', values, offset, true, noAssert);
+}
+
+Buffer.prototype.writeDoubleBEArray = function(values, offset, noAssert) {
+    writeArray(this, 'writeDoubles', 8, 'double[]', values, offset, false, noAssert);
+}
+
 var INSPECT_MAX_BYTES = 50;
 
 Buffer.prototype.inspect = function() {
@@ -616,7 +829,7 @@ Buffer.prototype.inspect = function() {
 }
 
 Buffer.isBuffer = function(obj) {
-    return obj && obj._impl && (obj._impl instanceof JavaBuffer);
+    return obj instanceof Buffer || !!(obj && obj._impl && (obj._impl instanceof JavaBuffer));
 }
 
 Buffer.byteLength = function(string, encoding) {
@@ -68,6 +68,7 @@ var IdleHandle = Packages.com.oracle.libuv.handles.IdleHandle;
 var SignalHandle = Packages.com.oracle.libuv.handles.SignalHandle;
 var Map = java.util.HashMap;
 var Process = Packages.com.oracle.avatar.js.os.Process;
+var BufferPool = Packages.com.oracle.avatar.js.buffer.BufferPool;
 var Server = Packages.com.oracle.avatar.js.Server;
 var Constants = Packages.com.oracle.libuv.Constants;
 
@@ -440,6 +441,8 @@ Object.defineProperty(exports, 'memoryUsage', {
             heapTotal: total,
             heapUsed: total - free,
             rss: LibUV.rss(),
+            // direct memory held by live buffers
+            external: BufferPool.liveBytes()
         };
     }
 });
@@ -478,6 +481,38 @@ Object.defineProperty(exports, 'nextTick', {
     }
 });
 
+// Event loop statistics, null unless com.oracle.avatar.js.eventloop.stats is set.
+// Durations are in nanoseconds.
+Object.defineProperty(exports, 'loopStats', {
+    enumerable: true,
+    value: function() {
+        var stats = eventloop.stats();
+        if (!stats) {
+            return null;
+        }
+        var summary = function(histogram) {
+            return {
+                count: histogram.count(),
+                mean: histogram.mean(),
+                p50: histogram.percentile(50),
+                p99: histogram.percentile(99),
+                max: histogram.max()
+            };
+        };
+        var events = {};
+        var names = stats.names();
+        for (var i = 0; i < names.length; i++) {
+            events[names[i]] = summary(stats.callbacks(names[i]));
+        }
+        return {
+            callbacks: summary(stats.callbacks()),
+            events: events,
+            queueDepthHighWaterMark: stats.queueDepthHighWaterMark,
+            lag: summary(stats.lag())
+        };
+    }
+});
+
 Object.defineProperty(exports, 'version', {
     enumerable: true,
     get: function() {
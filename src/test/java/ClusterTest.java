@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.util.HashSet;
+import java.util.Set;
+
+import com.oracle.avatar.js.Server;
+import com.oracle.avatar.js.eventloop.Cluster;
+import org.testng.SkipException;
+import org.testng.annotations.Test;
+
+/**
+ * Test cluster mode, connections to a shared listening socket are spread
+ * across the loops.
+ *
+ */
+public class ClusterTest {
+
+    private static final int PORT = 59300;
+    private static final int LOOPS = 2;
+    private static final int MAX_CONNECTIONS = 100;
+
+    @Test
+    public void testCluster() throws Throwable {
+        if (!Cluster.isSupported()) {
+            throw new SkipException("listening sockets cannot be shared on this platform");
+        }
+        System.setProperty("avatar-js.test.cluster.port", Integer.toString(PORT));
+        System.setProperty("avatar-js.test.cluster.done", "false");
+        final String script = new java.io.File("src/test/js/cluster/cluster1.js").getAbsolutePath();
+        final Throwable[] failure = new Throwable[1];
+        final Thread cluster = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Server.runCluster(LOOPS, script);
+                } catch (Throwable ex) {
+                    failure[0] = ex;
+                }
+            }
+        });
+        cluster.start();
+
+        final Set<String> loops = new HashSet<>();
+        try {
+            for (int i = 0; i < MAX_CONNECTIONS && loops.size() < LOOPS; i++) {
+                loops.add(request());
+            }
+        } finally {
+            System.setProperty("avatar-js.test.cluster.done", "true");
+            cluster.join(30000);
+        }
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+        if (loops.size() != LOOPS) {
+            throw new Exception("connections accepted by " + loops + ", expected " + LOOPS + " loops");
+        }
+    }
+
+    private static String request() throws Exception {
+        for (int retry = 0; ; retry++) {
+            try (Socket socket = new Socket("127.0.0.1", PORT)) {
+                final InputStream in = socket.getInputStream();
+                final ByteArrayOutputStream out = new ByteArrayOutputStream();
+                final byte[] buffer = new byte[256];
+                for (int n = in.read(buffer); n != -1; n = in.read(buffer)) {
+                    out.write(buffer, 0, n);
+                }
+                if (out.size() > 0) {
+                    return out.toString("UTF-8");
+                }
+            } catch (IOException ex) {
+                if (retry == 100) {
+                    throw ex;
+                }
+            }
+            // not listening yet
+            Thread.sleep(50);
+        }
+    }
+}
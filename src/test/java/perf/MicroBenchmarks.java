@@ -0,0 +1,477 @@
+/*
+ * Copyright (c) 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package perf;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import com.oracle.avatar.js.buffer.Base64Codec;
+import com.oracle.avatar.js.buffer.Buffer;
+import com.oracle.avatar.js.buffer.HexUtils;
+import com.oracle.avatar.js.eventloop.Callback;
+import com.oracle.avatar.js.eventloop.Event;
+import com.oracle.avatar.js.eventloop.EventQueue;
+import com.oracle.avatar.js.http.ResponseHeaderWriter;
+import com.oracle.libuv.handles.DefaultHandleFactory;
+
+/* Compares rewritten Java paths with the implementations they replaced, which
+ * are kept here. Each comparison first checks that both produce the same
+ * result, then times both in rounds.
+ * usage: java perf.MicroBenchmarks [all|queue|write|accessors|codec|tostring|header] [rounds]
+ */
+public class MicroBenchmarks {
+
+    private interface Op {
+        long run() throws Exception;
+    }
+
+    private static final class Comparison {
+        private final String name;
+        private final int iterations;
+        private final Op replaced;
+        private final Op current;
+
+        Comparison(final String name, final int iterations, final Op replaced, final Op current) throws Exception {
+            this.name = name;
+            this.iterations = iterations;
+            this.replaced = replaced;
+            this.current = current;
+            if (replaced.run() != current.run()) {
+                throw new AssertionError(name + ": results differ");
+            }
+        }
+
+        void run(final int rounds) throws Exception {
+            for (int r = 0; r < rounds; r++) {
+                final long old = time(replaced);
+                final long now = time(current);
+                System.out.printf("%s round %d: replaced %d ns/op, current %d ns/op%n",
+                        name, r, old / iterations, now / iterations);
+            }
+        }
+
+        private long time(final Op op) throws Exception {
+            long sum = 0;
+            final long begin = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                sum += op.run();
+            }
+            final long elapsed = System.nanoTime() - begin;
+            sink += sum;
+            return elapsed;
+        }
+    }
+
+    private static volatile long sink;
+
+    public static void main(String[] args) throws Throwable {
+        final String which = args.length > 0 ? args[0] : "all";
+        final int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        final List<Comparison> comparisons = new ArrayList<>();
+        final boolean all = "all".equals(which);
+        if (all || "queue".equals(which)) {
+            queue(comparisons, Runtime.getRuntime().availableProcessors(), 100_000);
+        }
+        if (all || "write".equals(which)) {
+            write(comparisons, 4096);
+        }
+        if (all || "accessors".equals(which)) {
+            accessors(comparisons, 64 * 1024);
+        }
+        if (all || "codec".equals(which)) {
+            codec(comparisons, 4096);
+        }
+        if (all || "tostring".equals(which)) {
+            toString(comparisons, 16 * 1024);
+        }
+        if (all || "header".equals(which)) {
+            header(comparisons);
+        }
+        if (comparisons.isEmpty()) {
+            throw new IllegalArgumentException("unknown benchmark " + which);
+        }
+        for (final Comparison comparison : comparisons) {
+            comparison.run(rounds);
+        }
+    }
+
+    private interface Queue {
+        void add(Event event);
+        Event poll();
+    }
+
+    // EventQueue against the LinkedBlockingQueue it replaced, with producer
+    // threads posting while the calling thread drains, as ThreadPool workers
+    // and the event loop thread do
+    private static void queue(final List<Comparison> comparisons, final int producers, final int events) throws Exception {
+        comparisons.add(new Comparison("event queue", 10,
+            new Op() {
+                public long run() throws Exception {
+                    final BlockingQueue<Event> queue = new LinkedBlockingQueue<>();
+                    return drain(new Queue() {
+                        public void add(final Event event) { queue.add(event); }
+                        public Event poll() { return queue.poll(); }
+                    }, producers, events);
+                }
+            },
+            new Op() {
+                public long run() throws Exception {
+                    final EventQueue queue = new EventQueue();
+                    return drain(new Queue() {
+                        public void add(final Event event) { queue.add(event); }
+                        public Event poll() { return queue.poll(); }
+                    }, producers, events);
+                }
+            }));
+    }
+
+    private static final Callback NOOP = new Callback() {
+        @Override
+        public void call(String name, Object[] args) throws Exception {
+        }
+    };
+
+    private static long drain(final Queue queue, final int producers, final int events) throws Exception {
+        final CountDownLatch start = new CountDownLatch(1);
+        final Thread[] threads = new Thread[producers];
+        for (int i = 0; i < producers; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException ex) {
+                        return;
+                    }
+                    for (int j = 0; j < events; j++) {
+                        queue.add(new Event("bench", NOOP));
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        final long total = (long) producers * events;
+        start.countDown();
+        long consumed = 0;
+        while (consumed < total) {
+            if (queue.poll() != null) {
+                consumed++;
+            }
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return consumed;
+    }
+
+    // Buffer.write against the loop that re-encoded ever shorter prefixes
+    // until one fit, into a buffer slightly too small for the string
+    private static void write(final List<Comparison> comparisons, final int chars) throws Exception {
+        for (final String encoding : new String[] {"utf-8", "utf-16le", "hex", "base64"}) {
+            final String str = input(encoding, chars);
+            final int capacity = Buffer.byteLength(str, encoding) - 8;
+            final Buffer old = new Buffer(capacity);
+            final Buffer current = new Buffer(capacity);
+            comparisons.add(new Comparison("write " + encoding, 200,
+                new Op() {
+                    public long run() throws Exception {
+                        retryWrite(old.underlying(), str, 0, capacity, encoding);
+                        return old.underlying().duplicate().clear().hashCode();
+                    }
+                },
+                new Op() {
+                    public long run() throws Exception {
+                        current.write(str, 0, capacity, encoding);
+                        return current.underlying().duplicate().clear().hashCode();
+                    }
+                }));
+        }
+    }
+
+    // the int32 accessors and the bulk variant against switching the order
+    // of the ByteBuffer around each read
+    private static void accessors(final List<Comparison> comparisons, final int bytes) throws Exception {
+        final Buffer buffer = new Buffer(bytes);
+        for (int i = 0; i + 4 <= bytes; i += 4) {
+            buffer.writeInt32LE(i, i);
+        }
+        final ByteBuffer underlying = buffer.underlying();
+        final int count = bytes / 4;
+        final Op switching = new Op() {
+            public long run() {
+                long sum = 0;
+                for (int j = 0; j < count; j++) {
+                    sum += switchingReadInt32(underlying, j * 4, ByteOrder.LITTLE_ENDIAN);
+                    sum += switchingReadInt32(underlying, j * 4, ByteOrder.BIG_ENDIAN);
+                }
+                return sum;
+            }
+        };
+        comparisons.add(new Comparison("readInt32", 1000, switching,
+            new Op() {
+                public long run() {
+                    long sum = 0;
+                    for (int j = 0; j < count; j++) {
+                        sum += buffer.readInt32LE(j * 4);
+                        sum += buffer.readInt32BE(j * 4);
+                    }
+                    return sum;
+                }
+            }));
+        comparisons.add(new Comparison("readInt32s", 1000, switching,
+            new Op() {
+                public long run() {
+                    long sum = 0;
+                    for (final int value : buffer.readInt32s(0, count, true)) {
+                        sum += value;
+                    }
+                    for (final int value : buffer.readInt32s(0, count, false)) {
+                        sum += value;
+                    }
+                    return sum;
+                }
+            }));
+    }
+
+    // Base64Codec and HexUtils against java.util.Base64 on a copied range,
+    // the one character at a time base64 decoder and the StringBuffer hex
+    // encoder, on a direct buffer like socket data
+    private static void codec(final List<Comparison> comparisons, final int bytes) throws Exception {
+        final byte[] data = new byte[bytes];
+        new Random(42).nextBytes(data);
+        final ByteBuffer direct = ByteBuffer.allocateDirect(bytes);
+        direct.put(data).clear();
+        final String base64 = Base64.getEncoder().encodeToString(data);
+
+        comparisons.add(new Comparison("base64 encode", 10000,
+            new Op() { public long run() { return Base64.getEncoder().encodeToString(copy(direct, bytes)).hashCode(); } },
+            new Op() { public long run() { return Base64Codec.encode(direct, 0, bytes).hashCode(); } }));
+        comparisons.add(new Comparison("base64 decode", 10000,
+            new Op() { public long run() { return Arrays.hashCode(oldBase64Decode(base64)); } },
+            new Op() { public long run() { return Arrays.hashCode(Base64Codec.decode(base64)); } }));
+        comparisons.add(new Comparison("hex encode", 10000,
+            new Op() { public long run() { return oldHexEncode(copy(direct, bytes)).hashCode(); } },
+            new Op() { public long run() { return HexUtils.encode(direct, 0, bytes).hashCode(); } }));
+    }
+
+    // Buffer.toString against copying the whole buffer out of direct memory,
+    // copying the range again and decoding with a charset looked up by name
+    private static void toString(final List<Comparison> comparisons, final int bytes) throws Exception {
+        final String[][] cases = {
+            {"utf-8", "ascii"}, {"utf-8", "mixed"}, {"iso-8859-1", "ascii"}, {"binary", "mixed"}, {"utf-16le", "mixed"},
+        };
+        for (final String[] c : cases) {
+            final Buffer buffer = new Buffer(content(bytes, "ascii".equals(c[1])));
+            final String encoding = c[0];
+            comparisons.add(new Comparison("toString " + encoding + " " + c[1], 10000,
+                new Op() { public long run() throws Exception { return copying(buffer, encoding, 0, bytes).hashCode(); } },
+                new Op() { public long run() throws Exception { return buffer.toString(encoding, 0, bytes).hashCode(); } }));
+        }
+    }
+
+    // ResponseHeaderWriter against concatenating the header block, formatting
+    // the Date per response and encoding the string into a new buffer
+    private static void header(final List<Comparison> comparisons) throws Exception {
+        final String[] headers = {
+            "Content-Type", "application/json",
+            "Content-Length", "1024",
+            "Connection", "keep-alive",
+            "Cache-Control", "no-cache",
+            "X-Request-Id", "4f1c2a9e",
+        };
+        final ResponseHeaderWriter writer = new ResponseHeaderWriter(new DefaultHandleFactory());
+        final SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        comparisons.add(new Comparison("response header", 1_000_000,
+            new Op() {
+                public long run() {
+                    String header = "HTTP/1.1 " + 200 + " " + "OK" + "\r\n";
+                    for (int i = 0; i < headers.length; i += 2) {
+                        header += headers[i] + ": " + headers[i + 1] + "\r\n";
+                    }
+                    header += "Date: " + format.format(new Date()) + "\r\n";
+                    header += "\r\n";
+                    final byte[] bytes = header.getBytes(StandardCharsets.UTF_8);
+                    final ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+                    buffer.put(bytes).flip();
+                    return buffer.remaining();
+                }
+            },
+            new Op() {
+                public long run() {
+                    final ByteBuffer header = writer.write(200, null, headers, true);
+                    final int length = header.remaining();
+                    writer.release(header);
+                    return length;
+                }
+            }));
+    }
+
+    private static String input(final String encoding, final int chars) throws Exception {
+        final Random random = new Random(42);
+        final byte[] bytes = new byte[chars];
+        random.nextBytes(bytes);
+        switch (encoding) {
+            case "hex":
+                return Buffer.wrap(bytes).toString("hex", 0, chars).substring(0, chars);
+            case "base64":
+                return Buffer.wrap(bytes).toString("base64", 0, chars).substring(0, chars);
+            default:
+                final StringBuilder sb = new StringBuilder(chars);
+                for (int i = 0; i < chars; i++) {
+                    sb.append(i % 5 == 0 ? (char) (0x400 + random.nextInt(256)) : (char) ('a' + random.nextInt(26)));
+                }
+                return sb.toString();
+        }
+    }
+
+    private static byte[] copy(final ByteBuffer buffer, final int length) {
+        final byte[] bytes = new byte[length];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+
+    private static ByteBuffer content(final int bytes, final boolean ascii) {
+        final Random random = new Random(42);
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(bytes);
+        for (int i = 0; i < bytes; i++) {
+            buffer.put((byte) (ascii ? ' ' + random.nextInt(95) : random.nextInt(256)));
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    // the replaced implementations
+
+    private static int retryWrite(final ByteBuffer target, final String str, final int off,
+                                  final int length, final String encoding) throws Exception {
+        final boolean hex = "hex".equals(encoding);
+        final int canwrite = Math.min(target.capacity() - off, length);
+        int fit = str.length();
+        if (hex) {
+            fit = (fit / 2) * 2;
+        }
+        for (; fit > 0; fit = hex ? fit - 2 : fit - 1) {
+            final byte[] bytes = Buffer.toBytes(str.substring(0, fit), encoding);
+            if (bytes.length <= canwrite) {
+                target.position(off);
+                target.put(bytes, 0, bytes.length);
+                return bytes.length;
+            }
+        }
+        return 0;
+    }
+
+    private static long switchingReadInt32(final ByteBuffer buffer, final int off, final ByteOrder order) {
+        final ByteOrder obo = buffer.order();
+        try {
+            buffer.order(order);
+            return buffer.getInt(off);
+        } finally {
+            buffer.order(obo);
+        }
+    }
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final int[] IA = new int[256];
+
+    static {
+        Arrays.fill(IA, -1);
+        final char[] ca = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+        for (int i = 0; i < ca.length; i++) {
+            IA[ca[i]] = i;
+        }
+        IA['='] = -2;
+    }
+
+    private static String oldHexEncode(final byte[] bytes) {
+        final StringBuffer buf = new StringBuffer(bytes.length);
+        for (final byte b : bytes) {
+            buf.append(HEX[(b & 0xf0) >> 4]);
+            buf.append(HEX[b & 0x0f]);
+        }
+        return buf.toString();
+    }
+
+    private static byte[] oldBase64Decode(final String str) {
+        final byte[] buf = new byte[((str.length() + 2) >> 2) * 3];
+        int pos = 0;
+        int decodeBuf = 0;
+        int rem = 4;
+        for (int i = 0; i < str.length(); i++) {
+            final int c = IA[str.charAt(i)];
+            if (c >= 0) {
+                decodeBuf = (decodeBuf << 6) | (c & 63);
+                rem--;
+            } else if (c == -2) {
+                break;
+            }
+            if (rem == 0) {
+                buf[pos++] = (byte) (decodeBuf >> 16);
+                buf[pos++] = (byte) (decodeBuf >> 8);
+                buf[pos++] = (byte) (decodeBuf);
+                rem = 4;
+                decodeBuf = 0;
+            }
+        }
+        if (rem == 1) {
+            decodeBuf >>= 2;
+            buf[pos++] = (byte) (decodeBuf >> 8);
+            buf[pos++] = (byte) (decodeBuf);
+        } else if (rem == 2) {
+            decodeBuf >>= 4;
+            buf[pos++] = (byte) (decodeBuf);
+        }
+        return Arrays.copyOf(buf, pos);
+    }
+
+    private static String copying(final Buffer buffer, final String encoding, final int start, final int length)
+            throws Exception {
+        final byte[] bytes = Arrays.copyOfRange(buffer.array(), start, start + length);
+        if ("binary".equals(encoding)) {
+            final char[] chars = new char[bytes.length];
+            for (int i = 0; i < chars.length; i++) {
+                chars[i] = (char) (bytes[i] & 0xff);
+            }
+            return new String(chars);
+        }
+        return new String(bytes, encoding);
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+// base64 and hex round trips through Buffer, at every length and from
+// offset ranges
+var assert = require('assert');
+var Buffer = require('buffer').Buffer;
+
+var bytes = new Buffer(257);
+for (var i = 0; i < bytes.length; i++) {
+    bytes[i] = (i * 7) & 0xff;
+}
+
+// every length, to cover the word loops and each tail
+for (var n = 0; n <= bytes.length; n++) {
+    var piece = bytes.slice(0, n);
+    var base64 = piece.toString('base64');
+    assert.strictEqual(base64.length, Math.ceil(n / 3) * 4);
+    assert.strictEqual(new Buffer(base64, 'base64').toString('hex'), piece.toString('hex'));
+    assert.strictEqual(new Buffer(piece.toString('hex'), 'hex').toString('base64'), base64);
+}
+
+// an offset range is encoded without the bytes around it
+assert.strictEqual(bytes.toString('base64', 1, 4), bytes.slice(1, 4).toString('base64'));
+assert.strictEqual(bytes.toString('hex', 250, 252), 'd6dd');
+
+assert.strictEqual(new Buffer('aGVsbG8gd29ybGQ=', 'base64').toString(), 'hello world');
+// line breaks, missing padding and characters above 255 are skipped
+assert.strictEqual(new Buffer('aGVs\r\nbG8g\nd29yĀbGQ', 'base64').toString(), 'hello world');
+assert.strictEqual(new Buffer('48656C6c6F', 'hex').toString(), 'Hello');
@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+// Buffer.concat copies the pieces in one pass, Buffer.composite reads and
+// searches them in place, including ranges and patterns across pieces
+var assert = require('assert');
+var Buffer = require('buffer').Buffer;
+
+var parts = [new Buffer('hello '), new Buffer(0), new Buffer('wor'), new Buffer('ld')];
+
+var joined = Buffer.concat(parts);
+assert.strictEqual(joined.toString(), 'hello world');
+assert.strictEqual(Buffer.concat(parts, 5).toString(), 'hello');
+assert.strictEqual(Buffer.concat([]).length, 0);
+assert.strictEqual(Buffer.concat([parts[0]]), parts[0]);
+joined[0] = 0x48;
+assert.strictEqual(parts[0][0], 0x68, 'concat must copy');
+
+assert.throws(function() {
+    Buffer.concat(['hello', parts[0]]);
+}, TypeError);
+
+var composite = Buffer.composite(parts);
+assert.strictEqual(composite.length, 11);
+assert.strictEqual(composite.get(6), 0x77);
+assert.strictEqual(composite.toString(), 'hello world');
+assert.strictEqual(composite.toString('utf8', 4, 8), 'o wo');
+assert.strictEqual(composite.toString('utf8', 20), '');
+
+// patterns spanning pieces, including the empty one
+assert.strictEqual(composite.indexOf('o w'), 4);
+assert.strictEqual(composite.indexOf('rld'), 8);
+assert.strictEqual(composite.indexOf('o', 5), 7);
+assert.strictEqual(composite.indexOf(0x6c, 4), 9);
+assert.strictEqual(composite.indexOf(Buffer.needle('world')), 6);
+assert.strictEqual(composite.indexOf('worlds'), -1);
+
+// a range inside one piece is a view, others are copies
+var view = composite.slice(0, 5);
+assert.strictEqual(view.toString(), 'hello');
+parts[0][0] = 0x48;
+assert.strictEqual(view.toString(), 'Hello');
+assert.strictEqual(composite.slice(4, 8).toString(), 'o wo');
+assert.strictEqual(composite.slice(-5).toString(), 'world');
+assert.strictEqual(composite.slice(8, 4).length, 0);
+assert.strictEqual(composite.toBuffer().toString(), 'Hello world');
+
+var target = new Buffer(4);
+target.fill(0x2e);
+assert.strictEqual(composite.copy(target, 1, 5), 3);
+assert.strictEqual(target.toString(), '. wo');
+assert.strictEqual(composite.copy(target, 0, 3, 3), 0);
+
+assert.throws(function() {
+    composite.get(11);
+}, RangeError);
+assert.throws(function() {
+    composite.copy(target, 4);
+}, RangeError);
+assert.throws(function() {
+    composite.copy('not a buffer');
+}, TypeError);
+assert.throws(function() {
+    Buffer.composite([parts[0], null]);
+}, TypeError);
+
+assert.strictEqual(Buffer.composite([]).length, 0);
+assert.strictEqual(Buffer.composite([]).indexOf('a'), -1);
@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+// stream decoding of text split anywhere, including inside a character
+var assert = require('assert');
+var Buffer = require('buffer').Buffer;
+var JavaStringDecoder = Packages.com.oracle.avatar.js.buffer.StringDecoder;
+
+function decodeAll(encoding, buffer, step) {
+    var decoder = new JavaStringDecoder(encoding);
+    var text = '';
+    for (var off = 0; off < buffer.length; off += step) {
+        text += decoder.write(buffer.slice(off, Math.min(off + step, buffer.length))._impl);
+    }
+    return text + decoder.end();
+}
+
+var text = 'plain ascii, then é, € and 𝄞 ' + new Array(100).join('x');
+var cases = [['UTF-8', 'utf8'], ['UTF-16LE', 'ucs2'], ['base64', 'base64']];
+cases.forEach(function(c) {
+    var encoded = new Buffer(text, c[0] === 'base64' ? 'utf8' : c[1]);
+    var expected = c[0] === 'base64' ? encoded.toString('base64') : text;
+    for (var step = 1; step <= 7; step++) {
+        assert.strictEqual(decodeAll(c[0], encoded, step), expected, c[0] + ' in steps of ' + step);
+    }
+});
+
+// an invalid byte is replaced as it arrives, not held back until end()
+var decoder = new JavaStringDecoder('UTF-8');
+assert.strictEqual(decoder.write(new Buffer([0x61, 0xff, 0x62])._impl), 'a�b');
+// an incomplete character at the end is replaced by end()
+assert.strictEqual(decoder.write(new Buffer([0xe2, 0x82])._impl), '');
+assert.strictEqual(decoder.end(), '�');
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+// gathered writes go out as one direct buffer
+var assert = require('assert');
+var Buffer = require('buffer').Buffer;
+var JavaBuffer = Packages.com.oracle.avatar.js.buffer.Buffer;
+var ByteBuffer = java.nio.ByteBuffer;
+
+function text(byteBuffer) {
+    var bytes = new Buffer(byteBuffer.remaining());
+    bytes._impl.underlying().put(byteBuffer.duplicate());
+    return bytes.toString('utf8');
+}
+
+function gather(chunks) {
+    var parts = [];
+    chunks.forEach(function(chunk) {
+        if (Buffer.isBuffer(chunk)) {
+            parts.push(chunk._impl, null);
+        } else {
+            parts.push(chunk, 'UTF-8');
+        }
+    });
+    return JavaBuffer.gather(Java.to(parts, 'java.lang.Object[]'));
+}
+
+// headers and chunked framing go out with the body
+var small = gather(['HTTP/1.1 200 OK\r\n\r\n', '5\r\n', new Buffer('hello'), '\r\n']);
+assert.ok(small.isDirect());
+assert.strictEqual(text(small), 'HTTP/1.1 200 OK\r\n\r\n5\r\nhello\r\n');
+
+// a large body is copied in with the chunks around it
+var body = new Buffer(4096);
+body.fill(0x61);
+var mixed = gather(['head', '\r\n', body, '\r\n', 'tail']);
+assert.strictEqual(mixed.remaining(), 4096 + 12);
+assert.strictEqual(text(mixed).slice(0, 7), 'head\r\na');
+assert.strictEqual(text(mixed).slice(-7), 'a\r\ntail');
+
+// a single large string is encoded into a direct buffer
+var large = new Array(2049).join('\u00e9');
+var single = gather([large]);
+assert.ok(single.isDirect());
+assert.strictEqual(text(single), large);
+
+assert.strictEqual(gather([]).remaining(), 0);
+
+// join passes a lone direct buffer through and copies anything else
+var direct = ByteBuffer.allocateDirect(4);
+assert.ok(JavaBuffer.join([direct]) === direct);
+var heap = ByteBuffer.wrap([1, 2, 3]);
+heap.position(1);
+var copied = JavaBuffer.join([heap]);
+assert.ok(copied.isDirect());
+assert.strictEqual(copied.remaining(), 2);
+assert.strictEqual(heap.position(), 1);
+var joined = JavaBuffer.join([ByteBuffer.wrap([1, 2]), direct, ByteBuffer.wrap([3])]);
+assert.strictEqual(joined.remaining(), 7);
+assert.strictEqual(joined.get(6), 3);
+assert.strictEqual(direct.remaining(), 4);
@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+// Buffer.indexOf finds bytes, strings, Buffers and precompiled needles,
+// including patterns at the very end of the buffer
+var assert = require('assert');
+var Buffer = require('buffer').Buffer;
+
+var b = new Buffer('abcdef--boundary--abc');
+
+assert.strictEqual(b.indexOf(0x61), 0);
+assert.strictEqual(b.indexOf(0x61, 1), 13);
+assert.strictEqual(b.indexOf(0x161), 0, 'only the low 8 bits are used');
+assert.strictEqual(b.indexOf(0x7a), -1);
+
+assert.strictEqual(b.indexOf('boundary'), 8);
+assert.strictEqual(b.indexOf('abc', 1), 18);
+assert.strictEqual(b.indexOf('abc', -3), 18);
+assert.strictEqual(b.indexOf('abcd', 1), -1);
+assert.strictEqual(b.indexOf(new Buffer('--')), 6);
+assert.strictEqual(b.indexOf('abc', 100), -1);
+assert.strictEqual(b.indexOf(''), 0);
+
+// a repeated prefix must not make the search skip an occurrence
+var repeats = new Buffer('aaaaab');
+assert.strictEqual(repeats.indexOf('aab'), 3);
+
+// encodings apply to string patterns
+assert.strictEqual(b.indexOf('626f756e64617279', 'hex'), 8);
+assert.strictEqual(new Buffer('xé', 'utf8').indexOf('é'), 1);
+
+var needle = Buffer.needle('--boundary');
+assert.strictEqual(Buffer.needle(needle), needle);
+assert.strictEqual(b.indexOf(needle), 6);
+assert.strictEqual(b.indexOf(needle, 7), -1);
+
+// the search is over the slice, not the buffer it shares memory with
+assert.strictEqual(b.slice(9).indexOf('abc'), 9);
+
+assert.throws(function() {
+    b.indexOf({});
+}, TypeError);
@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+// buffers wrapping native reads create their Java Buffer on first use
+var assert = require('assert');
+var Buffer = require('buffer').Buffer;
+
+var bytes = java.nio.ByteBuffer.allocateDirect(8);
+for (var i = 0; i < 8; i++) {
+    bytes.put(i, 0x41 + i);
+}
+
+var read = Buffer._fromByteBuffer(bytes);
+assert.ok(Buffer.isBuffer(read));
+assert.ok(read instanceof Buffer);
+assert.strictEqual(read.constructor, Buffer);
+assert.strictEqual(read.length, 8);
+assert.strictEqual(read[1], 0x42);
+
+// stream reads are sliced and pushed, neither creates the Java Buffer
+var slice = read.slice(2, 5);
+assert.ok(!read.hasOwnProperty('_impl'));
+assert.ok(!slice.hasOwnProperty('_impl'));
+assert.strictEqual(slice.length, 3);
+assert.strictEqual(slice.toString('ascii'), 'CDE');
+assert.strictEqual(read.slice(8).length, 0);
+assert.strictEqual(read.slice(-2).toString(), 'GH');
+
+// slices share their content with the read
+slice[0] = 0x78;
+assert.strictEqual(read[2], 0x78);
+assert.strictEqual(read.toString('ascii'), 'ABxDEFGH');
+
+assert.strictEqual(Buffer.concat([read, new Buffer('!')]).toString(), 'ABxDEFGH!');
@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+// hex strings of odd length are rejected up front, whatever the capacity
+var assert = require('assert');
+var Buffer = require('buffer').Buffer;
+
+var buf = new Buffer(4);
+buf.fill(0);
+assert.strictEqual(buf.write('0102', 0, 'hex'), 2);
+assert.strictEqual(buf[0], 1);
+assert.strictEqual(buf[1], 2);
+
+// truncated to the capacity, whole bytes only
+assert.strictEqual(buf.write('a1a2a3a4a5a6', 1, 'hex'), 3);
+assert.strictEqual(buf.toString('hex'), '01a1a2a3');
+
+function odd(string, offset, target) {
+    assert.throws(function() {
+        (target || buf).write(string, offset, 'hex');
+    }, TypeError);
+}
+odd('abc', 0);
+odd('a1a2a3a4a5a', 0);
+odd('abc', 4);
+odd('a', 0, new Buffer(0));
+assert.strictEqual(buf.toString('hex'), '01a1a2a3');
+
+assert.strictEqual(buf.write('', 0, 'hex'), 0);
@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+var PORT = SCRIPT_PORT;
+var assert = require('assert');
+var tls = require('tls');
+var fs = require('fs');
+
+// servers with the same key and certificate share the parsed credentials
+// and the SSLContext, whether or not they read the files again
+var crypto = process.binding('crypto');
+
+var options = {
+    key: fs.readFileSync("test/fixtures/keys/agent1-key.pem"),
+    cert: fs.readFileSync("test/fixtures/keys/agent1-cert.pem")
+};
+
+var before = crypto.credentialCacheStats();
+tls.createServer(options);
+var first = crypto.credentialCacheStats();
+tls.createServer({
+    key: fs.readFileSync("test/fixtures/keys/agent1-key.pem"),
+    cert: fs.readFileSync("test/fixtures/keys/agent1-cert.pem")
+});
+var second = crypto.credentialCacheStats();
+assert.ok(second.hits > first.hits, 'credentials were parsed again');
+assert.ok(second.contextHits > first.contextHits, 'SSLContext was initialized again');
+assert.ok(second.misses === first.misses, 'same content missed the cache');
+assert.ok(first.hits + first.misses > before.hits + before.misses);
+
+// a different key misses and is cached on its own
+tls.createServer({
+    key: fs.readFileSync("test/fixtures/keys/agent2-key.pem"),
+    cert: fs.readFileSync("test/fixtures/keys/agent2-cert.pem")
+});
+var third = crypto.credentialCacheStats();
+assert.ok(third.misses > second.misses, 'different content hit the cache');
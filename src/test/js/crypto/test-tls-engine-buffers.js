@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+var PORT = SCRIPT_PORT;
+var assert = require('assert');
+var tls = require('tls');
+var fs = require('fs');
+
+// connections hand their engine buffers back to the shared pool once
+// they are idle or closed
+var crypto = process.binding('crypto');
+
+var options = {
+    key: fs.readFileSync("test/fixtures/keys/agent1-key.pem"),
+    cert: fs.readFileSync("test/fixtures/keys/agent1-cert.pem")
+};
+
+var NUM_CONNECTED = 10;
+var payload = new Buffer(64 * 1024);
+payload.fill(0x61);
+var received = 0;
+var serverConnected = 0;
+
+var server = tls.createServer(options, function(socket) {
+    socket.end(payload);
+    if (++serverConnected === NUM_CONNECTED) {
+        server.close();
+    }
+});
+
+server.listen(PORT, function() {
+    for (var i = 0; i < NUM_CONNECTED; i++) {
+        connect();
+    }
+});
+
+function connect() {
+    var client = tls.connect({ port: PORT, rejectUnauthorized: false });
+    client.on('data', function(data) {
+        received += data.length;
+    });
+    client.on('end', function() {
+        client.end();
+    });
+}
+
+process.on('exit', function() {
+    assert.equal(received, NUM_CONNECTED * payload.length);
+    var stats = crypto.engineBufferStats();
+    assert.equal(stats.leased, 0, 'closed connections still hold buffers');
+    assert.ok(stats.idle > 0 && stats.idle <= stats.maxIdle);
+    assert.ok(stats.allocations > 0);
+});
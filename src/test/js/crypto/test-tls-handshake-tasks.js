@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+var PORT = SCRIPT_PORT;
+var assert = require('assert');
+var tls = require('tls');
+var fs = require('fs');
+
+// the delegated tasks of handshakes run on the thread pool, at most
+// maxConcurrent handshakes at a time, while the loop keeps running
+var crypto = process.binding('crypto');
+var HandshakeTasks = Packages.com.oracle.avatar.js.crypto.HandshakeTasks;
+var Callback = Packages.com.oracle.avatar.js.eventloop.Callback;
+var EventLoop = Packages.com.oracle.avatar.js.eventloop.EventLoop;
+
+// HandshakeTasks.submit is package private; slow handshake steps are
+// batches of sleeping tasks submitted through it
+var submit = HandshakeTasks.class.getDeclaredMethod('submit',
+    EventLoop.class, java.util.List.class, Callback.class);
+submit.setAccessible(true);
+
+var SLOW_TASK = 100;
+var before = crypto.handshakeStats();
+var max = before.maxConcurrent;
+assert.ok(max > 0, 'delegated tasks run on the event thread');
+
+var eventThread = java.lang.Thread.currentThread();
+var taskThreads = new java.util.concurrent.ConcurrentLinkedQueue();
+var batches = max + 2;
+var done = 0;
+var lastTick = Date.now();
+var maxGap = 0;
+
+function slowTask() {
+    return new java.lang.Runnable(function() {
+        taskThreads.add(java.lang.Thread.currentThread());
+        java.lang.Thread.sleep(SLOW_TASK);
+    });
+}
+
+var timer = setInterval(function() {
+    var now = Date.now();
+    maxGap = Math.max(maxGap, now - lastTick);
+    lastTick = now;
+}, 5);
+
+for (var i = 0; i < batches; i++) {
+    var tasks = new java.util.ArrayList();
+    tasks.add(slowTask());
+    submit.invoke(null, __avatar.eventloop, tasks, new Callback(function(name, args) {
+        assert.strictEqual(args && args[0], null);
+        if (++done === batches) {
+            clearInterval(timer);
+            handshakes();
+        }
+    }));
+}
+
+// the slots are taken, the other batches wait for one
+var submitted = crypto.handshakeStats();
+assert.strictEqual(submitted.running, max);
+assert.strictEqual(submitted.waiting, batches - max);
+
+var CONNECTIONS = 4;
+var secured = 0;
+
+function handshakes() {
+    var stats = crypto.handshakeStats();
+    assert.strictEqual(stats.running, 0);
+    assert.strictEqual(stats.waiting, 0);
+    assert.strictEqual(stats.tasks.count - before.tasks.count, batches);
+    assert.strictEqual(stats.waits.count - before.waits.count, batches);
+    // the last batches waited for a slow one to finish
+    assert.ok(stats.waits.max >= SLOW_TASK * 1000000 / 2, 'max wait ' + stats.waits.max);
+
+    var options = {
+        key: fs.readFileSync("test/fixtures/keys/agent1-key.pem"),
+        cert: fs.readFileSync("test/fixtures/keys/agent1-cert.pem")
+    };
+    var pending = CONNECTIONS;
+    var server = tls.createServer(options, function(socket) {
+        socket.end();
+    });
+    server.listen(PORT, function() {
+        for (var i = 0; i < CONNECTIONS; i++) {
+            var client = tls.connect({ port: PORT, rejectUnauthorized: false }, function() {
+                secured++;
+            });
+            client.on('end', function() {
+                if (--pending === 0) {
+                    server.close();
+                }
+            });
+            client.resume();
+        }
+    });
+}
+
+process.on('exit', function() {
+    // the timer kept firing while slow tasks held every slot
+    assert.ok(maxGap < SLOW_TASK, 'loop stalled for ' + maxGap + 'ms');
+    assert.strictEqual(taskThreads.size(), batches);
+    Java.from(taskThreads.toArray()).forEach(function(thread) {
+        assert.ok(thread !== eventThread, 'task run on the event thread');
+    });
+
+    assert.strictEqual(secured, CONNECTIONS);
+    var stats = crypto.handshakeStats();
+    // both ends of each connection
+    assert.strictEqual(stats.handshakes.count - before.handshakes.count, 2 * CONNECTIONS);
+    assert.ok(stats.handshakes.max > 0);
+    assert.ok(stats.handshakes.p50 <= stats.handshakes.p99);
+    assert.strictEqual(stats.running, 0);
+    assert.strictEqual(stats.waiting, 0);
+});
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+var PORT = SCRIPT_PORT;
+var assert = require('assert');
+var tls = require('tls');
+var fs = require('fs');
+
+// Writes made in one event are gathered into full TLS records, even though
+// tls.js cycles the encrypted stream after every write: 100 small writes,
+// a 20000 byte write and 100 more small writes, 21780 bytes in all, go out
+// as one full 16k record and one record with the rest. The records are
+// counted on the raw socket. TLS 1.2, so that CBC suites do not split off
+// a 1 byte record before each record, as they do with TLS 1.0.
+var options = {
+    key: fs.readFileSync("test/fixtures/keys/agent1-key.pem"),
+    cert: fs.readFileSync("test/fixtures/keys/agent1-cert.pem"),
+    secureProtocol: 'TLSv1_2_method'
+};
+
+var APPLICATION_DATA = 23;
+// explicit IV, MAC and padding of a record, at most
+var RECORD_OVERHEAD = 16 + 48 + 16;
+var expected = '';
+var received = '';
+var wire = [];
+
+var server = tls.createServer(options, function(socket) {
+    var big = new Buffer(20000);
+    big.fill(0x61);
+    for (var phase = 0; phase < 3; phase++) {
+        if (phase === 1) {
+            socket.write(big);
+            expected += big.toString();
+            continue;
+        }
+        for (var i = 0; i < 100; i++) {
+            var line = 'hello ' + i + '\n';
+            socket.write(line);
+            expected += line;
+        }
+    }
+    socket.end();
+    server.close();
+});
+
+// the raw socket, before the TLS pair is piped to it
+server.on('connection', function(raw) {
+    var write = raw.write;
+    raw.write = function(data) {
+        wire.push(Buffer.isBuffer(data) ? data : new Buffer(data));
+        return write.apply(raw, arguments);
+    };
+});
+
+server.listen(PORT, function() {
+    var client = tls.connect({ port: PORT, rejectUnauthorized: false });
+    client.setEncoding('utf8');
+    client.on('data', function(data) {
+        received += data;
+    });
+    client.on('end', function() {
+        client.end();
+    });
+});
+
+process.on('exit', function() {
+    assert.equal(received.length, expected.length);
+    assert.ok(received === expected, 'data differs');
+
+    var bytes = Buffer.concat(wire);
+    var records = 0;
+    var encrypted = 0;
+    for (var p = 0; p + 5 <= bytes.length; p += 5 + bytes.readUInt16BE(p + 3)) {
+        if (bytes[p] === APPLICATION_DATA) {
+            records++;
+            encrypted += bytes.readUInt16BE(p + 3);
+        }
+    }
+    assert.equal(records, 2, records + ' application data records');
+    assert.ok(encrypted - expected.length <= 2 * RECORD_OVERHEAD,
+              encrypted + ' bytes of application data records for ' + expected.length);
+});
@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+var PORT = SCRIPT_PORT;
+var assert = require('assert');
+var tls = require('tls');
+var fs = require('fs');
+
+// every tls.connect makes its own createCredentials call, with identical
+// options they share an SSLContext and resume the session of the server,
+// until it expires
+var crypto = process.binding('crypto');
+var SessionCache = Packages.com.oracle.avatar.js.crypto.SessionCache;
+
+var options = {
+    key: fs.readFileSync("test/fixtures/keys/agent1-key.pem"),
+    cert: fs.readFileSync("test/fixtures/keys/agent1-cert.pem")
+};
+
+// client sessions live for sessionTimeout seconds, the ones tracked for
+// this server are made expired instead
+function expire() {
+    var clients = SessionCache.class.getDeclaredField('CLIENTS');
+    clients.setAccessible(true);
+    var it = clients.get(null).entrySet().iterator();
+    while (it.hasNext()) {
+        var entry = it.next();
+        if (entry.getKey().endsWith(':' + PORT)) {
+            var expires = entry.getValue().getClass().getDeclaredField('expires');
+            expires.setAccessible(true);
+            expires.setLong(entry.getValue(), 0);
+        }
+    }
+}
+
+var before = crypto.sessionCacheStats();
+var reused = [];
+var stats = [];
+
+var server = tls.createServer(options, function(socket) {
+    socket.end('ok');
+});
+
+function connect(next) {
+    var client = tls.connect({ port: PORT, rejectUnauthorized: false }, function() {
+        reused.push(client.isSessionReused());
+        stats.push(crypto.sessionCacheStats());
+    });
+    client.resume();
+    client.on('end', function() {
+        client.end();
+        next();
+    });
+}
+
+server.listen(PORT, function() {
+    connect(function() {
+        connect(function() {
+            expire();
+            connect(function() {
+                connect(function() {
+                    server.close();
+                });
+            });
+        });
+    });
+});
+
+process.on('exit', function() {
+    assert.deepEqual(reused, [false, true, false, true]);
+    // a full handshake, then a resumed one
+    assert.strictEqual(stats[0].misses, before.misses + 1);
+    assert.strictEqual(stats[1].hits, stats[0].hits + 1);
+    assert.strictEqual(stats[1].misses, stats[0].misses);
+    // the expired session is dropped, the next handshake is a full one
+    assert.strictEqual(stats[2].expirations, stats[1].expirations + 1);
+    assert.strictEqual(stats[2].misses, stats[1].misses + 1);
+    assert.strictEqual(stats[2].hits, stats[1].hits);
+    // and its session is resumed
+    assert.strictEqual(stats[3].hits, stats[2].hits + 1);
+
+    var after = crypto.sessionCacheStats();
+    assert.strictEqual(after.serverHits, before.serverHits + 2);
+    assert.strictEqual(after.serverMisses, before.serverMisses + 2);
+});
@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+var evtloop = __avatar.eventloop;
+var MAX_LOCAL = 1000000;
+
+var local = 0;
+var remoteAt = -1;
+
+// keeps re-posting itself from the event loop thread until the event
+// posted by the background thread has run
+function spin() {
+    if (remoteAt < 0 && ++local < MAX_LOCAL) {
+        evtloop.post(spin);
+    }
+}
+
+function remote() {
+    remoteAt = local;
+}
+
+var handle = evtloop.acquire();
+var thr = new java.lang.Thread(function() {
+    java.lang.Thread.sleep(50);
+    evtloop.post(remote);
+    handle.release();
+});
+thr.setDaemon(true);
+
+evtloop.post(spin);
+thr.start();
+
+process.on('exit', function(e) {
+    if (remoteAt < 0 || remoteAt >= MAX_LOCAL) {
+        throw new Error("event from background thread starved by " + local + " local events");
+    }
+});
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+// Parsed headers reach http.js as a view of the parser's array that
+// behaves like a script array.
+var assert = require('assert');
+var http = require('http');
+var net = require('net');
+var HeaderList = Packages.com.oracle.avatar.js.http.HeaderList;
+
+var PORT = 59420;
+
+function toArray(headers) {
+    return Java.from(headers);
+}
+
+var list = new HeaderList(Java.to(['Host', 'localhost', 'Accept', '*/*'], 'java.lang.String[]'), toArray);
+assert.ok(Array.isArray(list));
+assert.strictEqual(list.length, 4);
+assert.strictEqual(list[2], 'Accept');
+assert.strictEqual(typeof list[4], 'undefined');
+assert.deepEqual(list.concat(['X-A', 'a']), ['Host', 'localhost', 'Accept', '*/*', 'X-A', 'a']);
+assert.deepEqual(list.slice(2), ['Accept', '*/*']);
+assert.strictEqual(list.join(':'), 'Host:localhost:Accept:*/*');
+var keys = [];
+for (var key in list) {
+    keys.push(key);
+}
+assert.deepEqual(keys, ['0', '1', '2', '3']);
+// a write goes to a script array, later reads see it
+list[1] = 'example.com';
+list.push('X-B', 'b');
+assert.strictEqual(list[1], 'example.com');
+assert.strictEqual(list.length, 6);
+
+var received;
+var server = http.createServer(function(req, res) {
+    received = req.headers;
+    res.end();
+    server.close();
+});
+
+server.listen(PORT, function() {
+    var socket = net.connect(PORT, function() {
+        socket.end('GET / HTTP/1.1\r\nHost: localhost\r\nX-Twice: a\r\nX-Twice: b\r\n' +
+                   'Content-Length: 0\r\n\r\n');
+    });
+    socket.resume();
+});
+
+process.on('exit', function() {
+    assert.strictEqual(received.host, 'localhost');
+    assert.strictEqual(received['x-twice'], 'a, b');
+    assert.strictEqual(received['content-length'], '0');
+});
@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+// Responses in a server's ResponseCache are answered in Java for keep-alive
+// GET and HEAD requests. Anything else goes to http.js, and once a
+// connection has been handed to http.js, it stays there, so pipelined
+// responses keep the order of the requests.
+var assert = require('assert');
+var http = require('http');
+var net = require('net');
+var HttpResponseCache = process.binding('http_parser').ResponseCache;
+
+var PORT = 59400;
+
+var cache = new HttpResponseCache({ maxBytes: 4096 });
+assert.ok(cache.set('/cached', { statusCode: 200, headers: { 'Content-Type': 'text/plain' }, body: 'cached' }));
+// a response that does not fit is refused and leaves the cached one alone
+var large = new Buffer(8192);
+large.fill(0x61);
+assert.strictEqual(cache.set('/cached', { body: large }), false);
+assert.strictEqual(cache.stats().entries, 1);
+// write() moves the position of the memory it fills, the whole body is
+// cached anyway
+var written = new Buffer(11);
+written.write('hello ');
+written.write('world', 6);
+assert.ok(cache.set('/written', { body: written }));
+
+var requests = [];
+var server = http.createServer(function(req, res) {
+    requests.push(req.method + ' ' + req.url);
+    req.resume();
+    req.on('end', function() {
+        var body = 'dynamic ' + req.method + ' ' + req.url;
+        res.writeHead(200, { 'Content-Length': body.length });
+        res.end(body);
+    });
+});
+server.responseCache = cache;
+
+var responses = {};
+
+function send(name, data) {
+    var received = '';
+    var socket = net.connect(PORT, function() {
+        socket.write(data);
+    });
+    socket.setEncoding('utf8');
+    socket.on('data', function(chunk) {
+        received += chunk;
+    });
+    socket.on('end', function() {
+        // bodies do not contain a status line
+        responses[name] = received.split('HTTP/1.1 ').slice(1);
+        if (Object.keys(responses).length === 3) {
+            server.close();
+        }
+    });
+}
+
+server.listen(PORT, function() {
+    send('pipelined',
+        'GET /cached HTTP/1.1\r\nHost: localhost\r\n\r\n' +
+        'HEAD /cached HTTP/1.1\r\nHost: localhost\r\n\r\n' +
+        'GET /other HTTP/1.1\r\nHost: localhost\r\n\r\n' +
+        'GET /cached HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n');
+    send('written',
+        'GET /written HTTP/1.1\r\nHost: localhost\r\n\r\n' +
+        'GET /other HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n');
+    send('post',
+        'POST /cached HTTP/1.1\r\nHost: localhost\r\nContent-Length: 1\r\nConnection: close\r\n\r\nx');
+});
+
+process.on('exit', function() {
+    var pipelined = responses.pipelined;
+    assert.strictEqual(pipelined.length, 4);
+    // GET hit
+    assert.ok(/^200 OK\r\n/.test(pipelined[0]));
+    assert.ok(/\r\nContent-Length: 6\r\n/.test(pipelined[0]));
+    assert.ok(/\r\nContent-Type: text\/plain\r\n/.test(pipelined[0]));
+    assert.ok(/\r\nDate: /.test(pipelined[0]));
+    assert.ok(/\r\n\r\ncached$/.test(pipelined[0]));
+    // HEAD hit, the same headers without the body
+    assert.ok(/\r\nContent-Length: 6\r\n/.test(pipelined[1]));
+    assert.ok(/\r\n\r\n$/.test(pipelined[1]));
+    // a miss hands the connection to http.js, which answers the rest in order
+    assert.ok(/\r\n\r\ndynamic GET \/other$/.test(pipelined[2]));
+    assert.ok(/\r\n\r\ndynamic GET \/cached$/.test(pipelined[3]));
+
+    // requests with a body are not answered from the cache
+    assert.strictEqual(responses.post.length, 1);
+    assert.ok(/\r\n\r\ndynamic POST \/cached$/.test(responses.post[0]));
+
+    // a body filled with write()
+    assert.strictEqual(responses.written.length, 2);
+    assert.ok(/\r\nContent-Length: 11\r\n/.test(responses.written[0]));
+    assert.ok(/\r\n\r\nhello world$/.test(responses.written[0]));
+
+    requests.sort();
+    assert.deepEqual(requests, ['GET /cached', 'GET /other', 'GET /other', 'POST /cached']);
+    assert.strictEqual(cache.stats().hits, 3);
+});
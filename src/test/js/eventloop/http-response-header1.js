@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+// ServerResponse headers are written by the loop's ResponseHeaderWriter:
+// _header is a Buffer holding the whole header block, Date included, and
+// goes out ahead of the first chunk of the body.
+var assert = require('assert');
+var http = require('http');
+var net = require('net');
+
+var PORT = 59430;
+var RAW_PORT = 59431;
+
+var headers = {};
+var server = http.createServer(function(req, res) {
+    switch (req.url) {
+        case '/plain':
+            res.writeHead(200, { 'Content-Type': 'text/plain', 'Content-Length': 5, 'X-Twice': ['a', 'b'] });
+            res.end('hello');
+            break;
+        case '/chunked':
+            res.setHeader('X-Split', 'one\r\ntwo');
+            res.write('a');
+            res.write(new Buffer('b'));
+            res.end();
+            break;
+        case '/reason':
+            res.writeHead(299, 'Custom', { Date: 'yesterday', 'Content-Length': 0 });
+            res.end();
+            break;
+        case '/nodate':
+            res.sendDate = false;
+            res.writeHead(204);
+            res.end();
+            break;
+    }
+    headers[req.url] = res._header;
+});
+
+var responses = {};
+
+function get(port, path, done) {
+    var received = '';
+    var socket = net.connect(port, function() {
+        socket.end('GET ' + path + ' HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n');
+    });
+    socket.setEncoding('utf8');
+    socket.on('data', function(chunk) {
+        received += chunk;
+    });
+    socket.on('end', function() {
+        responses[path] = received;
+        done();
+    });
+}
+
+// the handle writes a header block of its own, released once written
+var raw = net.createServer(function(socket) {
+    socket._handle.writeResponseHeader(200, undefined, { 'Content-Length': 2 }, false);
+    socket.end('ok');
+});
+
+server.listen(PORT, function() {
+    raw.listen(RAW_PORT, function() {
+        var paths = ['/plain', '/chunked', '/reason', '/nodate'];
+        var pending = paths.length + 1;
+        function done() {
+            if (--pending === 0) {
+                server.close();
+                raw.close();
+            }
+        }
+        paths.forEach(function(path) {
+            get(PORT, path, done);
+        });
+        get(RAW_PORT, '/raw', done);
+    });
+});
+
+process.on('exit', function() {
+    Object.keys(headers).forEach(function(path) {
+        assert.ok(Buffer.isBuffer(headers[path]), path);
+        assert.strictEqual(responses[path].indexOf(headers[path].toString()), 0, path);
+    });
+
+    var plain = responses['/plain'];
+    assert.ok(/^HTTP\/1.1 200 OK\r\n/.test(plain));
+    assert.ok(/\r\nContent-Type: text\/plain\r\n/.test(plain));
+    assert.ok(/\r\nX-Twice: a\r\nX-Twice: b\r\n/.test(plain));
+    assert.ok(/\r\nDate: \w{3}, \d{2} \w{3} \d{4} \d{2}:\d{2}:\d{2} GMT\r\n/.test(plain));
+    assert.ok(/\r\n\r\nhello$/.test(plain));
+
+    var chunked = responses['/chunked'];
+    assert.ok(/\r\nX-Split: onetwo\r\n/.test(chunked));
+    assert.ok(/\r\nTransfer-Encoding: chunked\r\n/.test(chunked));
+    assert.ok(/\r\n\r\n1\r\na\r\n1\r\nb\r\n0\r\n\r\n$/.test(chunked));
+
+    var reason = responses['/reason'];
+    assert.ok(/^HTTP\/1.1 299 Custom\r\n/.test(reason));
+    assert.strictEqual(reason.match(/\r\nDate: /g).length, 1);
+    assert.ok(/\r\nDate: yesterday\r\n/.test(reason));
+
+    var nodate = responses['/nodate'];
+    assert.ok(/^HTTP\/1.1 204 No Content\r\n/.test(nodate));
+    assert.ok(!/\r\nDate: /.test(nodate));
+
+    assert.strictEqual(responses['/raw'], 'HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\nok');
+});
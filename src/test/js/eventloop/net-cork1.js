@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+// Writes made while a socket is corked reach the handle as one writev, and
+// an http response written with its header goes out the same way.
+var assert = require('assert');
+var http = require('http');
+var net = require('net');
+
+var PORT = 59410;
+
+var writevs = 0;
+function countWritev(socket) {
+    var handle = socket._handle;
+    var writev = handle.writev;
+    handle.writev = function(chunks) {
+        writevs++;
+        return writev.call(handle, chunks);
+    };
+}
+
+var received = '';
+var server = net.createServer(function(socket) {
+    socket.setEncoding('utf8');
+    socket.on('data', function(chunk) {
+        received += chunk;
+    });
+    socket.on('end', function() {
+        server.close();
+    });
+});
+
+server.listen(PORT, function() {
+    var client = net.connect(PORT, function() {
+        countWritev(client);
+        client.cork();
+        client.write('head ');
+        client.cork();
+        client.write(new Buffer('body '));
+        client.uncork();
+        assert.strictEqual(writevs, 0);
+        client.write('tail', 'utf8');
+        client.uncork();
+        assert.strictEqual(writevs, 1);
+        assert.strictEqual(client.bytesWritten, 14);
+        // corked writes are flushed before the shutdown
+        client.cork();
+        client.end(' end');
+    });
+});
+
+var response;
+var httpWritevs;
+var httpServer = http.createServer(function(req, res) {
+    writevs = 0;
+    countWritev(res.connection);
+    res.writeHead(200, { 'Transfer-Encoding': 'chunked' });
+    res.write(new Buffer('chunk'));
+    res.end();
+    httpWritevs = writevs;
+    httpServer.close();
+});
+
+httpServer.listen(PORT + 1, function() {
+    http.get({ port: PORT + 1, path: '/' }, function(res) {
+        response = '';
+        res.setEncoding('utf8');
+        res.on('data', function(chunk) {
+            response += chunk;
+        });
+    });
+});
+
+process.on('exit', function() {
+    assert.strictEqual(received, 'head body tail end');
+    assert.strictEqual(response, 'chunk');
+    // the header, chunk size, chunk and terminator in one write
+    assert.strictEqual(httpWritevs, 1);
+});
@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+// Splits 64k socket-read sized buffers into header and body slices the way
+// net, http and string_decoder do, then decodes, copies and fills the slices.
+
+var perf = require("./common-perf");
+
+var SIZE = 64 * 1024;
+var head = 'HTTP/1.1 200 OK\r\nContent-Type: text/plain\r\nContent-Length: ' + (SIZE - 512) + '\r\n\r\n';
+var chunk = new Buffer(SIZE);
+chunk.fill('x');
+chunk.write(head);
+var headEnd = head.length;
+var target = new Buffer(SIZE);
+
+function run() {
+    for (var i = 0; i < 100; i++) {
+        perf.actionStart();
+        var header = chunk.slice(0, headEnd);
+        var body = chunk.slice(headEnd);
+        header.toString('ascii');
+        body.slice(0, 16).toString('utf8');
+        body.slice(body.length - 1024).copy(target, 0);
+        body.slice(0, 8).fill(0);
+        body.slice(0, 8).fill('x');
+    }
+    if (perf.canContinue()) {
+        setImmediate(run);
+    }
+}
+
+perf.startPerf(run, 30);
@@ -57,14 +57,19 @@ function round(n) {
 }
 function memToString(mem) {
     if (isAvatarjs()) {
-        return mem.toString();
+        return mem.heap.toString() + ", buffers " + mem.buffers;
     } else {
         return util.inspect(mem)
     }
 }
 function captureMemory() {
     if (isAvatarjs()) {
-        return java.lang.management.ManagementFactory.getMemoryMXBean().getHeapMemoryUsage()
+        // buffers live off-heap, track the direct memory they hold as well
+        var BufferPool = Packages.com.oracle.avatar.js.buffer.BufferPool;
+        return {
+            heap: java.lang.management.ManagementFactory.getMemoryMXBean().getHeapMemoryUsage(),
+            buffers: BufferPool.liveBytes()
+        };
     } else {
         return process.memoryUsage();
     }
@@ -72,7 +77,7 @@ function captureMemory() {
 
 function diffMemory(start, end) {
     if (isAvatarjs()) {
-        return end.used - start.used;
+        return (end.heap.used - start.heap.used) + (end.buffers - start.buffers);
     } else {
         return end.heapUsed - start.heapUsed;
     }
@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2013, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+// Parses a stream of small keep-alive requests with a single parser, the
+// way the http server does on a persistent connection, and walks the
+// headers like IncomingMessage._addHeaderLine.
+
+var perf = require("./common-perf");
+var HTTPParser = process.binding('http_parser').HTTPParser;
+
+var request = 'GET /index.html?q=1 HTTP/1.1\r\n' +
+    'Host: localhost:8080\r\n' +
+    'User-Agent: perf\r\n' +
+    'Accept: */*\r\n' +
+    'Accept-Encoding: gzip, deflate\r\n' +
+    'Connection: keep-alive\r\n' +
+    'Cookie: session=abc\r\n\r\n';
+var requests = '';
+for (var i = 0; i < 50; i++) {
+    requests += request;
+}
+var data = new Buffer(requests);
+
+var parser = new HTTPParser(HTTPParser.REQUEST);
+var headerCount = 0;
+parser.onHeadersComplete = function(info) {
+    var headers = info.headers;
+    for (var i = 0; i < headers.length; i += 2) {
+        headers[i].toLowerCase();
+        headerCount++;
+    }
+};
+parser.onBody = function() {};
+parser.onMessageComplete = function() {};
+
+function run() {
+    for (var i = 0; i < 100; i++) {
+        perf.actionStart();
+        parser.execute(data, 0, data.length);
+    }
+    if (perf.canContinue()) {
+        setImmediate(run);
+    }
+}
+
+perf.startPerf(run, 30);
@@ -58,6 +58,29 @@ storedBuffer = {},
 storedUnicode = {};
 var HTTPParser = process.binding('http_parser').HTTPParser;
 var CRLF = '\r\n';
+
+// on avatar-js report the bytes allocated by the event loop thread per
+// request, which is dominated by the read and write paths
+var REPORT_EVERY = 10000;
+var threadBean = typeof __avatar !== 'undefined' ?
+    java.lang.management.ManagementFactory.getThreadMXBean() : null;
+var requests = 0;
+var allocated = threadBean ? threadBean.getThreadAllocatedBytes(java.lang.Thread.currentThread().getId()) : 0;
+var reported = process.hrtime();
+
+function reportAllocation() {
+    if (++requests % REPORT_EVERY !== 0 || !threadBean) {
+        return;
+    }
+    var now = threadBean.getThreadAllocatedBytes(java.lang.Thread.currentThread().getId());
+    var elapsed = process.hrtime(reported);
+    var seconds = elapsed[0] + elapsed[1] / 1e9;
+    console.error(requests + ' requests, ' +
+                  Math.round((now - allocated) / REPORT_EVERY) + ' bytes/request, ' +
+                  Math.round((now - allocated) / seconds / (1024 * 1024)) + ' MB/s allocated');
+    allocated = now;
+    reported = process.hrtime();
+}
 var server = module.exports = net.createServer(function (con) {  
     con.on('error', function(e) {
         print("GOT ERROR " + e);
@@ -98,6 +121,7 @@ var server = module.exports = net.createServer(function (con) {
             body.copy(complete, slBuffer.length, 0,  body.length);
             con.end(complete);
             parser.reinitialize(HTTPParser.REQUEST);
+            reportAllocation();
         }
         
         parser.onHeadersComplete = function(info) {